@@ -0,0 +1,88 @@
+package org.example.bqexportpropagator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.example.bqexportpropagator.Model.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the accumulation throughput, in records per second, of the entries (string) and byte accumulators reading
+ * the same synthetic corpus. The accumulated batches are handed to a propagator that only consumes them, without
+ * throttling, so the measured cost is the accumulation and payload assembly one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(AccumulatorBenchmark.RECORD_COUNT)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AccumulatorBenchmark {
+
+    static final int RECORD_COUNT = 2_000;
+    static final Long ACCUMULATION_SIZE_LIMIT = 1024L * 900L;
+    static final String FILE_LOCATION = "gs://benchmark/export/file.json";
+
+    @Param({"100", "1000", "10000"})
+    int recordSize;
+
+    private List<String> records;
+    private byte[] fileContent;
+    private PropagationResultSink resultSink;
+    private RecordBufferPool bufferPool;
+    private Propagator<List<String>> entriesPropagator;
+    private Propagator<ByteBuffer> payloadPropagator;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        var corpus = NdjsonCorpus.generate(RECORD_COUNT, recordSize);
+        records = corpus.getRecords();
+        fileContent = corpus.toFileContent();
+        resultSink = new PropagationResultSink(1, result -> {
+        });
+        bufferPool = new RecordBufferPool(1024 * 1024, 4);
+        Throttler unlimited = () -> {
+        };
+        var result = new PropagationResult(FILE_LOCATION, "", 0, Optional.empty(), true);
+        entriesPropagator = new DirectPropagator<>((location, entries) -> {
+            blackhole.consume(entries);
+            return result;
+        }, unlimited);
+        payloadPropagator = new DirectPropagator<>((location, payload) -> {
+            blackhole.consume(payload);
+            return result;
+        }, unlimited);
+    }
+
+    @Benchmark
+    public Long accumulateEntries() {
+        var accumulator = new Accumulator(ACCUMULATION_SIZE_LIMIT, FILE_LOCATION, entriesPropagator, resultSink);
+        for (var record : records) {
+            accumulator.accumulate(record);
+        }
+        return accumulator.complete().getPropagationCount();
+    }
+
+    @Benchmark
+    public Long accumulateBytes() {
+        var accumulator = new ByteAccumulator(AccumulationLimits.ofSize(ACCUMULATION_SIZE_LIMIT), FILE_LOCATION,
+                payloadPropagator, resultSink, bufferPool, Functions.PAYLOAD_PREFIX, Functions.PAYLOAD_RECORD_SEPARATOR,
+                Functions.PAYLOAD_SUFFIX, SourceCheckpoint.untracked());
+        Functions.splitRecords(ByteBuffer.wrap(fileContent), accumulator);
+        return accumulator.complete().getPropagationCount();
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.example.bqexportpropagator.Model.*;
+
+/**
+ * Offline end to end load test: generates the export shards in an in-memory {@link Storage}, runs the launcher
+ * propagation over them (same throttlers, propagators, prefetch and split settings) and propagates to a local HTTP sink
+ * with configurable latency, error rate and rate limit. Once completed it reports the records and bytes read per
+ * second, the sink outcomes, the peak heap in use and the throttle utilization.
+ *
+ * The load test options go before a {@code --} separator, the launcher ones after it, e.g.:
+ * {@code --shards 20 --records 50000 --sinklatency 50 -- --workers 4 --maxinflight 8}
+ */
+public class LoadTest {
+
+    private static final Logger LOG = Logger.getLogger(LoadTest.class.getCanonicalName());
+    private static final String BUCKET = "load-test";
+    private static final Long HEAP_SAMPLING_INTERVAL_IN_MILLIS = 50L;
+    /**
+     * The launcher arguments that make no sense offline, appended after the provided ones so they can still be set.
+     */
+    private static final List<String> LAUNCHER_DEFAULTS = List.of("--project", "load-test", "--dataset", "load-test",
+            "--tableprefix", "load-test", "--bucket", BUCKET, "--pathprefix", "load-test", "--query", "SELECT 1");
+
+    public static void main(String[] arguments) throws Exception {
+        var separator = Arrays.asList(arguments).indexOf("--");
+        var loadTestArguments = separator < 0 ? arguments : Arrays.copyOfRange(arguments, 0, separator);
+        var launcherArguments = separator < 0
+                ? new String[0] : Arrays.copyOfRange(arguments, separator + 1, arguments.length);
+
+        var options = loadTestOptions();
+        var cmd = new DefaultParser().parse(options, loadTestArguments);
+        if (cmd.hasOption("help")) {
+            new HelpFormatter().printHelp("load-test [options] -- [launcher options]", options);
+            return;
+        }
+        var shards = Integer.valueOf(cmd.getOptionValue("shards", "10"));
+        var records = Integer.valueOf(cmd.getOptionValue("records", "10000"));
+        var recordSize = Integer.valueOf(cmd.getOptionValue("recordsize", "1000"));
+        var args = Launcher.captureArguments(Stream.concat(Arrays.stream(launcherArguments), LAUNCHER_DEFAULTS.stream())
+                .toArray(String[]::new));
+        if (!"json".equals(args.exportFormat) || !"none".equals(args.exportCompression)) {
+            throw new ParseException("The load test generates uncompressed json shards only.");
+        }
+
+        var storage = LocalStorageHelper.getOptions().getService();
+        writeShards(storage, args.exportBucketPathPrefix, shards, records, recordSize);
+
+        try ( var sink = new LoadTestSink(Long.valueOf(cmd.getOptionValue("sinklatency", "20")),
+                Double.valueOf(cmd.getOptionValue("sinkerrorrate", "0")),
+                Double.valueOf(cmd.getOptionValue("sinkrps", "0")));
+                var deadLetters = Launcher.openDeadLetterSpool(args)) {
+            // the launcher endpoint is ignored, the rest of the HTTP settings (headers, gzip, timeouts) are kept
+            var httpSink = new HttpPropagationSink(sink.getEndpoint(), args.httpHeaders, args.gzipPayload,
+                    Duration.ofMillis(args.connectTimeoutInMillis), Duration.ofMillis(args.requestTimeoutInMillis));
+            var metrics = new PropagationMetrics();
+            var resultSink = new PropagationResultSink(args.failureLogSize, result -> {
+            }, metrics);
+            var peakHeap = new AtomicLong();
+            var heapSampler = Executors.newSingleThreadScheduledExecutor();
+            heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max),
+                    0, HEAP_SAMPLING_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+
+            var start = System.nanoTime();
+            try {
+                Optional<Job> noExport = Optional.empty();
+                if (args.byteMode) {
+                    Launcher.propagateExportResults(storage, args, CheckpointJournal.disabled(), noExport,
+                            resultSink, httpSink::propagatePayload,
+                            deadLetters::appendPayload, Functions::processGCSBlobBytes);
+                } else if (args.partitionKey != null) {
+                    Launcher.propagatePartitionedExportResults(storage, args, noExport, resultSink,
+                            httpSink::propagateEntries, deadLetters::appendEntries);
+                } else {
+                    var transformer = Launcher.recordTransformer(args);
+                    Launcher.propagateExportResults(storage, args, CheckpointJournal.disabled(), noExport,
+                            resultSink, httpSink::propagateEntries, deadLetters::appendEntries,
+                            (limits, propagator, results, journal, range)
+                            -> Functions.processGCSBlob(limits, transformer, propagator, results, journal, range));
+                }
+            } finally {
+                heapSampler.shutdownNow();
+            }
+            var elapsedSeconds = (System.nanoTime() - start) / 1e9D;
+
+            // the throttle is called by the pipeline workers when present, by the file workers otherwise
+            var throttlingThreads = args.pipelineWorkers > 0 ? args.pipelineWorkers : args.propagationWorkers;
+            LOG.info(String.format("Load test completed in %.2f seconds: %d records (%.0f/s), %dKB (%.0fKB/s), "
+                    + "%dKB of payloads propagated, %d propagations succeeded, %d failed (%d retries, %d dead lettered); sink accepted %d requests, failed %d and rejected %d "
+                    + "over its rate (%.2f requests/s); peak heap %dMB; throttle utilization %.1f%% (%dms blocked "
+                    + "across %d threads), mean propagation latency %.1fms.",
+                    elapsedSeconds, metrics.getRecordsRead(), metrics.getRecordsRead() / elapsedSeconds,
+                    metrics.getBytesRead() / 1024, metrics.getBytesRead() / 1024 / elapsedSeconds, resultSink.getPropagatedBytes() / 1024,
+                    metrics.getSuccessfulPropagations(), metrics.getFailedPropagations(), metrics.getRetries(),
+                    metrics.getDeadLetteredBatches(), sink.getAcceptedRequests(),
+                    sink.getFailedRequests(), sink.getRejectedRequests(),
+                    (sink.getAcceptedRequests() + sink.getFailedRequests() + sink.getRejectedRequests())
+                    / elapsedSeconds, peakHeap.get() / (1024 * 1024),
+                    100D * metrics.getThrottleBlockedMillis() / (elapsedSeconds * 1000 * throttlingThreads),
+                    metrics.getThrottleBlockedMillis(), throttlingThreads, metrics.getMeanPropagationLatencyMillis()));
+        }
+    }
+
+    private static Options loadTestOptions() {
+        var options = new Options();
+        options.addOption(new Option("s", "shards", true, "The number of export shards generated, 10 by default."));
+        options.addOption(new Option("r", "records", true, "The number of records per shard, 10000 by default."));
+        options.addOption(new Option("rs", "recordsize", true, "The size in bytes of each record, 1000 by default."));
+        options.addOption(new Option("sl", "sinklatency", true,
+                "The milliseconds the sink takes to answer each request, 20 by default."));
+        options.addOption(new Option("se", "sinkerrorrate", true,
+                "The fraction of requests the sink fails with a server error, 0 by default."));
+        options.addOption(new Option("sr", "sinkrps", true,
+                "The max requests per second the sink accepts, the rest get a 429 status; 0 (default) disables it."));
+        options.addOption(new Option("h", "help", false, "Prints the usage."));
+        return options;
+    }
+
+    /**
+     * Writes the generated shards where the launcher expects the export, with the file names BigQuery uses.
+     */
+    private static void writeShards(Storage storage, String exportPrefix, Integer shards, Integer records,
+            Integer recordSize) {
+        IntStream.range(0, shards).forEach(shard -> {
+            var content = NdjsonCorpus.generate(records, recordSize).toFileContent();
+            storage.create(BlobInfo.newBuilder(BUCKET,
+                    String.format("%s/export/1/%012d-file.json", exportPrefix, shard)).build(), content);
+        });
+        LOG.info(String.format("Generated %d shards of %d records of %d bytes.", shards, records, recordSize));
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.bqexportpropagator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP destination for the load tests, emulating a remote sink: each request is answered after the configured
+ * latency, a configured fraction of them fail with a server error, and the requests going over the configured rate are
+ * rejected with a 429 status (a token bucket allowing one second of burst). A rate lower or equal than zero disables
+ * the limit.
+ */
+public class LoadTestSink implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Long latencyInMillis;
+    private final Double errorRate;
+    private final Double requestsPerSecond;
+    private final LongAdder acceptedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private Double availableRequests;
+    private Long lastRefill = System.nanoTime();
+
+    /**
+     * Starts the sink in an ephemeral local port.
+     *
+     * @param latencyInMillis the time each request takes to be answered
+     * @param errorRate the fraction of the requests answered with a server error
+     * @param requestsPerSecond the max rate of accepted requests
+     * @throws IOException if the sink can not be started
+     */
+    public LoadTestSink(Long latencyInMillis, Double errorRate, Double requestsPerSecond) throws IOException {
+        this.latencyInMillis = latencyInMillis;
+        this.errorRate = errorRate;
+        this.requestsPerSecond = requestsPerSecond;
+        this.availableRequests = Math.max(1D, requestsPerSecond);
+        // the latency is emulated by sleeping, so every request in flight holds a thread
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public URI getEndpoint() {
+        return URI.create(String.format("http://localhost:%d/propagate", server.getAddress().getPort()));
+    }
+
+    public Long getAcceptedRequests() {
+        return acceptedRequests.sum();
+    }
+
+    public Long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public Long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try ( exchange) {
+            receivedBytes.add(exchange.getRequestBody().transferTo(OutputStream.nullOutputStream()));
+            Model.sleep(TimeUnit.MILLISECONDS.toNanos(latencyInMillis));
+            int status;
+            if (!tryAcquire()) {
+                rejectedRequests.increment();
+                status = 429;
+            } else if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failedRequests.increment();
+                status = 500;
+            } else {
+                acceptedRequests.increment();
+                status = 200;
+            }
+            exchange.sendResponseHeaders(status, -1);
+        }
+    }
+
+    private synchronized Boolean tryAcquire() {
+        if (requestsPerSecond <= 0) {
+            return true;
+        }
+        var now = System.nanoTime();
+        availableRequests = Math.min(Math.max(1D, requestsPerSecond),
+                availableRequests + (now - lastRefill) / 1_000_000_000D * requestsPerSecond);
+        lastRefill = now;
+        if (availableRequests < 1) {
+            return false;
+        }
+        availableRequests--;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
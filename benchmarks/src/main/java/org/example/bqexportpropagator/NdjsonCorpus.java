@@ -0,0 +1,81 @@
+package org.example.bqexportpropagator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Synthetic newline delimited JSON corpus, shaped like the rows BigQuery exports: a few scalar and array properties
+ * plus a string property padded to reach the requested record size. The content is generated from a fixed seed so
+ * every benchmark run sees the same data.
+ */
+public class NdjsonCorpus {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+    private static final Long SEED = 42L;
+
+    private final List<String> records;
+
+    private NdjsonCorpus(List<String> records) {
+        this.records = records;
+    }
+
+    /**
+     * Generates a corpus.
+     *
+     * @param recordCount the number of records
+     * @param recordSize the approximate size in bytes of each record
+     * @return the generated corpus
+     */
+    public static NdjsonCorpus generate(Integer recordCount, Integer recordSize) {
+        var random = new Random(SEED);
+        return new NdjsonCorpus(IntStream.range(0, recordCount)
+                .mapToObj(i -> record(random, i, recordSize))
+                .collect(Collectors.toList()));
+    }
+
+    private static String record(Random random, Integer id, Integer recordSize) {
+        var record = new StringBuilder(recordSize + 16)
+                .append("{\"id\":").append(id)
+                .append(",\"score\":").append(random.nextDouble())
+                .append(",\"active\":").append(random.nextBoolean())
+                .append(",\"tags\":[\"t").append(random.nextInt(100)).append("\",\"t").append(random.nextInt(100))
+                .append("\"],\"payload\":\"");
+        while (record.length() < recordSize - 2) {
+            record.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return record.append("\"}").toString();
+    }
+
+    public List<String> getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the records as their UTF-8 encoded bytes.
+     *
+     * @return the encoded records.
+     */
+    public List<byte[]> getEncodedRecords() {
+        return records.stream()
+                .map(record -> record.getBytes(StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the corpus as the content of an exported file, one record per line.
+     *
+     * @return the file content.
+     */
+    public byte[] toFileContent() {
+        var content = new ByteArrayOutputStream();
+        getEncodedRecords().forEach(record -> {
+            content.writeBytes(record);
+            content.write('\n');
+        });
+        return content.toByteArray();
+    }
+}
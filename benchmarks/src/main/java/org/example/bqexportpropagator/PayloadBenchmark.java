@@ -0,0 +1,91 @@
+package org.example.bqexportpropagator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.example.bqexportpropagator.Model.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of assembling a propagation payload (close to the accumulation size limit) from its records: the
+ * entries one, writing the accumulated strings as the propagation functions do, and the byte one, handing the already
+ * encoded records to a byte accumulator that copies them into a pooled buffer, as the byte mode reading does. Both
+ * run the production code, so they assemble the same payload layout. Run it with the GC profiler ({@code -prof gc}) to
+ * compare their allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int recordSize;
+
+    private List<String> entries;
+    private List<byte[]> encodedEntries;
+    private ByteArrayOutputStream output;
+    private RecordBufferPool bufferPool;
+    private PropagationResultSink resultSink;
+    private Propagator<ByteBuffer> payloadPropagator;
+    private Integer payloadSize;
+
+    @Setup
+    public void setup() {
+        var corpus = NdjsonCorpus.generate(
+                (int) (AccumulatorBenchmark.ACCUMULATION_SIZE_LIMIT / recordSize), recordSize);
+        entries = corpus.getRecords();
+        encodedEntries = corpus.getEncodedRecords();
+        output = new ByteArrayOutputStream(AccumulatorBenchmark.ACCUMULATION_SIZE_LIMIT.intValue() * 2);
+        bufferPool = new RecordBufferPool(1024 * 1024, 4);
+        resultSink = new PropagationResultSink(1, result -> {
+        });
+        var result = new PropagationResult(AccumulatorBenchmark.FILE_LOCATION, "", 0, Optional.empty(), true);
+        payloadPropagator = new DirectPropagator<>((location, payload) -> {
+            payloadSize = payload.remaining();
+            return result;
+        }, () -> {
+        });
+    }
+
+    @Benchmark
+    public Integer writeEntriesPayload() throws IOException {
+        output.reset();
+        try ( var writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            Functions.writePayload(entries, writer);
+        }
+        return output.size();
+    }
+
+    @Benchmark
+    public Integer assembleBytePayload() {
+        // the corpus fits in a single payload, propagated when the accumulator is drained
+        var accumulator = new ByteAccumulator(
+                AccumulationLimits.ofSize(AccumulatorBenchmark.ACCUMULATION_SIZE_LIMIT * 2),
+                AccumulatorBenchmark.FILE_LOCATION, payloadPropagator, resultSink, bufferPool,
+                Functions.PAYLOAD_PREFIX, Functions.PAYLOAD_RECORD_SEPARATOR, Functions.PAYLOAD_SUFFIX,
+                SourceCheckpoint.untracked());
+        for (var entry : encodedEntries) {
+            accumulator.append(entry, 0, entry.length).completeRecord();
+        }
+        accumulator.drain();
+        return payloadSize;
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.bqexportpropagator;
+
+import java.util.concurrent.TimeUnit;
+import org.example.bqexportpropagator.Model.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of a {@code throttle()} call, alone and with multiple workers sharing the same throttler
+ * instance. The throttlers are configured with rates that are never reached, so no call sleeps and the measured time is
+ * the bookkeeping and lock contention one. The measured variant adds the metrics decorator used by the launcher.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThrottlerBenchmark {
+
+    private static final Long PAYLOAD_SIZE = 1024L * 900L;
+    private static final Double UNREACHABLE_RATE = 1e12D;
+
+    @Param({"simple", "tokenbucket", "adaptive"})
+    String throttlerType;
+
+    @Param({"false", "true"})
+    Boolean measured;
+
+    private Throttler throttler;
+
+    @Setup
+    public void setup() {
+        Throttler created;
+        switch (throttlerType) {
+            case "tokenbucket":
+                created = new TokenBucketThrottler(UNREACHABLE_RATE, UNREACHABLE_RATE.longValue(), 1D);
+                break;
+            case "adaptive":
+                created = new AdaptiveThrottler(UNREACHABLE_RATE, UNREACHABLE_RATE, UNREACHABLE_RATE, 0.1D, 0.5D,
+                        1000L);
+                break;
+            default:
+                created = new SimpleThrottler(0L);
+        }
+        throttler = measured ? new MeasuredThrottler(created, new PropagationMetrics()) : created;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void throttleAlone() {
+        throttler.throttle(PAYLOAD_SIZE);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void throttleContended() {
+        throttler.throttle(PAYLOAD_SIZE);
+    }
+}
@@ -1,11 +1,17 @@
 module bq.export.propagator {
     requires com.google.gson;
+    requires com.google.protobuf;
     requires commons.cli;
     requires gax;
     requires google.cloud.bigquery;
+    requires google.cloud.bigquerystorage;
     requires google.cloud.core;
     requires google.cloud.storage;
     requires java.logging;
+    requires java.management;
+    requires java.net.http;
+    requires jdk.httpserver;
+    requires org.apache.avro;
 
     exports org.example.bqexportpropagator;
 }
@@ -1,25 +1,62 @@
 package org.example.bqexportpropagator;
 
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
 import com.google.cloud.storage.Blob;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
-import java.nio.charset.Charset;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 import static org.example.bqexportpropagator.Launcher.DATE_FORMATTER;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
 import org.example.bqexportpropagator.Model.*;
 
 /**
@@ -29,66 +66,672 @@ public class Functions {
 
     private static final Logger LOG = Logger.getLogger(Functions.class.getCanonicalName());
     private static final Integer PROPAGATED_MESSAGE_INFO_LENGTH = 60;
-    private static final Gson GSON = new Gson();
+    private static final Integer READ_BUFFER_SIZE = 1024 * 1024;
+    private static final Integer GZIP_BUFFER_SIZE = 64 * 1024;
+    static final String GZIP_FILE_EXTENSION = ".gz";
+    private static final Integer RANGE_BUFFER_SIZE = 64 * 1024;
+    private static final Integer RECORD_BUFFER_INITIAL_CAPACITY = 1024 * 1024;
+    private static final Integer MAX_POOLED_RECORD_BUFFERS = 32;
+    private static final byte RECORD_DELIMITER = '\n';
+    private static final String PAYLOAD_PREFIX_STRING = "{\"records\":[";
+    private static final String PAYLOAD_RECORD_SEPARATOR_STRING = ",";
+    static final String PAYLOAD_SUFFIX_STRING = "]}";
+    static final byte[] PAYLOAD_PREFIX = PAYLOAD_PREFIX_STRING.getBytes(StandardCharsets.UTF_8);
+    static final byte[] PAYLOAD_RECORD_SEPARATOR
+            = PAYLOAD_RECORD_SEPARATOR_STRING.getBytes(StandardCharsets.UTF_8);
+    static final byte[] PAYLOAD_SUFFIX = PAYLOAD_SUFFIX_STRING.getBytes(StandardCharsets.UTF_8);
+    private static final RecordBufferPool RECORD_BUFFER_POOL
+            = new RecordBufferPool(RECORD_BUFFER_INITIAL_CAPACITY, MAX_POOLED_RECORD_BUFFERS);
+    /**
+     * Each worker thread reuses its own read buffer across the files it processes.
+     */
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER
+            = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_BUFFER_SIZE));
+    /**
+     * The TIME and TIMESTAMP formats of the BigQuery JSON exports, the fraction of second only when it is not zero.
+     */
+    private static final DateTimeFormatter EXPORT_TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("HH:mm:ss")
+            .appendFraction(ChronoField.MICRO_OF_SECOND, 0, 6, true)
+            .toFormatter();
+    private static final DateTimeFormatter EXPORT_TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("uuuu-MM-dd ")
+            .append(EXPORT_TIME_FORMATTER)
+            .appendLiteral(" UTC")
+            .toFormatter()
+            .withZone(ZoneOffset.UTC);
 
     /**
-     * Process a GCS blob file reading its content and propagating them based on the configured size limit and rate for
-     * the target destination.
+     * Process a GCS blob file, or a range of it, reading its content and propagating them based on the configured size
+     * limit and rate for the target destination. The propagation results are sent to the result sink as they are
+     * produced.
      *
-     * @param accumulationSizeLimit
-     * @param millisPerPropagationEvent
-     * @param file the GCS blob file to be process
-     * @return a Stream of results, one per propagation event
+     * @param limits the limits triggering the propagation of the accumulated data
+     * @param transformer the transformation applied to the records before they are accumulated
+     * @param propagator the propagator shared by all the workers
+     * @param resultSink the sink receiving the propagation results
+     * @param journal the journal recording the propagation progress of the file
+     * @param range the GCS blob file range to be process
+     * @return the number of propagation events triggered for the file range
      */
-    static Stream<PropagationResult> processGCSBlob(Long accumulationSizeLimit,
-            Long millisPerPropagationEvent, Blob file) {
-        Stream<PropagationResult> results = Stream.empty();
+    static Long processGCSBlob(AccumulationLimits limits, RecordTransformer transformer,
+            Propagator<List<String>> propagator, PropagationResultSink resultSink, CheckpointJournal journal,
+            BlobRange range) {
+        var propagationCount = 0L;
+        var accumulator = new Accumulator(limits, range.getLocation(), propagator, resultSink,
+                journal.checkpoint(range.getName()));
         // Open a channel to read data from the GCS blob
-        try ( var reader = new BufferedReader(Channels.newReader(file.reader(), Charset.defaultCharset()))) {
+        try ( var reader = new BufferedReader(Channels.newReader(openRangeChannel(range), StandardCharsets.UTF_8));
+                var expirationCheck = limits.scheduleExpirationCheck(accumulator::drainExpired)) {
             // stream through the lines in the blob file and accumulate entries for propagation
-            results = reader
+            propagationCount = reader
                     .lines()
-                    .reduce(new Accumulator(accumulationSizeLimit, file.getSelfLink(), Functions::dummyPropagate,
-                            new SimpleThrottler(millisPerPropagationEvent)),
-                            (accumulator, json) -> accumulator.accumulate(json),
-                            Accumulator::combine)
+                    // the records dropped by the transformation are not accumulated
+                    .map(countedTransformation(transformer, resultSink, range.getLocation()))
+                    .filter(Objects::nonNull)
+                    .reduce(accumulator, (current, json) -> current.accumulate(json), Accumulator::combine)
                     // lets make sure we drain the accumulation before getting the results
-                    .drain()
-                    .getResults();
+                    .complete()
+                    .getPropagationCount();
+        } catch (IOException ex) {
+            reportReadError(range, resultSink, ex);
+        }
+        return propagationCount;
+    }
+
+    /**
+     * Process a GCS blob file, or a range of it, routing its records to the partitions of their keys. The records are
+     * accumulated and propagated by the partition workers, the propagation results are sent to the result sink as they
+     * are produced.
+     *
+     * @param partitioner the key partitioner shared by all the workers
+     * @param transformer the transformation applied to the records before they are routed
+     * @param resultSink the sink receiving the propagation results
+     * @param range the GCS blob file range to be process
+     * @return zero, the propagations are triggered by the partitions
+     */
+    static Long processGCSBlobPartitioned(KeyPartitioner partitioner, RecordTransformer transformer,
+            PropagationResultSink resultSink, BlobRange range) {
+        // Open a channel to read data from the GCS blob
+        try ( var reader = new BufferedReader(Channels.newReader(openRangeChannel(range), StandardCharsets.UTF_8))) {
+            reader.lines()
+                    .map(countedTransformation(transformer, resultSink, range.getLocation()))
+                    .filter(Objects::nonNull)
+                    .forEach(partitioner::route);
         } catch (IOException ex) {
-            var errorMessage = String.format("Error while reading from GCS for file %s", file.getSelfLink());
+            reportReadError(range, resultSink, ex);
+        }
+        return 0L;
+    }
+
+    /**
+     * Process a GCS blob file in Avro format, the records are decoded while the file is being read and each one of them
+     * is converted into its JSON representation before being accumulated, so the propagation function receives the same
+     * entries it would receive from a JSON export. The deflate and snappy codecs are supported. Avro files are not
+     * split, the range is expected to cover the whole file.
+     *
+     * @param limits the limits triggering the propagation of the accumulated data
+     * @param transformer the transformation applied to the records before they are accumulated
+     * @param propagator the propagator shared by all the workers
+     * @param resultSink the sink receiving the propagation results
+     * @param journal the journal recording the propagation progress of the file
+     * @param range the GCS blob file range to be process
+     * @return the number of propagation events triggered for the file
+     */
+    static Long processGCSBlobAvro(AccumulationLimits limits, RecordTransformer transformer,
+            Propagator<List<String>> propagator, PropagationResultSink resultSink, CheckpointJournal journal,
+            BlobRange range) {
+        var propagationCount = 0L;
+        var accumulator = new Accumulator(limits, range.getLocation(), propagator, resultSink,
+                journal.checkpoint(range.getName()));
+        // Open a stream to decode the records from the GCS blob
+        try ( var records = new DataFileStream<GenericRecord>(Channels.newInputStream(openRangeChannel(range)),
+                new GenericDatumReader<>());
+                var expirationCheck = limits.scheduleExpirationCheck(accumulator::drainExpired)) {
+            var transformation = countedTransformation(transformer, resultSink, range.getLocation());
+            // the record instance is reused while decoding the file
+            GenericRecord record = null;
+            while (records.hasNext()) {
+                record = records.next(record);
+                accumulate(accumulator, transformation, toJson(record));
+            }
+            // lets make sure we drain the accumulation before getting the results
+            propagationCount = accumulator.complete().getPropagationCount();
+        } catch (IOException | AvroRuntimeException ex) {
+            reportReadError(range, resultSink, ex);
+        }
+        return propagationCount;
+    }
+
+    /**
+     * Process a BigQuery Storage Read API stream, the Avro row blocks are decoded as they arrive from the server with
+     * the session schema and each row is converted into its JSON representation before being accumulated, so the
+     * propagation function receives the same entries it would receive from a JSON export.
+     *
+     * @param limits the limits triggering the propagation of the accumulated data
+     * @param transformer the transformation applied to the records before they are accumulated
+     * @param propagator the propagator shared by all the workers
+     * @param resultSink the sink receiving the propagation results
+     * @param client the read client shared by all the workers
+     * @param schema the Avro schema of the read session
+     * @param streamName the name of the read stream to be processed
+     * @return the number of propagation events triggered for the stream
+     */
+    static Long processReadStream(AccumulationLimits limits, RecordTransformer transformer,
+            Propagator<List<String>> propagator, PropagationResultSink resultSink, BigQueryReadClient client,
+            Schema schema, String streamName) {
+        var propagationCount = 0L;
+        var accumulator = new Accumulator(limits, streamName, propagator, resultSink);
+        var transformation = countedTransformation(transformer, resultSink, streamName);
+        var datumReader = new GenericDatumReader<GenericRecord>(schema);
+        // the decoder and record instances are reused while decoding the stream
+        BinaryDecoder decoder = null;
+        GenericRecord record = null;
+        try ( var expirationCheck = limits.scheduleExpirationCheck(accumulator::drainExpired)) {
+            var request = ReadRowsRequest.newBuilder().setReadStream(streamName).build();
+            for (var response : client.readRowsCallable().call(request)) {
+                decoder = DecoderFactory.get().binaryDecoder(
+                        response.getAvroRows().getSerializedBinaryRows().newInput(), decoder);
+                while (!decoder.isEnd()) {
+                    record = datumReader.read(record, decoder);
+                    accumulate(accumulator, transformation, toJson(record));
+                }
+            }
+            // lets make sure we drain the accumulation before getting the results
+            propagationCount = accumulator.drain().getPropagationCount();
+        } catch (IOException | AvroRuntimeException | ApiException ex) {
+            var errorMessage = String.format("Error while reading from read stream %s", streamName);
             LOG.log(Level.SEVERE, errorMessage, ex);
-            var dateTimeString = Launcher.DATE_FORMATTER.format(LocalDateTime.now());
-            var fileSize = file.getSize().intValue();
-            var resultMessage = Optional.of(errorMessage);
-            results = Stream.of(new PropagationResult(file.getSelfLink(), dateTimeString, fileSize, resultMessage, false));
+            // the accumulated batch is not propagated
+            resultSink.accept(PropagationResult.failed(streamName, accumulator.getPendingPayloadSize(),
+                    Optional.of(errorMessage)));
         }
-        return results;
+        return propagationCount;
+    }
+
+    /**
+     * Encodes an Avro record into the JSON representation BigQuery uses in its JSON exports, with a streaming writer and
+     * without building a JSON tree: INT64 values as strings (keeping their 64 bit precision), NUMERIC and BIGNUMERIC
+     * decimals as plain decimal strings, TIMESTAMP values as {@code 2020-10-17 12:30:00.123456 UTC}, DATE and TIME
+     * values in their ISO form, BYTES as base64 strings and the non finite FLOAT64 values as the {@code "NaN"},
+     * {@code "Infinity"} and {@code "-Infinity"} strings, so the entries are always valid JSON.
+     *
+     * @param record the Avro record
+     * @return the JSON entry
+     */
+    static String toJson(GenericRecord record) {
+        var output = new StringWriter(256);
+        try ( var writer = new JsonWriter(output)) {
+            writeAvroValue(writer, record.getSchema(), record);
+        } catch (IOException ex) {
+            // the writer targets memory, it does not fail
+            throw new UncheckedIOException(ex);
+        }
+        return output.toString();
+    }
+
+    private static void writeAvroValue(JsonWriter writer, Schema schema, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+            return;
+        }
+        var logicalType = schema.getLogicalType();
+        switch (schema.getType()) {
+            case UNION:
+                writeAvroValue(writer, schema.getTypes().get(GenericData.get().resolveUnion(schema, value)), value);
+                break;
+            case RECORD: {
+                var record = (GenericRecord) value;
+                writer.beginObject();
+                for (var field : schema.getFields()) {
+                    writer.name(field.name());
+                    writeAvroValue(writer, field.schema(), record.get(field.pos()));
+                }
+                writer.endObject();
+                break;
+            }
+            case ARRAY:
+                writer.beginArray();
+                for (var item : (Collection<?>) value) {
+                    writeAvroValue(writer, schema.getElementType(), item);
+                }
+                writer.endArray();
+                break;
+            case MAP:
+                writer.beginObject();
+                for (var entry : ((Map<?, ?>) value).entrySet()) {
+                    writer.name(entry.getKey().toString());
+                    writeAvroValue(writer, schema.getValueType(), entry.getValue());
+                }
+                writer.endObject();
+                break;
+            case BYTES:
+            case FIXED: {
+                // the reused records keep their buffers, the position is not moved
+                var buffer = value instanceof GenericFixed
+                        ? ByteBuffer.wrap(((GenericFixed) value).bytes()) : ((ByteBuffer) value).duplicate();
+                var bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                if (logicalType instanceof LogicalTypes.Decimal) {
+                    var decimal = new BigDecimal(new BigInteger(bytes), ((LogicalTypes.Decimal) logicalType).getScale());
+                    writer.value(decimal.stripTrailingZeros().toPlainString());
+                } else {
+                    writer.value(Base64.getEncoder().encodeToString(bytes));
+                }
+                break;
+            }
+            case INT: {
+                var number = (Integer) value;
+                if (logicalType instanceof LogicalTypes.Date) {
+                    writer.value(LocalDate.ofEpochDay(number).toString());
+                } else if (logicalType instanceof LogicalTypes.TimeMillis) {
+                    writer.value(EXPORT_TIME_FORMATTER.format(LocalTime.ofNanoOfDay(number * 1_000_000L)));
+                } else {
+                    writer.value(number);
+                }
+                break;
+            }
+            case LONG: {
+                var number = (Long) value;
+                if (logicalType instanceof LogicalTypes.TimestampMicros) {
+                    writer.value(EXPORT_TIMESTAMP_FORMATTER.format(Instant.ofEpochSecond(
+                            Math.floorDiv(number, 1_000_000L), Math.floorMod(number, 1_000_000L) * 1_000L)));
+                } else if (logicalType instanceof LogicalTypes.TimestampMillis) {
+                    writer.value(EXPORT_TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(number)));
+                } else if (logicalType instanceof LogicalTypes.TimeMicros) {
+                    writer.value(EXPORT_TIME_FORMATTER.format(LocalTime.ofNanoOfDay(number * 1_000L)));
+                } else {
+                    writer.value(number.toString());
+                }
+                break;
+            }
+            case FLOAT:
+            case DOUBLE: {
+                var number = (Number) value;
+                if (Double.isFinite(number.doubleValue())) {
+                    writer.value(number);
+                } else {
+                    writer.value(number.toString());
+                }
+                break;
+            }
+            case BOOLEAN:
+                writer.value((Boolean) value);
+                break;
+            default:
+                // strings (DATETIME, GEOGRAPHY and JSON columns included) and enums
+                writer.value(value.toString());
+        }
+    }
+
+    /**
+     * Transforms a record and accumulates it, unless the transformation drops it.
+     */
+    private static void accumulate(Accumulator accumulator, Function<String, String> transformation, String record) {
+        var entry = transformation.apply(record);
+        if (entry != null) {
+            accumulator.accumulate(entry);
+        }
+    }
+
+    /**
+     * Wraps the record transformation of a source, the records and bytes read from the source are counted before they
+     * are transformed, then each record is counted as kept or dropped by the transformation. The records the
+     * transformation rejects, not JSON objects or not parseable, are dropped and reported as failures.
+     *
+     * @param transformer the transformation applied to the records of the source
+     * @param resultSink the sink receiving the failures of the rejected records
+     * @param location the location of the source
+     * @return a function returning the transformed record, or null when the record is dropped
+     */
+    static Function<String, String> countedTransformation(RecordTransformer transformer,
+            PropagationResultSink resultSink, String location) {
+        var metrics = resultSink.getMetrics();
+        var progress = metrics.sourceStarted(location);
+        return record -> {
+            var size = utf8Length(record);
+            progress.addRecord();
+            progress.addBytes(size);
+            try {
+                var entry = transformer.transform(record);
+                metrics.recordTransformed(entry != null);
+                return entry;
+            } catch (IllegalArgumentException ex) {
+                metrics.recordTransformed(false);
+                resultSink.accept(PropagationResult.failed(location, (long) size, Optional.of(ex.getMessage())));
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Computes the UTF-8 encoded length of a string without encoding it, the unpaired surrogates are counted as the
+     * single replacement byte the encoder writes for them.
+     */
+    static Integer utf8Length(String value) {
+        var length = value.length();
+        for (var i = 0; i < value.length(); i++) {
+            var character = value.charAt(i);
+            if (character >= 0x800) {
+                if (Character.isHighSurrogate(character) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // the pair takes 4 bytes for its 2 chars
+                    length += 2;
+                    i++;
+                } else if (!Character.isSurrogate(character)) {
+                    length += 2;
+                }
+            } else if (character >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Process a GCS blob file working at the byte level: the blob channel is read into a reusable buffer, the records
+     * are split on the newline bytes and accumulated in pooled buffers that already hold the payload to be propagated,
+     * avoiding the charset decoding and encoding of each record. The propagation results are sent to the result sink as
+     * they are produced.
+     *
+     * @param limits the limits triggering the propagation of the accumulated data
+     * @param propagator the propagator shared by all the workers
+     * @param resultSink the sink receiving the propagation results
+     * @param journal the journal recording the propagation progress of the file
+     * @param range the GCS blob file range to be process
+     * @return the number of propagation events triggered for the file range
+     */
+    static Long processGCSBlobBytes(AccumulationLimits limits, Propagator<ByteBuffer> propagator,
+            PropagationResultSink resultSink, CheckpointJournal journal, BlobRange range) {
+        var propagationCount = 0L;
+        var accumulator = new ByteAccumulator(limits, range.getLocation(), propagator, resultSink,
+                RECORD_BUFFER_POOL, PAYLOAD_PREFIX, PAYLOAD_RECORD_SEPARATOR, PAYLOAD_SUFFIX,
+                journal.checkpoint(range.getName()));
+        var readBuffer = READ_BUFFER.get();
+        // Open a channel to read data from the GCS blob
+        try ( var channel = openRangeChannel(range);
+                var expirationCheck = limits.scheduleExpirationCheck(accumulator::drainExpired)) {
+            readBuffer.clear();
+            while (channel.read(readBuffer) >= 0) {
+                readBuffer.flip();
+                splitRecords(readBuffer, accumulator);
+                readBuffer.clear();
+            }
+            // lets make sure we drain the accumulation before getting the results
+            propagationCount = accumulator.complete().getPropagationCount();
+        } catch (IOException ex) {
+            reportReadError(range, resultSink, ex);
+        }
+        return propagationCount;
+    }
+
+    /**
+     * Opens a channel to read the GCS blob content, when the blob is gzip compressed (based on its extension) the
+     * content is decompressed while being read, without staging it to disk.
+     *
+     * @param file the GCS blob file to be read
+     * @return a channel with the blob content
+     * @throws IOException
+     */
+    static ReadableByteChannel openBlobChannel(Blob file) throws IOException {
+        return decompressIfNeeded(file, file.reader());
+    }
+
+    private static ReadableByteChannel decompressIfNeeded(Blob file, ReadableByteChannel channel) throws IOException {
+        if (file.getName().endsWith(GZIP_FILE_EXTENSION)) {
+            return Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), GZIP_BUFFER_SIZE));
+        }
+        return channel;
+    }
+
+    /**
+     * Opens a channel to read the content of a GCS blob range, when the range does not cover the whole blob the channel
+     * is positioned right before the range start and its boundaries are aligned to the record delimiters: the range
+     * holds the records starting within it, so the first partial record is skipped and the last one is read until its
+     * end even when it goes beyond the range end. When the range content was prefetched it is read from memory.
+     *
+     * @param range the GCS blob file range to be read
+     * @return a channel with the range content
+     * @throws IOException
+     */
+    static ReadableByteChannel openRangeChannel(BlobRange range) throws IOException {
+        if (range.isWhole()) {
+            return range.content == null
+                    ? openBlobChannel(range.blob)
+                    : decompressIfNeeded(range.blob, Channels.newChannel(new ByteArrayInputStream(range.content)));
+        }
+        ReadableByteChannel channel;
+        if (range.content == null) {
+            var reader = range.blob.reader();
+            reader.seek(range.getReadStart());
+            channel = reader;
+        } else {
+            // the last record of the range may go past the prefetched content, its tail is read from GCS only if needed
+            var tail = range.blob.reader();
+            tail.seek(range.end);
+            channel = Channels.newChannel(new SequenceInputStream(new ByteArrayInputStream(range.content),
+                    Channels.newInputStream(tail)));
+        }
+        return new RecordRangeChannel(channel, range.start, range.end, RECORD_DELIMITER, RANGE_BUFFER_SIZE);
+    }
+
+    /**
+     * Scans the buffer content for record delimiters, handing each record to the accumulator. The last portion of the
+     * buffer is appended as an incomplete record, to be completed with the content of the next read.
+     *
+     * @param buffer a heap buffer ready to be read
+     * @param accumulator the accumulator receiving the records
+     */
+    static void splitRecords(ByteBuffer buffer, ByteAccumulator accumulator) {
+        var data = buffer.array();
+        var start = buffer.arrayOffset() + buffer.position();
+        var end = buffer.arrayOffset() + buffer.limit();
+        for (var i = start; i < end; i++) {
+            if (data[i] == RECORD_DELIMITER) {
+                accumulator.append(data, start, i - start).completeRecord();
+                start = i + 1;
+            }
+        }
+        accumulator.append(data, start, end - start);
+    }
+
+    /**
+     * Logs the error and reports the failed read of the GCS file range to the result sink.
+     *
+     * @param range the GCS blob file range that failed
+     * @param resultSink the sink receiving the propagation results
+     * @param ex the error
+     */
+    private static void reportReadError(BlobRange range, PropagationResultSink resultSink, Exception ex) {
+        var errorMessage = String.format("Error while reading from GCS for file %s", range.getLocation());
+        LOG.log(Level.SEVERE, errorMessage, ex);
+        resultSink.accept(PropagationResult.failed(range.getLocation(), range.getSize(), Optional.of(errorMessage)));
     }
 
     /**
      * Dummy propagation function, it stores the chunked entries from the original file location in a local folder to
-     * simulate some latency.
+     * simulate some latency. The payload is streamed straight into the file, the entries are expected to be valid JSON
+     * objects (as BigQuery exports them) so there is no need to parse them.
      *
      * @param fileLocation original file location
      * @param accumulatedEntries a list of entries to be propagated
      * @return the propagation results
      */
-    private static PropagationResult dummyPropagate(String fileLocation, List<String> accumulatedEntries) {
+    static PropagationResult dummyPropagate(String fileLocation, List<String> accumulatedEntries) {
         var processingDateString = DATE_FORMATTER.format(LocalDateTime.now());
-        var arrayPayload = accumulatedEntries.stream().collect(Collectors.joining(","));
-        var records = GSON.fromJson(String.format("[%s]", arrayPayload), JsonArray.class);
-        var requestJson = new JsonObject();
-        requestJson.add("records", records);
-        var payload = GSON.toJson(requestJson);
-        var size = payload.getBytes().length;
-        var message = Optional.of(String.format("Sent to endpoint payload %s...", payload.substring(0,
-                payload.length() < PROPAGATED_MESSAGE_INFO_LENGTH ? payload.length() : PROPAGATED_MESSAGE_INFO_LENGTH)));
+        var message = Optional.of(String.format("Sent to endpoint payload %s...", payloadPreview(accumulatedEntries)));
+        var size = 0;
         var success = false;
 
         try {
-            // simulate some IO latency since there is no remote call being done
-            Files.writeString(Files.createDirectories(Paths.get("temps")).resolve(processingDateString), payload);
+            // simulate some IO latency since there is no remote call being done, parallel workers may propagate in the 
+            // same millisecond so the thread id is added to the file name
+            var payloadFile = Files.createDirectories(Paths.get("temps"))
+                    .resolve(processingDateString + "-" + Thread.currentThread().getId());
+            try ( var writer = Files.newBufferedWriter(payloadFile, StandardCharsets.UTF_8)) {
+                writePayload(accumulatedEntries, writer);
+            }
+            size = (int) Files.size(payloadFile);
+            LOG.info(String.format("Propagated %d bytes from %s with message %s at %s", size, fileLocation, message.get(),
+                    processingDateString));
+            success = true;
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Error storing file", ex);
+        }
+        return new PropagationResult(fileLocation, processingDateString, size, message, success);
+    }
+
+    /**
+     * Writes the propagation payload, a JSON object with the {@code records} property containing all the entries, into
+     * the provided writer without building any intermediate representation.
+     *
+     * @param entries the JSON entries to be included in the payload
+     * @param writer the destination of the payload
+     * @throws IOException
+     */
+    static void writePayload(List<String> entries, Writer writer) throws IOException {
+        writer.write(PAYLOAD_PREFIX_STRING);
+        var first = true;
+        for (var entry : entries) {
+            if (!first) {
+                writer.write(PAYLOAD_RECORD_SEPARATOR_STRING);
+            }
+            writer.write(entry);
+            first = false;
+        }
+        writer.write(PAYLOAD_SUFFIX_STRING);
+    }
+
+    /**
+     * Computes the size in bytes of the payload that would be written for the entries, without writing it.
+     *
+     * @param entries the JSON entries to be included in the payload
+     * @return the payload size
+     */
+    static Long payloadSize(List<String> entries) {
+        var size = (long) PAYLOAD_PREFIX.length + PAYLOAD_SUFFIX.length
+                + (long) Math.max(entries.size() - 1, 0) * PAYLOAD_RECORD_SEPARATOR.length;
+        for (var entry : entries) {
+            size += utf8Length(entry);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the first characters of the payload that would be written for the entries, for logging purposes.
+     *
+     * @param entries the JSON entries to be included in the payload
+     * @return the payload preview
+     */
+    private static String payloadPreview(List<String> entries) {
+        var preview = new StringBuilder(PAYLOAD_PREFIX_STRING);
+        var iterator = entries.iterator();
+        while (preview.length() < PROPAGATED_MESSAGE_INFO_LENGTH && iterator.hasNext()) {
+            preview.append(iterator.next()).append(iterator.hasNext() ? PAYLOAD_RECORD_SEPARATOR_STRING : "");
+        }
+        return preview.substring(0, Math.min(preview.length(), PROPAGATED_MESSAGE_INFO_LENGTH));
+    }
+
+    /**
+     * Decorates a propagation function validating the accumulated entries before propagating them, each entry is
+     * checked to be a single well formed JSON value using a streaming reader (no JSON tree is built). When an invalid
+     * entry is found the entries are not propagated and a failed result is returned.
+     *
+     * @param propagationFunction the function to decorate
+     * @return a validating propagation function
+     */
+    static BiFunction<String, List<String>, PropagationResult> validatingEntries(
+            BiFunction<String, List<String>, PropagationResult> propagationFunction) {
+        return (fileLocation, entries) -> {
+            var position = 0;
+            for (var entry : entries) {
+                var validationError = validateJson(new StringReader(entry));
+                if (validationError.isPresent()) {
+                    return PropagationResult.failed(fileLocation, payloadSize(entries), Optional.of(String.format(
+                            "Invalid JSON entry at position %d: %s", position, validationError.get())));
+                }
+                position++;
+            }
+            return propagationFunction.apply(fileLocation, entries);
+        };
+    }
+
+    /**
+     * Decorates a payload propagation function validating the payload before propagating it, the payload is checked to
+     * be a single well formed JSON value using a streaming reader (no JSON tree is built). When the payload is invalid
+     * it is not propagated and a failed result is returned.
+     *
+     * @param propagationFunction the function to decorate
+     * @return a validating propagation function
+     */
+    static BiFunction<String, ByteBuffer, PropagationResult> validatingPayload(
+            BiFunction<String, ByteBuffer, PropagationResult> propagationFunction) {
+        return (fileLocation, payload) -> validateJson(
+                new InputStreamReader(asInputStream(payload.duplicate()), StandardCharsets.UTF_8))
+                .map(validationError -> PropagationResult.failed(fileLocation, (long) payload.remaining(),
+                Optional.of("Invalid JSON payload: " + validationError)))
+                .orElseGet(() -> propagationFunction.apply(fileLocation, payload));
+    }
+
+    /**
+     * Checks the content of the reader is a single well formed JSON value, skipping through its tokens.
+     *
+     * @param content the content to check
+     * @return the validation error, empty when the content is valid
+     */
+    private static Optional<String> validateJson(Reader content) {
+        try ( var reader = new JsonReader(content)) {
+            reader.skipValue();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return Optional.of("unexpected content after the JSON value");
+            }
+            return Optional.empty();
+        } catch (IOException | IllegalStateException ex) {
+            return Optional.of(Optional.ofNullable(ex.getMessage()).orElse(ex.getClass().getSimpleName()));
+        }
+    }
+
+    private static InputStream asInputStream(ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] destination, int offset, int length) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                var count = Math.min(length, buffer.remaining());
+                buffer.get(destination, offset, count);
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Dummy propagation function for already assembled payloads, it stores the payload from the original file location
+     * in a local folder to simulate some latency.
+     *
+     * @param fileLocation original file location
+     * @param payload the payload to be propagated
+     * @return the propagation results
+     */
+    static PropagationResult dummyPropagatePayload(String fileLocation, ByteBuffer payload) {
+        var processingDateString = DATE_FORMATTER.format(LocalDateTime.now());
+        var size = payload.remaining();
+        var messagePrefix = StandardCharsets.UTF_8.decode(
+                payload.duplicate().limit(payload.position() + Math.min(size, PROPAGATED_MESSAGE_INFO_LENGTH)));
+        var message = Optional.of(String.format("Sent to endpoint payload %s...", messagePrefix));
+        var success = false;
+
+        // simulate some IO latency since there is no remote call being done, parallel workers may propagate in the 
+        // same millisecond so the thread id is added to the file name
+        try ( var channel = Files.newByteChannel(Files.createDirectories(Paths.get("temps"))
+                .resolve(processingDateString + "-" + Thread.currentThread().getId()),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(payload.duplicate());
             LOG.info(String.format("Propagated %d bytes from %s with message %s at %s", size, fileLocation, message.get(),
                     processingDateString));
             success = true;
@@ -117,6 +760,47 @@ public class Functions {
         }
     }
 
+    /**
+     * Represents a function with 4 parameters.
+     *
+     * @param <A> Type of function's first parameter.
+     * @param <B> Type of function's second parameter.
+     * @param <C> Type of function's third parameter.
+     * @param <D> Type of function's fourth parameter.
+     * @param <R> Type of function's return.
+     */
+    @FunctionalInterface
+    public interface QuadFunction<A, B, C, D, R> {
+
+        R apply(A a, B b, C c, D d);
+
+        default <V> QuadFunction<A, B, C, D, V> andThen(Function<? super R, ? extends V> after) {
+            Objects.requireNonNull(after);
+            return (A a, B b, C c, D d) -> after.apply(apply(a, b, c, d));
+        }
+    }
+
+    /**
+     * Represents a function with 5 parameters.
+     *
+     * @param <A> Type of function's first parameter.
+     * @param <B> Type of function's second parameter.
+     * @param <C> Type of function's third parameter.
+     * @param <D> Type of function's fourth parameter.
+     * @param <E> Type of function's fifth parameter.
+     * @param <R> Type of function's return.
+     */
+    @FunctionalInterface
+    public interface PentaFunction<A, B, C, D, E, R> {
+
+        R apply(A a, B b, C c, D d, E e);
+
+        default <V> PentaFunction<A, B, C, D, E, V> andThen(Function<? super R, ? extends V> after) {
+            Objects.requireNonNull(after);
+            return (A a, B b, C c, D d, E e) -> after.apply(apply(a, b, c, d, e));
+        }
+    }
+
     /**
      * Enables the partial execution of a TriFunction in multiple steps.
      *
@@ -131,4 +815,37 @@ public class Functions {
         return (a) -> (b) -> (c) -> func.apply(a, b, c);
     }
 
+    /**
+     * Enables the partial execution of a QuadFunction in multiple steps.
+     *
+     * @param <A> Type of function's first parameter.
+     * @param <B> Type of function's second parameter.
+     * @param <C> Type of function's third parameter.
+     * @param <D> Type of function's fourth parameter.
+     * @param <R> Type of function's return.
+     * @param func QuadFunction instance to partially apply.
+     * @return a curried function representation.
+     */
+    public static <A, B, C, D, R> Function<A, Function<B, Function<C, Function<D, R>>>> curry(
+            QuadFunction<A, B, C, D, R> func) {
+        return (a) -> (b) -> (c) -> (d) -> func.apply(a, b, c, d);
+    }
+
+    /**
+     * Enables the partial execution of a PentaFunction in multiple steps.
+     *
+     * @param <A> Type of function's first parameter.
+     * @param <B> Type of function's second parameter.
+     * @param <C> Type of function's third parameter.
+     * @param <D> Type of function's fourth parameter.
+     * @param <E> Type of function's fifth parameter.
+     * @param <R> Type of function's return.
+     * @param func PentaFunction instance to partially apply.
+     * @return a curried function representation.
+     */
+    public static <A, B, C, D, E, R> Function<A, Function<B, Function<C, Function<D, Function<E, R>>>>> curry(
+            PentaFunction<A, B, C, D, E, R> func) {
+        return (a) -> (b) -> (c) -> (d) -> (e) -> func.apply(a, b, c, d, e);
+    }
+
 }
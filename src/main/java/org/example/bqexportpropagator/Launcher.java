@@ -2,32 +2,53 @@ package org.example.bqexportpropagator;
 
 import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.ExtractJobConfiguration;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobId;
 import com.google.cloud.bigquery.JobInfo;
 import com.google.cloud.bigquery.JobStatistics;
 import com.google.cloud.bigquery.QueryJobConfiguration;
 import com.google.cloud.bigquery.QueryParameterValue;
 import com.google.cloud.bigquery.TableId;
-import com.google.cloud.storage.Blob;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import org.apache.avro.Schema;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.example.bqexportpropagator.Model.*;
-import org.example.bqexportpropagator.Functions.TriFunction;
+import org.example.bqexportpropagator.Functions.PentaFunction;
 
 public class Launcher {
 
@@ -36,6 +57,61 @@ public class Launcher {
     private static final Long DESIRED_FILE_SIZE = 1024L * 1024 * 10;
     private static final Long MILLIS_PER_PROPAGATION_EVENT = 1000L;
     private static final Integer GCS_RESULT_PAGE_SIZE = 10;
+    private static final Integer PROPAGATION_WORKERS = 1;
+    private static final String THROTTLER_TYPE = "simple";
+    private static final List<String> THROTTLER_TYPES = List.of("simple", "tokenbucket", "adaptive");
+    private static final Double REQUESTS_PER_SECOND = 1D;
+    private static final Long BYTES_PER_SECOND = 0L;
+    private static final Double BURST_SECONDS = 1D;
+    private static final Double MAX_REQUESTS_PER_SECOND = 10D;
+    private static final Long TARGET_LATENCY_IN_MILLIS = 1000L;
+    private static final Double ADAPTIVE_MIN_REQUESTS_PER_SECOND = 0.1D;
+    private static final Double ADAPTIVE_INCREASE_STEP = 0.1D;
+    private static final Double ADAPTIVE_DECREASE_FACTOR = 0.5D;
+    private static final Integer PIPELINE_WORKERS = 0;
+    private static final Integer PIPELINE_QUEUE_CAPACITY = 10;
+    private static final Integer MAX_IN_FLIGHT = 0;
+    private static final Integer FAILURE_LOG_SIZE = 100;
+    private static final String EXPORT_FORMAT = "json";
+    private static final String EXPORT_COMPRESSION = "none";
+    private static final Long SPLIT_SIZE = 0L;
+    private static final Integer PREFETCH_COUNT = 0;
+    private static final Long EXPORT_POLL_INTERVAL_IN_MILLIS = 5000L;
+    private static final Integer METRICS_PORT = 0;
+    private static final Long CONNECT_TIMEOUT_IN_MILLIS = 10000L;
+    private static final Long REQUEST_TIMEOUT_IN_MILLIS = 30000L;
+    private static final Integer MAX_BATCH_RECORDS = 0;
+    private static final Long LINGER_IN_MILLIS = 0L;
+    private static final Integer PARTITIONS = 4;
+    private static final Integer PARTITION_QUEUE_CAPACITY = 1000;
+    private static final Integer MAX_RETRIES = 3;
+    private static final Long RETRY_BACKOFF_IN_MILLIS = 200L;
+    private static final Long RETRY_MAX_BACKOFF_IN_MILLIS = 30000L;
+    private static final Double RETRY_BUDGET_RATIO = 0.2D;
+    private static final Integer RETRY_BUDGET_CAPACITY = 100;
+    private static final Long PREFETCH_BUDGET = 1024L * 1024 * 256;
+    private static final String SOURCE_MODE = "gcs";
+    private static final List<String> SOURCE_MODES = List.of("gcs", "storageapi", "exportdata");
+    /**
+     * Supported export formats, mapped to their BigQuery names.
+     */
+    private static final Map<String, String> EXPORT_FORMATS = Map.of("json", "NEWLINE_DELIMITED_JSON", "avro", "AVRO");
+    /**
+     * Supported compression codecs per export format, mapped to their BigQuery names.
+     */
+    private static final Map<String, Map<String, String>> EXPORT_COMPRESSIONS = Map.of(
+            "json", Map.of("none", "NONE", "gzip", "GZIP"),
+            "avro", Map.of("none", "NONE", "deflate", "DEFLATE", "snappy", "SNAPPY"));
+    /**
+     * Supported export formats, mapped to their EXPORT DATA statement names.
+     */
+    private static final Map<String, String> EXPORT_DATA_FORMATS = Map.of("json", "JSON", "avro", "AVRO");
+    private static final Map<String, String> EXPORT_FILE_EXTENSIONS = Map.of("json", ".json", "avro", ".avro");
+    /**
+     * Expected compression ratio per compression codec, used to estimate the size of the exported files. Codecs not
+     * present here are not expected to reduce the file sizes.
+     */
+    private static final Map<String, Long> EXPORT_COMPRESSION_RATIOS = Map.of("gzip", 8L);
 
     /**
      * Close to a MB of data.
@@ -45,27 +121,150 @@ public class Launcher {
     public static void main(String[] arguments) {
         try {
             var args = captureArguments(arguments);
-            var gcsBucketPrefix = "gs://" + args.exportBucketName + "/" + args.exportBucketPathPrefix;
-            var exportURIs = createExportWildcardPaths(args.bqQuery, args.bqQueryParams, args.project,
-                    args.destinationDataset, args.exportDestinationTable, gcsBucketPrefix);
-            moveDataToExportTable(args.bqQuery, args.bqQueryParams, args.project, args.destinationDataset,
-                    args.exportDestinationTable);
-
-            exportTableToGCS(args.project, args.destinationDataset, args.exportDestinationTable,
-                    gcsBucketPrefix, exportURIs, "NEWLINE_DELIMITED_JSON");
-            propagateExportResults(args.exportBucketName, args.exportBucketPathPrefix, args.accumulationSizeLimit,
-                    args.throttleTimeInMillis, Functions::processGCSBlob);
+            var metrics = new PropagationMetrics();
+            // the metrics are exposed over JMX, and over HTTP when a port is configured, while the propagation runs
+            try ( var metricsExporter = MetricsExporter.start(metrics, args.metricsAddress, args.metricsPort)) {
+                propagate(args, metrics);
+            }
         } catch (InterruptedException ex) {
             LOG.log(Level.SEVERE, "Export procedure interrupted.", ex);
         } catch (BigQueryException bqex) {
             LOG.log(Level.SEVERE, "Errors occurred while interacting with BigQuery service.", bqex);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Errors occurred while accessing the checkpoint journal or the metrics endpoint.", ex);
         } catch (ParseException ex) {
             LOG.info("Exiting");
             System.exit(1);
         }
     }
 
-    private static Arguments captureArguments(String[] args) throws ParseException {
+    /**
+     * Runs the extraction and propagation procedure based on the captured arguments, reporting the propagation
+     * summary once completed.
+     *
+     * @param args the captured arguments
+     * @param metrics the metrics collected while the propagation runs
+     * @throws InterruptedException
+     * @throws IOException if there are issues while accessing the checkpoint journal or the dead letter files
+     * @throws BigQueryException if there are issues while interacting with BigQuery service
+     */
+    private static void propagate(Arguments args, PropagationMetrics metrics) throws InterruptedException,
+            IOException {
+        var resultSink = new PropagationResultSink(args.failureLogSize, Launcher::reportFailedPropagation, metrics);
+        BiFunction<String, List<String>, PropagationResult> entriesPropagation = Functions::dummyPropagate;
+        BiFunction<String, ByteBuffer, PropagationResult> payloadPropagation = Functions::dummyPropagatePayload;
+        if (args.endpoint != null) {
+            var httpSink = new HttpPropagationSink(URI.create(args.endpoint), args.httpHeaders, args.gzipPayload,
+                    Duration.ofMillis(args.connectTimeoutInMillis), Duration.ofMillis(args.requestTimeoutInMillis));
+            entriesPropagation = httpSink::propagateEntries;
+            payloadPropagation = httpSink::propagatePayload;
+        }
+        if (args.validatePayload) {
+            entriesPropagation = Functions.validatingEntries(entriesPropagation);
+            payloadPropagation = Functions.validatingPayload(payloadPropagation);
+        }
+        try ( var deadLetters = openDeadLetterSpool(args)) {
+            if (args.replayDeadLetter != null) {
+                // the chunks are propagated as they were recorded, no query nor export is executed
+                replayDeadLetters(args, resultSink, payloadPropagation, deadLetters);
+            } else if ("storageapi".equals(args.sourceMode)) {
+                // the rows are read straight from the destination table, no export to GCS is needed
+                moveDataToExportTable(args.bqQuery, args.bqQueryParams, args.project, args.destinationDataset,
+                        args.exportDestinationTable);
+                propagateTableRows(args, resultSink, entriesPropagation, deadLetters::appendEntries);
+            } else {
+                exportAndPropagate(args, resultSink, entriesPropagation, payloadPropagation, deadLetters);
+            }
+            reportPropagationSummary(resultSink, deadLetters);
+        }
+    }
+
+    /**
+     * Exports the query results to GCS, or reuses the export of the interrupted run when resuming, and propagates the
+     * exported files with the propagation function matching the export format.
+     *
+     * @param args the captured arguments
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param entriesPropagation the function propagating the accumulated entries
+     * @param payloadPropagation the function propagating the assembled payloads, used in byte mode
+     * @param deadLetters the spool receiving the chunks that could not be propagated
+     * @throws InterruptedException
+     * @throws IOException if there are issues while accessing the checkpoint journal
+     */
+    private static void exportAndPropagate(Arguments args, PropagationResultSink resultSink,
+            BiFunction<String, List<String>, PropagationResult> entriesPropagation,
+            BiFunction<String, ByteBuffer, PropagationResult> payloadPropagation, DeadLetterSpool deadLetters)
+            throws InterruptedException, IOException {
+        try ( var journal = openCheckpointJournal(args)) {
+            Optional<Job> runningExport = Optional.empty();
+            if (args.resume) {
+                // the export of the interrupted run is reused, the query and export are not executed again
+                args.exportBucketPathPrefix = journal.getExportPrefix();
+                LOG.info(String.format("Resuming the propagation of the export at gs://%s/%s",
+                        args.exportBucketName, args.exportBucketPathPrefix));
+            } else {
+                var gcsBucketPrefix = "gs://" + args.exportBucketName + "/" + args.exportBucketPathPrefix;
+                if ("exportdata".equals(args.sourceMode)) {
+                    // a single job writes the query results straight to GCS, no temporal table is involved
+                    var exportURI = createExportWildcardPath(gcsBucketPrefix,
+                            exportFileExtension(args.exportFormat, args.exportCompression));
+                    var exportJob = startQueryExportToGCS(args.bqQuery, args.bqQueryParams, args.project,
+                            exportURI, EXPORT_DATA_FORMATS.get(args.exportFormat),
+                            EXPORT_COMPRESSIONS.get(args.exportFormat).get(args.exportCompression));
+                    if (args.streamExport) {
+                        runningExport = Optional.of(exportJob);
+                    } else {
+                        // Blocks until this job completes its execution, either failing or succeeding.
+                        reportJobCompletion(exportJob.waitFor(), String.format(
+                                "Query results exported successfully to destinations at %s", gcsBucketPrefix));
+                    }
+                } else {
+                    var exportURIs = createExportWildcardPaths(args.bqQuery, args.bqQueryParams, args.project,
+                            args.destinationDataset, args.exportDestinationTable, gcsBucketPrefix,
+                            exportFileExtension(args.exportFormat, args.exportCompression),
+                            exportCompressionRatio(args.exportCompression));
+                    moveDataToExportTable(args.bqQuery, args.bqQueryParams, args.project, args.destinationDataset,
+                            args.exportDestinationTable);
+
+                    if (args.streamExport) {
+                        // the exported files are propagated as they land, while the extract job is still running
+                        runningExport = Optional.of(startTableExportToGCS(args.project, args.destinationDataset,
+                                args.exportDestinationTable, gcsBucketPrefix, exportURIs,
+                                EXPORT_FORMATS.get(args.exportFormat),
+                                EXPORT_COMPRESSIONS.get(args.exportFormat).get(args.exportCompression)));
+                    } else {
+                        exportTableToGCS(args.project, args.destinationDataset, args.exportDestinationTable,
+                                gcsBucketPrefix, exportURIs, EXPORT_FORMATS.get(args.exportFormat),
+                                EXPORT_COMPRESSIONS.get(args.exportFormat).get(args.exportCompression));
+                    }
+                }
+            }
+            var storage = StorageOptions.getDefaultInstance().getService();
+            var transformer = recordTransformer(args);
+            if ("avro".equals(args.exportFormat)) {
+                propagateExportResults(storage, args, journal, runningExport, resultSink, entriesPropagation,
+                        deadLetters::appendEntries, (limits, propagator, sink, blobJournal, range)
+                        -> Functions.processGCSBlobAvro(limits, transformer, propagator, sink, blobJournal, range));
+            } else if (args.byteMode) {
+                propagateExportResults(storage, args, journal, runningExport, resultSink, payloadPropagation,
+                        deadLetters::appendPayload, Functions::processGCSBlobBytes);
+            } else if (args.partitionKey != null) {
+                propagatePartitionedExportResults(storage, args, runningExport, resultSink, entriesPropagation,
+                        deadLetters::appendEntries);
+            } else {
+                propagateExportResults(storage, args, journal, runningExport, resultSink, entriesPropagation,
+                        deadLetters::appendEntries, (limits, propagator, sink, blobJournal, range)
+                        -> Functions.processGCSBlob(limits, transformer, propagator, sink, blobJournal, range));
+            }
+            if (runningExport.isPresent()) {
+                reportJobCompletion(runningExport.get().waitFor(), String.format(
+                        "Data exported successfully to destinations at gs://%s/%s", args.exportBucketName,
+                        args.exportBucketPathPrefix));
+            }
+        }
+    }
+
+    static Arguments captureArguments(String[] args) throws ParseException {
         var options = new Options();
         var required = true;
 
@@ -73,13 +272,14 @@ public class Launcher {
         project.setRequired(required);
         options.addOption(project);
 
+        // the temporal table is not used by the exportdata source mode, checked once the source mode is known
         var dataset = new Option("d", "dataset", true, "BigQuery Dataset to store temporal export data.");
-        dataset.setRequired(required);
+        dataset.setRequired(false);
         options.addOption(dataset);
 
         var table = new Option("tp", "tableprefix", true,
                 "BigQuery Table prefix name to store temporal export data, current datetime will be added to the name.");
-        table.setRequired(required);
+        table.setRequired(false);
         options.addOption(table);
 
         var bucket = new Option("b", "bucket", true, "Cloud Storage Bucket to store temporal export data.");
@@ -99,26 +299,361 @@ public class Launcher {
         accumulationSizeLimit.setRequired(false);
         options.addOption(accumulationSizeLimit);
 
+        var hardSizeLimit = new Option("hsl", "hardsizelimit", false, "Applies the size limit to the whole propagated payload, records and wrapper included, and never crosses it: the record that would overflow a payload is held back for the next one, and records bigger than the limit are reported as failed and skipped.");
+        hardSizeLimit.setRequired(false);
+        options.addOption(hardSizeLimit);
+
+        var maxBatchRecords = new Option("mbr", "maxbatchrecords", true, "The max number of records accumulated before propagating the data, zero (default) disables the limit.");
+        maxBatchRecords.setRequired(false);
+        options.addOption(maxBatchRecords);
+
+        var linger = new Option("lg", "linger", true, "The max age in milliseconds of an accumulated batch, once reached its propagation starts (up to a quarter of that time late, the propagation still waits for the throttle); checked as the records are read and every quarter of that time; zero (default) disables the limit.");
+        linger.setRequired(false);
+        options.addOption(linger);
+
+        var partitionKey = new Option("pk", "partitionkey", true, "The JSON field (a dotted path for nested fields) the records are partitioned by, each partition is accumulated and propagated by its own worker keeping the order of the records of each key; not set (default) disables the partitioning.");
+        partitionKey.setRequired(false);
+        options.addOption(partitionKey);
+
+        var partitions = new Option("pn", "partitions", true, "The number of partitions, and partition workers, when partitioning by a key.");
+        partitions.setRequired(false);
+        options.addOption(partitions);
+
+        var fields = new Option("fd", "fields", true, "Comma separated list of the JSON fields (dotted paths for nested fields) kept from each record, a field can be renamed as in 'user.id:userId'; not set (default) keeps the whole records.");
+        fields.setRequired(false);
+        options.addOption(fields);
+
+        var filter = new Option("ft", "filter", true, "A condition, formatted as 'field=value' or 'field!=value', the records have to satisfy to be propagated; can be repeated, all of them have to hold; the records that can not be parsed are reported as failures.");
+        filter.setRequired(false);
+        options.addOption(filter);
+
         var throttleTimeInMillis = new Option("tt", "throttletime", true, "The amount of milliseconds to wait before propagating subsequent data chunks.");
         throttleTimeInMillis.setRequired(false);
         options.addOption(throttleTimeInMillis);
 
+        var propagationWorkers = new Option("w", "workers", true, "The number of GCS files that will be read and propagated in parallel, all of them sharing the same throttling rate.");
+        propagationWorkers.setRequired(false);
+        options.addOption(propagationWorkers);
+
+        var throttlerType = new Option("th", "throttler", true, "The throttling strategy to use: simple (fixed time between propagations, see throttletime), tokenbucket (see requestspersecond, bytespersecond and burst) or adaptive (starts at requestspersecond, see maxrequestspersecond and targetlatency).");
+        throttlerType.setRequired(false);
+        options.addOption(throttlerType);
+
+        var requestsPerSecond = new Option("rps", "requestspersecond", true, "The max amount of propagation requests per second when using the tokenbucket throttler, zero or less disables the limit.");
+        requestsPerSecond.setRequired(false);
+        options.addOption(requestsPerSecond);
+
+        var bytesPerSecond = new Option("bps", "bytespersecond", true, "The max amount of propagated bytes per second when using the tokenbucket throttler, zero or less disables the limit.");
+        bytesPerSecond.setRequired(false);
+        options.addOption(bytesPerSecond);
+
+        var burstSeconds = new Option("bu", "burst", true, "The amount of seconds of unused quota that the tokenbucket throttler can spend in a burst.");
+        burstSeconds.setRequired(false);
+        options.addOption(burstSeconds);
+
+        var maxRequestsPerSecond = new Option("mrps", "maxrequestspersecond", true, "The max amount of propagation requests per second the adaptive throttler can reach.");
+        maxRequestsPerSecond.setRequired(false);
+        options.addOption(maxRequestsPerSecond);
+
+        var targetLatency = new Option("tl", "targetlatency", true, "The propagation latency, in milliseconds, over which the adaptive throttler decreases the rate.");
+        targetLatency.setRequired(false);
+        options.addOption(targetLatency);
+
+        var pipelineWorkers = new Option("pw", "pipelineworkers", true, "The number of propagation workers draining the queue of accumulated data, when zero the propagation happens in the same thread reading the GCS files.");
+        pipelineWorkers.setRequired(false);
+        options.addOption(pipelineWorkers);
+
+        var pipelineQueueCapacity = new Option("qc", "queuecapacity", true, "The number of accumulated data chunks that can wait in queue for propagation workers, the GCS reads are blocked when the queue is full.");
+        pipelineQueueCapacity.setRequired(false);
+        options.addOption(pipelineQueueCapacity);
+
+        var maxInFlight = new Option("mif", "maxinflight", true, "The max number of propagation requests in flight at the same time, when greater than zero the propagation requests are sent asynchronously (ignored when pipelineworkers is set).");
+        maxInFlight.setRequired(false);
+        options.addOption(maxInFlight);
+
+        var failureLogSize = new Option("fl", "failurelog", true, "The number of failed propagations kept in memory to be printed when the process completes.");
+        failureLogSize.setRequired(false);
+        options.addOption(failureLogSize);
+
+        var byteMode = new Option("bm", "bytemode", false, "Reads and accumulates the exported files at the byte level, assembling the propagation payloads without decoding the records into Strings.");
+        byteMode.setRequired(false);
+        options.addOption(byteMode);
+
+        var validatePayload = new Option("vp", "validatepayload", false, "Validates the accumulated data is well formed JSON before propagating it, invalid data is reported as a failed propagation.");
+        validatePayload.setRequired(false);
+        options.addOption(validatePayload);
+
+        var exportFormat = new Option("ef", "exportformat", true, "The format used to export the query results: json (default) or avro.");
+        exportFormat.setRequired(false);
+        options.addOption(exportFormat);
+
+        var exportCompression = new Option("ec", "exportcompression", true, "The compression codec used to export the query results: none (default), gzip (json only), deflate or snappy (avro only).");
+        exportCompression.setRequired(false);
+        options.addOption(exportCompression);
+
+        var sourceMode = new Option("sm", "sourcemode", true, "The way the query results are read: gcs (default, exported to the bucket and read from there), exportdata (exported to the bucket by a single EXPORT DATA statement, skipping the temporal table, and read from there) or storageapi (read from the destination table with the BigQuery Storage Read API, one read stream per worker).");
+        sourceMode.setRequired(false);
+        options.addOption(sourceMode);
+
+        var checkpointJournal = new Option("cj", "checkpointjournal", true, "Local file where the propagation progress of each exported file is recorded, so an interrupted run can be resumed.");
+        checkpointJournal.setRequired(false);
+        options.addOption(checkpointJournal);
+
+        var resume = new Option("r", "resume", false, "Resumes the run recorded in the checkpoint journal, reusing its export and skipping the data already propagated (the query and export are not executed again).");
+        resume.setRequired(false);
+        options.addOption(resume);
+
+        var overwriteJournal = new Option("oj", "overwritejournal", false, "Starts a new checkpoint journal even when the file already exists, discarding the progress of the run it recorded.");
+        overwriteJournal.setRequired(false);
+        options.addOption(overwriteJournal);
+
+        var splitSize = new Option("ss", "splitsize", true, "Uncompressed json exported files bigger than this amount of bytes are split in ranges of this size, aligned to the record boundaries, that are read in parallel; zero (default) disables the splitting.");
+        splitSize.setRequired(false);
+        options.addOption(splitSize);
+
+        var prefetchCount = new Option("pf", "prefetch", true, "The number of upcoming exported files (or file ranges) downloaded into memory while the current ones are being propagated, zero (default) disables the prefetch.");
+        prefetchCount.setRequired(false);
+        options.addOption(prefetchCount);
+
+        var prefetchBudget = new Option("pb", "prefetchbudget", true, "The max amount of bytes of prefetched files held in memory, files bigger than this are not prefetched.");
+        prefetchBudget.setRequired(false);
+        options.addOption(prefetchBudget);
+
+        var streamExport = new Option("se", "streamexport", false, "Propagates the exported files as soon as they land in GCS, polling the export location while the extract job is running, instead of waiting for the whole export to complete.");
+        streamExport.setRequired(false);
+        options.addOption(streamExport);
+
+        var metricsPort = new Option("mp", "metricsport", true, "The local port serving the propagation metrics in the Prometheus text format at /metrics, zero (default) disables the endpoint (the metrics are always available over JMX).");
+        metricsPort.setRequired(false);
+        options.addOption(metricsPort);
+
+        var metricsAddress = new Option("ma", "metricsaddress", true, "The address the metrics endpoint is bound to, the loopback address (default) keeps it local, 0.0.0.0 exposes it on every interface (for example to be scraped from outside a container).");
+        metricsAddress.setRequired(false);
+        options.addOption(metricsAddress);
+
+        var endpoint = new Option("e", "endpoint", true, "The HTTP endpoint the accumulated data is POSTed to (HTTP/2 when supported, reusing the connections), when not set the data is written to local files.");
+        endpoint.setRequired(false);
+        options.addOption(endpoint);
+
+        var httpHeader = new Option("hh", "httpheader", true, "A header, formatted as 'Name: value', added to the requests sent to the endpoint, it replaces a default one with the same name (as Content-Type); can be repeated. The headers managed by the HTTP client, as Host or Connection, are rejected.");
+        httpHeader.setRequired(false);
+        options.addOption(httpHeader);
+
+        var gzipPayload = new Option("gz", "gzippayload", false, "Compresses with gzip the payloads sent to the endpoint.");
+        gzipPayload.setRequired(false);
+        options.addOption(gzipPayload);
+
+        var connectTimeout = new Option("ct", "connecttimeout", true, "The amount of milliseconds to wait while connecting to the endpoint.");
+        connectTimeout.setRequired(false);
+        options.addOption(connectTimeout);
+
+        var requestTimeout = new Option("rt", "requesttimeout", true, "The amount of milliseconds to wait for the endpoint response, after which the propagation is reported as failed.");
+        requestTimeout.setRequired(false);
+        options.addOption(requestTimeout);
+
+        var maxRetries = new Option("mr", "maxretries", true, "The max number of times a failed propagation is retried, with an exponential backoff and jitter, before its chunk is written to the dead letter file.");
+        maxRetries.setRequired(false);
+        options.addOption(maxRetries);
+
+        var retryBackoff = new Option("rb", "retrybackoff", true, "The amount of milliseconds of the first retry backoff, doubled on every subsequent retry.");
+        retryBackoff.setRequired(false);
+        options.addOption(retryBackoff);
+
+        var retryMaxBackoff = new Option("rmb", "retrymaxbackoff", true, "The max amount of milliseconds of a retry backoff, 30000 by default.");
+        retryMaxBackoff.setRequired(false);
+        options.addOption(retryMaxBackoff);
+
+        var retryBudgetRatio = new Option("rbr", "retrybudgetratio", true, "The fraction of a retry every propagation adds to the retry budget shared by the workers, bounding the retries to that share of the propagations (0.2 by default).");
+        retryBudgetRatio.setRequired(false);
+        options.addOption(retryBudgetRatio);
+
+        var deadLetter = new Option("dl", "deadletter", true, "Local file where the chunks that could not be propagated after the last retry are appended, so they can be replayed.");
+        deadLetter.setRequired(false);
+        options.addOption(deadLetter);
+
+        var replayDeadLetter = new Option("rd", "replaydeadletter", true, "Propagates the chunks recorded in this dead letter file, instead of running the query and the export.");
+        replayDeadLetter.setRequired(false);
+        options.addOption(replayDeadLetter);
+
         var parser = new DefaultParser();
         var formatter = new HelpFormatter();
         Arguments capturedArguments = null;
 
         try {
             var cmd = parser.parse(options, args);
+            if (!THROTTLER_TYPES.contains(cmd.getOptionValue("throttler", THROTTLER_TYPE))) {
+                throw new ParseException("Unknown throttler type, expected one of " + THROTTLER_TYPES);
+            }
+            var format = cmd.getOptionValue("exportformat", EXPORT_FORMAT);
+            if (!EXPORT_FORMATS.containsKey(format)) {
+                throw new ParseException("Unknown export format, expected one of " + EXPORT_FORMATS.keySet());
+            }
+            var compression = cmd.getOptionValue("exportcompression", EXPORT_COMPRESSION);
+            if (!EXPORT_COMPRESSIONS.get(format).containsKey(compression)) {
+                throw new ParseException(String.format("Unsupported compression for export format %s, expected one of %s",
+                        format, EXPORT_COMPRESSIONS.get(format).keySet()));
+            }
+            if (!"json".equals(format) && cmd.hasOption("bytemode")) {
+                throw new ParseException("The byte mode is only supported for the json export format.");
+            }
+            var source = cmd.getOptionValue("sourcemode", SOURCE_MODE);
+            if (!SOURCE_MODES.contains(source)) {
+                throw new ParseException("Unknown source mode, expected one of " + SOURCE_MODES);
+            }
+            if (!"exportdata".equals(source) && (!cmd.hasOption("dataset") || !cmd.hasOption("tableprefix"))) {
+                throw new ParseException("The dataset and tableprefix options are required, the query results are "
+                        + "stored in a temporal table unless the exportdata source mode is used.");
+            }
+            if ("exportdata".equals(source)) {
+                try {
+                    exportDataQuery(cmd.getOptionValue("query"));
+                } catch (IllegalArgumentException ex) {
+                    throw new ParseException(ex.getMessage());
+                }
+            }
+            if ("storageapi".equals(source) && cmd.hasOption("bytemode")) {
+                throw new ParseException("The byte mode is not supported when reading with the Storage Read API.");
+            }
+            if (cmd.hasOption("resume") && !cmd.hasOption("checkpointjournal")) {
+                throw new ParseException("A checkpoint journal is needed to resume a run.");
+            }
+            if (cmd.hasOption("overwritejournal") && (cmd.hasOption("resume") || !cmd.hasOption("checkpointjournal"))) {
+                throw new ParseException("A checkpoint journal can only be overwritten when a new run is started.");
+            }
+            if (cmd.hasOption("checkpointjournal") && !cmd.hasOption("resume") && !cmd.hasOption("overwritejournal")
+                    && Files.exists(Paths.get(cmd.getOptionValue("checkpointjournal")))) {
+                throw new ParseException(String.format("The checkpoint journal %s already exists, use --resume to "
+                        + "continue its run or --overwritejournal to discard it.",
+                        cmd.getOptionValue("checkpointjournal")));
+            }
+            if ("storageapi".equals(source) && cmd.hasOption("checkpointjournal")) {
+                throw new ParseException("Checkpoints are not supported when reading with the Storage Read API.");
+            }
+            if ("storageapi".equals(source) && cmd.hasOption("streamexport")) {
+                throw new ParseException("No export is executed when reading with the Storage Read API.");
+            }
+            var split = Long.valueOf(cmd.getOptionValue("splitsize", SPLIT_SIZE.toString()));
+            if (split > 0 && !("json".equals(format) && "none".equals(compression))) {
+                throw new ParseException("The exported files can only be split for the uncompressed json format.");
+            }
+            if (cmd.hasOption("endpoint")) {
+                try {
+                    var uri = URI.create(cmd.getOptionValue("endpoint"));
+                    if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+                        throw new ParseException("The endpoint must be an http or https URL.");
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw new ParseException("Malformed endpoint URL: " + ex.getMessage());
+                }
+            }
+            if (cmd.hasOption("replaydeadletter") && cmd.hasOption("resume")) {
+                throw new ParseException("A dead letter file replay can not be resumed.");
+            }
+            if (cmd.hasOption("replaydeadletter") && cmd.hasOption("deadletter") && Paths.get(
+                    cmd.getOptionValue("replaydeadletter")).equals(Paths.get(cmd.getOptionValue("deadletter")))) {
+                throw new ParseException("The dead letter file being replayed can not receive the new failures.");
+            }
+            if (cmd.hasOption("partitionkey")) {
+                if (!"json".equals(format) || cmd.hasOption("bytemode") || !"gcs".equals(source)
+                        && !"exportdata".equals(source)) {
+                    throw new ParseException("The partitioning is only supported for the json exported files read "
+                            + "from GCS, without the byte mode.");
+                }
+                if (cmd.hasOption("pipelineworkers") || cmd.hasOption("maxinflight") || split > 0) {
+                    throw new ParseException("The partitioning keeps the order of the records of each key, it can not "
+                            + "be combined with the pipelined or asynchronous propagation nor the file splitting.");
+                }
+                if (cmd.hasOption("checkpointjournal")) {
+                    throw new ParseException("Checkpoints are not supported when partitioning by a key.");
+                }
+            }
+            var projectedFields = Optional.ofNullable(cmd.getOptionValue("fields"))
+                    .map(value -> Arrays.asList(value.split(",")))
+                    .orElse(List.of());
+            var recordFilters = Optional.ofNullable(cmd.getOptionValues("filter"))
+                    .map(Arrays::asList)
+                    .orElse(List.of());
+            if ((!projectedFields.isEmpty() || !recordFilters.isEmpty()) && cmd.hasOption("bytemode")) {
+                throw new ParseException("The records can not be transformed in byte mode, they are not decoded.");
+            }
+            try {
+                RecordTransformer.compile(projectedFields, recordFilters);
+            } catch (IllegalArgumentException ex) {
+                throw new ParseException(ex.getMessage());
+            }
+            var maxBackoff = Long.valueOf(cmd.getOptionValue("retrymaxbackoff", RETRY_MAX_BACKOFF_IN_MILLIS.toString()));
+            var budgetRatio = Double.valueOf(cmd.getOptionValue("retrybudgetratio", RETRY_BUDGET_RATIO.toString()));
+            if (maxBackoff < 0 || budgetRatio < 0) {
+                throw new ParseException("The retry max backoff and budget ratio can not be negative.");
+            }
+            var headers = new HashMap<String, String>();
+            for (var header : Optional.ofNullable(cmd.getOptionValues("httpheader")).orElse(new String[0])) {
+                var separator = header.indexOf(':');
+                if (separator <= 0) {
+                    throw new ParseException("Malformed header, expected 'Name: value' but got: " + header);
+                }
+                headers.put(header.substring(0, separator).trim(), header.substring(separator + 1).trim());
+            }
+            try {
+                HttpPropagationSink.validateHeaders(headers);
+            } catch (IllegalArgumentException ex) {
+                throw new ParseException(ex.getMessage());
+            }
             capturedArguments = new Arguments(
                     cmd.getOptionValue("project"),
                     cmd.getOptionValue("dataset"),
-                    cmd.getOptionValue("tableprefix") + "_" + DATE_FORMATTER.format(LocalDateTime.now()),
+                    Optional.ofNullable(cmd.getOptionValue("tableprefix"))
+                            .map(prefix -> prefix + "_" + DATE_FORMATTER.format(LocalDateTime.now()))
+                            .orElse(null),
                     cmd.getOptionValue("bucket"),
                     cmd.getOptionValue("pathprefix") + "/" + DATE_FORMATTER.format(LocalDateTime.now()),
                     cmd.getOptionValue("query"),
                     Map.of(),
                     Long.valueOf(cmd.getOptionValue("sizelimit", ACCUMULATION_SIZE_LIMIT.toString())),
-                    Long.valueOf(cmd.getOptionValue("throttletime", MILLIS_PER_PROPAGATION_EVENT.toString())));
+                    Long.valueOf(cmd.getOptionValue("throttletime", MILLIS_PER_PROPAGATION_EVENT.toString())),
+                    Integer.valueOf(cmd.getOptionValue("workers", PROPAGATION_WORKERS.toString())),
+                    cmd.getOptionValue("throttler", THROTTLER_TYPE),
+                    Double.valueOf(cmd.getOptionValue("requestspersecond", REQUESTS_PER_SECOND.toString())),
+                    Long.valueOf(cmd.getOptionValue("bytespersecond", BYTES_PER_SECOND.toString())),
+                    Double.valueOf(cmd.getOptionValue("burst", BURST_SECONDS.toString())),
+                    Double.valueOf(cmd.getOptionValue("maxrequestspersecond", MAX_REQUESTS_PER_SECOND.toString())),
+                    Long.valueOf(cmd.getOptionValue("targetlatency", TARGET_LATENCY_IN_MILLIS.toString())),
+                    Integer.valueOf(cmd.getOptionValue("pipelineworkers", PIPELINE_WORKERS.toString())),
+                    Integer.valueOf(cmd.getOptionValue("queuecapacity", PIPELINE_QUEUE_CAPACITY.toString())),
+                    Integer.valueOf(cmd.getOptionValue("maxinflight", MAX_IN_FLIGHT.toString())),
+                    Integer.valueOf(cmd.getOptionValue("failurelog", FAILURE_LOG_SIZE.toString())),
+                    cmd.hasOption("bytemode"),
+                    cmd.hasOption("validatepayload"),
+                    format,
+                    compression,
+                    source,
+                    cmd.getOptionValue("checkpointjournal"),
+                    cmd.hasOption("resume"),
+                    split,
+                    Integer.valueOf(cmd.getOptionValue("prefetch", PREFETCH_COUNT.toString())),
+                    Long.valueOf(cmd.getOptionValue("prefetchbudget", PREFETCH_BUDGET.toString())),
+                    cmd.hasOption("streamexport"),
+                    Integer.valueOf(cmd.getOptionValue("metricsport", METRICS_PORT.toString())),
+                    cmd.getOptionValue("endpoint"),
+                    headers,
+                    cmd.hasOption("gzippayload"),
+                    Long.valueOf(cmd.getOptionValue("connecttimeout", CONNECT_TIMEOUT_IN_MILLIS.toString())),
+                    Long.valueOf(cmd.getOptionValue("requesttimeout", REQUEST_TIMEOUT_IN_MILLIS.toString())),
+                    Integer.valueOf(cmd.getOptionValue("maxretries", MAX_RETRIES.toString())),
+                    Long.valueOf(cmd.getOptionValue("retrybackoff", RETRY_BACKOFF_IN_MILLIS.toString())),
+                    cmd.getOptionValue("deadletter"),
+                    cmd.getOptionValue("replaydeadletter"),
+                    Integer.valueOf(cmd.getOptionValue("maxbatchrecords", MAX_BATCH_RECORDS.toString())),
+                    Long.valueOf(cmd.getOptionValue("linger", LINGER_IN_MILLIS.toString())),
+                    cmd.hasOption("hardsizelimit"),
+                    cmd.getOptionValue("partitionkey"),
+                    Integer.valueOf(cmd.getOptionValue("partitions", PARTITIONS.toString())),
+                    projectedFields,
+                    recordFilters,
+                    cmd.hasOption("overwritejournal"),
+                    cmd.getOptionValue("metricsaddress"),
+                    maxBackoff,
+                    budgetRatio);
         } catch (ParseException e) {
             formatter.printHelp("bq-export-propagator", options);
             throw e;
@@ -126,6 +661,156 @@ public class Launcher {
         return capturedArguments;
     }
 
+    /**
+     * Creates the throttler instance, shared by all the propagation workers, based on the captured arguments.
+     *
+     * @param args the captured arguments
+     * @return a throttler instance
+     */
+    private static Throttler createThrottler(Arguments args) {
+        switch (args.throttlerType) {
+            case "simple":
+                return new SimpleThrottler(args.throttleTimeInMillis);
+            case "tokenbucket":
+                return new TokenBucketThrottler(args.requestsPerSecond, args.bytesPerSecond, args.burstSeconds);
+            case "adaptive":
+                return new AdaptiveThrottler(args.requestsPerSecond, ADAPTIVE_MIN_REQUESTS_PER_SECOND,
+                        args.maxRequestsPerSecond, ADAPTIVE_INCREASE_STEP, ADAPTIVE_DECREASE_FACTOR,
+                        args.targetLatencyInMillis);
+            default:
+                throw new IllegalArgumentException("Unknown throttler type: " + args.throttlerType);
+        }
+    }
+
+    /**
+     * Creates the limits that trigger the propagation of the accumulated data based on the captured arguments.
+     *
+     * @param args the captured arguments
+     * @return the accumulation limits
+     */
+    private static AccumulationLimits accumulationLimits(Arguments args) {
+        return new AccumulationLimits(args.accumulationSizeLimit, args.maxBatchRecords, args.lingerInMillis,
+                args.hardSizeLimit);
+    }
+
+    /**
+     * Creates the transformation applied to the records before they are accumulated based on the captured arguments.
+     *
+     * @param args the captured arguments
+     * @return the record transformer, the identity one when there are no fields nor filters
+     */
+    static RecordTransformer recordTransformer(Arguments args) {
+        return RecordTransformer.compile(args.projectedFields, args.recordFilters);
+    }
+
+    /**
+     * Creates the propagator instance, shared by all the workers reading GCS files, based on the captured arguments.
+     * When retries or a dead letter file are configured, the propagation function is wrapped to retry the failed
+     * propagations, through the same throttler, and to write the chunks still failing after the last retry to the dead
+     * letter spool.
+     *
+     * @param <T> the type of the accumulated batches
+     * @param args the captured arguments
+     * @param throttler the throttler instance in use by the propagator
+     * @param metrics the metrics collected while the propagation runs
+     * @param propagationFunction the function propagating the accumulated batches
+     * @param deadLetter receives the batches that could not be propagated
+     * @return a propagator instance
+     */
+    private static <T> Propagator<T> createPropagator(Arguments args, Throttler throttler, PropagationMetrics metrics,
+            BiFunction<String, T, PropagationResult> propagationFunction, BiPredicate<String, T> deadLetter) {
+        if (args.maxRetries > 0 || args.deadLetterFile != null) {
+            propagationFunction = new RetryingPropagation<>(propagationFunction, throttler,
+                    new RetryBudget(args.retryBudgetRatio, RETRY_BUDGET_CAPACITY), args.maxRetries,
+                    args.retryBackoffInMillis, args.retryMaxBackoffInMillis, deadLetter, metrics);
+        }
+        if (args.pipelineWorkers > 0) {
+            return new PipelinedPropagator<>(propagationFunction, throttler, args.pipelineQueueCapacity,
+                    args.pipelineWorkers);
+        }
+        if (args.maxInFlight > 0) {
+            return AsyncPropagator.ofBlocking(propagationFunction, throttler, args.maxInFlight);
+        }
+        return new DirectPropagator<>(propagationFunction, throttler);
+    }
+
+    /**
+     * Opens the checkpoint journal based on the captured arguments: the journal of the interrupted run when resuming,
+     * a new one for the current export when a journal file is configured, or a disabled one otherwise.
+     *
+     * @param args the captured arguments
+     * @return a checkpoint journal
+     * @throws IOException if the journal file can not be read or written
+     */
+    private static CheckpointJournal openCheckpointJournal(Arguments args) throws IOException {
+        if (args.checkpointJournal == null) {
+            return CheckpointJournal.disabled();
+        }
+        var readingMode = CheckpointJournal.readingMode(args.exportFormat, args.byteMode, args.projectedFields,
+                args.recordFilters);
+        if (args.resume) {
+            return CheckpointJournal.resume(Paths.get(args.checkpointJournal), args.splitSize, readingMode);
+        }
+        return CheckpointJournal.create(Paths.get(args.checkpointJournal), args.exportBucketPathPrefix,
+                args.splitSize, readingMode, args.overwriteJournal);
+    }
+
+    /**
+     * Opens the dead letter spool based on the captured arguments, a disabled one when no dead letter file is
+     * configured.
+     *
+     * @param args the captured arguments
+     * @return a dead letter spool
+     * @throws IOException if the dead letter file can not be written
+     */
+    static DeadLetterSpool openDeadLetterSpool(Arguments args) throws IOException {
+        if (args.deadLetterFile == null) {
+            return DeadLetterSpool.disabled();
+        }
+        return DeadLetterSpool.open(Paths.get(args.deadLetterFile));
+    }
+
+    /**
+     * Propagates again the chunks recorded in a dead letter file, in the order they were recorded. No accumulation
+     * happens, each chunk is sent as it was recorded with the payload propagation function, through the configured
+     * throttler, propagator and retries; the chunks failing again are written to the current dead letter spool.
+     *
+     * @param args the captured arguments
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param propagationFunction the function propagating the recorded payloads
+     * @param deadLetters the spool receiving the chunks that could not be propagated again
+     * @throws IOException if the dead letter file to replay can not be read
+     */
+    private static void replayDeadLetters(Arguments args, PropagationResultSink resultSink,
+            BiFunction<String, ByteBuffer, PropagationResult> propagationFunction, DeadLetterSpool deadLetters)
+            throws IOException {
+        var metrics = resultSink.getMetrics();
+        LOG.info("Replaying the chunks recorded in the dead letter file " + args.replayDeadLetter);
+        try ( var propagator = createPropagator(args, new MeasuredThrottler(createThrottler(args), metrics), metrics,
+                propagationFunction, deadLetters::appendPayload)) {
+            metrics.trackQueueDepth(propagator::getPendingCount);
+            DeadLetterSpool.replay(Paths.get(args.replayDeadLetter), (fileLocation, payload) -> {
+                var size = (long) payload.remaining();
+                propagator.propagate(fileLocation, payload, size)
+                        .whenComplete((result, error) -> resultSink.accept(Optional.ofNullable(result)
+                        .orElseGet(() -> PropagationResult.failed(fileLocation, size,
+                        Optional.ofNullable(error).map(Throwable::getMessage)))));
+            });
+        }
+    }
+
+    /**
+     * Returns the extension for the exported files, compressed JSON files get the gzip extension added so they can be
+     * detected while reading them.
+     *
+     * @param format the export format
+     * @param compression the export compression
+     * @return the file extension
+     */
+    static String exportFileExtension(String format, String compression) {
+        return EXPORT_FILE_EXTENSIONS.get(format) + ("gzip".equals(compression) ? Functions.GZIP_FILE_EXTENSION : "");
+    }
+
     /**
      * By running a BQ dry run builds a list of wildcard URIs that can be used as an export job target. This can be used
      * when the exports job needs to be chunked in files of an expected size (DESIRED_FILE_SIZE).
@@ -136,12 +821,15 @@ public class Launcher {
      * @param destinationTable the destination table
      * @param params the query parameters
      * @param locationPrefix the GCS location prefix where the wildcard URIs will be appended to
+     * @param fileExtension the extension of the exported files
+     * @param compressionRatio the expected compression ratio of the exported files
      * @return A list of Strings containing the wildcard URIs for the export job.
      *
      * @throws BigQueryException if there are issues while interacting with BigQuery service
      */
     private static List<String> createExportWildcardPaths(String queryString, Map<String, QueryParameterValue> params,
-            String project, String destinationDataset, String destinationTable, String locationPrefix) {
+            String project, String destinationDataset, String destinationTable, String locationPrefix,
+            String fileExtension, Long compressionRatio) {
         var bigquery = BigQueryOptions.getDefaultInstance().getService();
 
         var queryConfigBuilder = buildQueryConfig(queryString, project, destinationDataset, destinationTable, params);
@@ -153,21 +841,175 @@ public class Launcher {
 
         var dryRunJob = bigquery.create(JobInfo.of(queryConfig));
 
-        // the number of export URIs that will be sent to the BQ export request
-        Long numberOfWildcardURIs = 1L;
+        var bytesProcessed = dryRunJob.getStatistics() instanceof JobStatistics.QueryStatistics
+                ? ((JobStatistics.QueryStatistics) dryRunJob.getStatistics()).getTotalBytesProcessed()
+                : 0L;
+        return createExportWildcardPaths(bytesProcessed, locationPrefix, fileExtension, compressionRatio);
+    }
 
-        if (dryRunJob.getStatistics() instanceof JobStatistics.QueryStatistics) {
-            var stats = (JobStatistics.QueryStatistics) dryRunJob.getStatistics();
-            numberOfWildcardURIs = stats.getTotalBytesProcessed() / DESIRED_FILE_SIZE;
-            numberOfWildcardURIs = numberOfWildcardURIs == 0L ? 1L : numberOfWildcardURIs;
-        }
+    /**
+     * Builds the list of wildcard URIs for an export job, one per each DESIRED_FILE_SIZE of exported data, at least
+     * one.
+     *
+     * @param bytesProcessed the bytes the query processes, as estimated by its dry run
+     * @param locationPrefix the GCS location prefix where the wildcard URIs will be appended to
+     * @param fileExtension the extension of the exported files
+     * @param compressionRatio the expected compression ratio of the exported files
+     * @return A list of Strings containing the wildcard URIs for the export job.
+     */
+    static List<String> createExportWildcardPaths(Long bytesProcessed, String locationPrefix, String fileExtension,
+            Long compressionRatio) {
+        // compressed files will be smaller than the processed bytes, so less of them are needed
+        var numberOfWildcardURIs = Math.max(bytesProcessed / (DESIRED_FILE_SIZE * compressionRatio), 1L);
 
         // create the wildcard URIs for the export
-        return IntStream.rangeClosed(1, numberOfWildcardURIs.intValue())
-                .mapToObj(i -> String.format("%s/export/%d/*-file", locationPrefix, i))
+        return IntStream.rangeClosed(1, (int) numberOfWildcardURIs)
+                .mapToObj(i -> String.format("%s/export/%d/*-file%s", locationPrefix, i, fileExtension))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the expected compression ratio of the exported files for the given compression codec.
+     *
+     * @param compression the export compression
+     * @return the compression ratio, 1 when the codec is not expected to reduce the file sizes
+     */
+    static Long exportCompressionRatio(String compression) {
+        return EXPORT_COMPRESSION_RATIOS.getOrDefault(compression, 1L);
+    }
+
+    /**
+     * Builds the single wildcard URI used as the target of an EXPORT DATA statement, BigQuery decides the number of
+     * files in that case so no dry run is needed to size them.
+     *
+     * @param locationPrefix the GCS location prefix where the wildcard URI will be appended to
+     * @param fileExtension the extension of the exported files
+     * @return the wildcard URI for the export statement.
+     */
+    private static String createExportWildcardPath(String locationPrefix, String fileExtension) {
+        return String.format("%s/export/*-file%s", locationPrefix, fileExtension);
+    }
+
+    /**
+     * Requests the execution of the query as an EXPORT DATA statement, writing its results straight to the specified
+     * GCS location in a single job, without waiting for its completion.
+     *
+     * @param queryString The query to be executed
+     * @param params the query parameters
+     * @param project the project that host the BQ instance
+     * @param destinationURI the GCS wildcard location
+     * @param formatName file format for the export
+     * @param compression compression codec for the export
+     * @return the running export job
+     * @throws BigQueryException if there are issues while interacting with BigQuery service
+     */
+    private static Job startQueryExportToGCS(String queryString, Map<String, QueryParameterValue> params,
+            String project, String destinationURI, String formatName, String compression) {
+        var bigquery = BigQueryOptions.getDefaultInstance().getService();
+
+        var queryConfigBuilder = QueryJobConfiguration.newBuilder(
+                exportDataStatement(queryString, destinationURI, formatName, compression));
+        // add any existing parameter to the query
+        params.entrySet().stream().forEach(paramEntry -> {
+            queryConfigBuilder.addNamedParameter(paramEntry.getKey(), paramEntry.getValue());
+        });
+
+        LOG.info(String.format("Exporting query results from project %s to gcs location %s", project,
+                destinationURI));
+
+        return bigquery.create(JobInfo.of(JobId.newBuilder().setProject(project).build(),
+                queryConfigBuilder.build()));
+    }
+
+    /**
+     * Builds the EXPORT DATA statement wrapping the query, the option values are quoted as string literals.
+     *
+     * @param queryString The query to be exported
+     * @param destinationURI the GCS wildcard location
+     * @param formatName file format for the export
+     * @param compression compression codec for the export
+     * @return the export statement
+     * @throws IllegalArgumentException if the query holds more than one statement
+     */
+    static String exportDataStatement(String queryString, String destinationURI, String formatName,
+            String compression) {
+        return String.format("EXPORT DATA OPTIONS(uri=%s, format=%s%s) AS\n%s", quoteStringLiteral(destinationURI),
+                quoteStringLiteral(formatName),
+                "NONE".equals(compression) ? "" : ", compression=" + quoteStringLiteral(compression),
+                exportDataQuery(queryString));
+    }
+
+    /**
+     * Prepares a query to be embedded in an EXPORT DATA statement: the trailing statement terminators and comments are
+     * removed, so nothing is left after the query. The string literals, quoted identifiers and comments are skipped
+     * while scanning, so the semicolons they hold are kept.
+     *
+     * @param queryString the query as provided
+     * @return the query without its trailing terminators and comments
+     * @throws IllegalArgumentException if the query is empty or holds more than one statement
+     */
+    static String exportDataQuery(String queryString) {
+        var end = 0;
+        var terminated = false;
+        var i = 0;
+        while (i < queryString.length()) {
+            var current = queryString.charAt(i);
+            if (Character.isWhitespace(current)) {
+                i++;
+            } else if (current == '#' || queryString.startsWith("--", i)) {
+                var lineEnd = queryString.indexOf('\n', i);
+                i = lineEnd < 0 ? queryString.length() : lineEnd + 1;
+            } else if (queryString.startsWith("/*", i)) {
+                var commentEnd = queryString.indexOf("*/", i + 2);
+                if (commentEnd < 0) {
+                    throw new IllegalArgumentException("Unterminated comment in the query.");
+                }
+                i = commentEnd + 2;
+            } else if (current == ';') {
+                terminated = true;
+                i++;
+            } else if (terminated) {
+                throw new IllegalArgumentException("The query can only hold a single statement to be exported.");
+            } else {
+                i = current == '\'' || current == '"' || current == '`' ? skipQuoted(queryString, i) : i + 1;
+                end = i;
+            }
+        }
+        if (end == 0) {
+            throw new IllegalArgumentException("The query to be exported is empty.");
+        }
+        return queryString.substring(0, end);
+    }
+
+    /**
+     * Skips a quoted string literal or identifier, single or triple quoted, honoring the backslash escapes.
+     *
+     * @return the position after the closing quote
+     */
+    private static int skipQuoted(String queryString, int start) {
+        var quote = queryString.charAt(start);
+        var delimiter = queryString.startsWith(String.valueOf(quote).repeat(3), start)
+                ? String.valueOf(quote).repeat(3) : String.valueOf(quote);
+        var i = start + delimiter.length();
+        while (i < queryString.length()) {
+            if (queryString.charAt(i) == '\\') {
+                i += 2;
+            } else if (queryString.startsWith(delimiter, i)) {
+                return i + delimiter.length();
+            } else {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated quoted string in the query.");
+    }
+
+    /**
+     * Quotes a value as a BigQuery string literal, escaping the backslashes and quotes it holds.
+     */
+    private static String quoteStringLiteral(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
     /**
      * Moves the results of the executed query to an specific project.dataset.table location in BQ.
      *
@@ -234,70 +1076,340 @@ public class Launcher {
      * @param baseLocation GCS location prefix
      * @param destinationURIs GCS wilcard locations
      * @param formatName file format for the extract
+     * @param compression compression codec for the extract
      * @throws InterruptedException
      * @throws BigQueryException if there are issues while interacting with BigQuery service
      */
     private static void exportTableToGCS(String projectId, String datasetName, String tableName, String baseLocation,
-            List<String> destinationURIs, String formatName) throws InterruptedException {
+            List<String> destinationURIs, String formatName, String compression) throws InterruptedException {
+        var job = startTableExportToGCS(projectId, datasetName, tableName, baseLocation, destinationURIs, formatName,
+                compression);
+
+        // Blocks until this job completes its execution, either failing or succeeding.
+        reportJobCompletion(job.waitFor(), String.format(
+                "Data extracted from table %s.%s.%s successfully to destinations at %s", projectId, datasetName,
+                tableName, baseLocation));
+    }
+
+    /**
+     * Requests the export of a BigQuery table to a specified GCS location, without waiting for its completion.
+     *
+     * @param projectId project where table is hosted
+     * @param datasetName dataset where the table exists
+     * @param tableName table to be extracted
+     * @param baseLocation GCS location prefix
+     * @param destinationURIs GCS wilcard locations
+     * @param formatName file format for the extract
+     * @param compression compression codec for the extract
+     * @return the running extract job
+     * @throws BigQueryException if there are issues while interacting with BigQuery service
+     */
+    private static Job startTableExportToGCS(String projectId, String datasetName, String tableName,
+            String baseLocation, List<String> destinationURIs, String formatName, String compression) {
         // creates a representation of the table to be extracted
         var bigquery = BigQueryOptions.getDefaultInstance().getService();
         var tableId = TableId.of(projectId, datasetName, tableName);
-        var table = bigquery.getTable(tableId);
 
-        LOG.info(String.format("Exporting data from table %s.%s.%s to gcs location %s", projectId, datasetName, tableName,
-                baseLocation));
+        LOG.info(String.format("Exporting data from table %s.%s.%s to gcs location %s", projectId, datasetName,
+                tableName, baseLocation));
 
         // request the extraction execution
-        var job = table.extract(formatName, destinationURIs);
+        var extractConfig = ExtractJobConfiguration.newBuilder(tableId, destinationURIs)
+                .setFormat(formatName)
+                .setCompression(compression)
+                .build();
+        return bigquery.create(JobInfo.of(extractConfig));
+    }
 
-        // Blocks until this job completes its execution, either failing or succeeding.
-        var operationMessage = Optional.ofNullable(job.waitFor())
+    /**
+     * Logs the outcome of a completed export job.
+     *
+     * @param completedJob the completed job, null if it no longer exists
+     * @param successMessage the message logged when the job completed without errors
+     */
+    private static void reportJobCompletion(Job completedJob, String successMessage) {
+        var operationMessage = Optional.ofNullable(completedJob)
                 .flatMap(j -> Optional.ofNullable(j.getStatus().getError()))
                 .map(bqError -> bqError.getMessage())
-                .orElse(String.format("Data extracted from table %s.%s.%s successfully to destinations at %s",
-                        projectId, datasetName, tableName, baseLocation));
+                .orElse(successMessage);
 
         LOG.info(operationMessage);
     }
 
     /**
-     * Propagates the exported data to GCS using the provided propagation function.
+     * Creates the throttler and propagator instances based on the captured arguments and propagates the exported data
+     * with them, waiting for all the propagations to complete.
+     *
+     * @param <T> the type of the accumulated batches
+     * @param storage the storage service holding the exported files
+     * @param args the captured arguments
+     * @param journal the journal recording the propagation progress
+     * @param runningExport the extract job still producing the exported files, if any
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param propagationFunction the function propagating the accumulated batches
+     * @param deadLetter receives the batches that could not be propagated
+     * @param blobProcessorFunction the function reading and accumulating the exported files
+     * @throws InterruptedException
+     */
+    static <T> void propagateExportResults(Storage storage, Arguments args, CheckpointJournal journal,
+            Optional<Job> runningExport, PropagationResultSink resultSink,
+            BiFunction<String, T, PropagationResult> propagationFunction, BiPredicate<String, T> deadLetter,
+            PentaFunction<AccumulationLimits, Propagator<T>, PropagationResultSink, CheckpointJournal, BlobRange, Long>
+            blobProcessorFunction)
+            throws InterruptedException {
+        var metrics = resultSink.getMetrics();
+        try ( var propagator = createPropagator(args, new MeasuredThrottler(createThrottler(args), metrics), metrics,
+                propagationFunction, deadLetter);
+                var prefetcher = new BlobPrefetcher(args.prefetchCount, args.propagationWorkers, args.prefetchBudget)) {
+            metrics.trackQueueDepth(propagator::getPendingCount);
+            metrics.trackPrefetchedBytes(prefetcher::getPrefetchedBytes);
+            propagateExportResults(storage, args.exportBucketName, args.exportBucketPathPrefix,
+                    accumulationLimits(args), propagator, resultSink, journal, prefetcher,
+                    exportCompleted(runningExport), EXPORT_POLL_INTERVAL_IN_MILLIS, args.propagationWorkers,
+                    args.splitSize, blobProcessorFunction);
+        }
+    }
+
+    /**
+     * Creates the throttler, propagator and key partitioner instances based on the captured arguments and propagates the
+     * exported data with them, waiting for all the propagations to complete. The records read by the workers are routed
+     * to the partition of their key, each partition accumulates and propagates its records in order.
+     *
+     * @param storage the storage service holding the exported files
+     * @param args the captured arguments
+     * @param runningExport the extract job still producing the exported files, if any
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param propagationFunction the function propagating the accumulated batches
+     * @param deadLetter receives the batches that could not be propagated
+     * @throws InterruptedException
+     */
+    static void propagatePartitionedExportResults(Storage storage, Arguments args,
+            Optional<Job> runningExport, PropagationResultSink resultSink,
+            BiFunction<String, List<String>, PropagationResult> propagationFunction,
+            BiPredicate<String, List<String>> deadLetter) throws InterruptedException {
+        var metrics = resultSink.getMetrics();
+        var limits = accumulationLimits(args);
+        var transformer = recordTransformer(args);
+        // the partitions are closed first, their pending batches are propagated before the propagator gets closed
+        try ( var propagator = createPropagator(args, new MeasuredThrottler(createThrottler(args), metrics), metrics,
+                propagationFunction, deadLetter);
+                var prefetcher = new BlobPrefetcher(args.prefetchCount, args.propagationWorkers, args.prefetchBudget);
+                var partitioner = new KeyPartitioner(args.partitionKey, args.partitions, PARTITION_QUEUE_CAPACITY,
+                        limits, propagator, resultSink)) {
+            metrics.trackPrefetchedBytes(prefetcher::getPrefetchedBytes);
+            propagateExportResults(storage, args.exportBucketName, args.exportBucketPathPrefix, limits, propagator,
+                    resultSink, CheckpointJournal.disabled(), prefetcher, exportCompleted(runningExport),
+                    EXPORT_POLL_INTERVAL_IN_MILLIS, args.propagationWorkers, 0L,
+                    (ignoredLimits, ignoredPropagator, sink, journal, range)
+                    -> Functions.processGCSBlobPartitioned(partitioner, transformer, sink, range));
+        }
+    }
+
+    /**
+     * Tells whether the extract job producing the exported files has completed, the files are complete when there is
+     * no such job.
+     *
+     * @param runningExport the extract job still producing the exported files, if any
+     * @return the check of the job completion
+     */
+    private static BooleanSupplier exportCompleted(Optional<Job> runningExport) {
+        return () -> runningExport.map(Job::isDone).orElse(true);
+    }
+
+    /**
+     * Propagates the exported data to GCS using the provided propagation function. The exported files are processed in
+     * parallel by the configured number of workers, all of them sharing the same propagator instance.
      *
+     * @param storage the storage service holding the exported files
      * @param bucketName Bucket name of where the export is located
      * @param gcsPrefixLocation path prefix for the exported files
+     * @param limits the limits of the accumulated data that trigger a propagation
+     * @param propagator the propagator instance shared by all the workers
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param journal the journal recording the propagation progress, the files it holds as completed are skipped
+     * @param prefetcher the prefetcher downloading the upcoming files while the current ones are being processed
+     * @param exportCompleted tells whether the export producing the files has completed, the export location is polled
+     * until it does
+     * @param pollIntervalInMillis the wait between two listings of the export location while the export runs
+     * @param workers the number of files (or file ranges) that will be processed in parallel
+     * @param splitSize the size of the ranges big files are split in, zero or less disables the splitting
      * @param blobProcessorFunction A propagation function.
+     * @throws InterruptedException
      */
-    private static void propagateExportResults(String bucketName, String gcsPrefixLocation, Long accumulationMaxSize,
-            Long millisPerPropagation, TriFunction<Long, Long, Blob, Stream<PropagationResult>> blobProcessorFunction) {
+    static <T> void propagateExportResults(Storage storage, String bucketName, String gcsPrefixLocation,
+            AccumulationLimits limits, Propagator<T> propagator, PropagationResultSink resultSink,
+            CheckpointJournal journal, BlobPrefetcher prefetcher, BooleanSupplier exportCompleted,
+            Long pollIntervalInMillis, Integer workers, Long splitSize,
+            PentaFunction<AccumulationLimits, Propagator<T>, PropagationResultSink, CheckpointJournal, BlobRange, Long>
+            blobProcessorFunction)
+            throws InterruptedException {
 
-        var storage = StorageOptions.getDefaultInstance().getService();
-        var bucketClient = storage.get(bucketName);
         var prefix = gcsPrefixLocation.endsWith("/") ? gcsPrefixLocation : gcsPrefixLocation + "/";
+        // Each file may be bigger than the desired propagation chunk size, 
+        // then this function will trigger multiple propagations per file.
+        // Lets partially apply the blob processor function with the params available before the stream 
+        // resolves its content. 
+        var blobProcessor = Functions.curry(blobProcessorFunction)
+                .apply(limits)
+                .apply(propagator)
+                .apply(resultSink)
+                .apply(journal);
+        var executor = Executors.newFixedThreadPool(workers);
+        var completionService = new ExecutorCompletionService<String>(executor);
+
+        try {
+            var listedFiles = new HashSet<String>();
+            var submittedFiles = 0L;
+            var completed = false;
+            while (!completed) {
+                // the job status is checked before listing, so the last listing sees all the exported files
+                completed = exportCompleted.getAsBoolean();
+                // capture the entries in GCS based on the path prefix and stream them considering only files (skip
+                // dirs), submit those files that were exported to the worker pool as they get listed. The objects are
+                // listed once finalized, the ones listed by a previous poll are skipped.
+                submittedFiles += StreamSupport
+                        .stream(storage
+                                .list(bucketName, Storage.BlobListOption.prefix(prefix),
+                                        Storage.BlobListOption.pageSize(GCS_RESULT_PAGE_SIZE))
+                                .iterateAll()
+                                .spliterator(), false)
+                        .filter(blob -> !blob.isDirectory())
+                        .filter(blob -> listedFiles.add(blob.getName()))
+                        // big files are split in ranges read in parallel, compressed ones can not be read from an
+                        // offset
+                        .flatMap(blob -> splitSize > 0 && !blob.getName().endsWith(Functions.GZIP_FILE_EXTENSION)
+                        ? BlobRange.split(blob, splitSize).stream()
+                        : Stream.of(BlobRange.whole(blob)))
+                        .filter(range -> {
+                            if (journal.isCompleted(range.getName())) {
+                                LOG.info(String.format("File %s already propagated, skipping it.", range.getName()));
+                                return false;
+                            }
+                            return true;
+                        })
+                        // the prefetch starts as soon as the range is listed, the worker waits for it before
+                        // processing it
+                        .map(range -> prefetcher.prefetch(range))
+                        .map(prefetchedRange -> completionService.submit(() -> {
+                            var range = prefetchedRange.get();
+                            try {
+                                return String.format("File %s read, %d propagations triggered.", range.getName(),
+                                        blobProcessor.apply(range));
+                            } finally {
+                                prefetcher.release(range);
+                                resultSink.getMetrics().sourceFinished(range.getLocation());
+                            }
+                        }))
+                        .count();
+                if (!completed) {
+                    Thread.sleep(pollIntervalInMillis);
+                }
+            }
+
+            // wait for the workers to complete their files, the results are reported by the sink as they are produced
+            for (var i = 0; i < submittedFiles; i++) {
+                try {
+                    LOG.info(completionService.take().get());
+                } catch (ExecutionException ex) {
+                    LOG.log(Level.SEVERE, "Errors occurred while processing an exported file.", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Propagates the rows of the destination table reading them with the BigQuery Storage Read API. A read session is
+     * created with up to one stream per worker, the streams are processed in parallel and all of them share the same
+     * propagator instance.
+     *
+     * @param args the captured arguments
+     * @param resultSink the sink receiving the propagation results as they are produced
+     * @param propagationFunction the function propagating the accumulated batches
+     * @param deadLetter receives the batches that could not be propagated
+     * @throws InterruptedException
+     */
+    private static void propagateTableRows(Arguments args, PropagationResultSink resultSink,
+            BiFunction<String, List<String>, PropagationResult> propagationFunction,
+            BiPredicate<String, List<String>> deadLetter) throws InterruptedException {
+        var metrics = resultSink.getMetrics();
+        try ( var propagator = createPropagator(args, new MeasuredThrottler(createThrottler(args), metrics), metrics,
+                propagationFunction, deadLetter);
+                var client = BigQueryReadClient.create()) {
+            metrics.trackQueueDepth(propagator::getPendingCount);
+            var table = String.format("projects/%s/datasets/%s/tables/%s", args.project, args.destinationDataset,
+                    args.exportDestinationTable);
+            var session = client.createReadSession("projects/" + args.project,
+                    ReadSession.newBuilder().setTable(table).setDataFormat(DataFormat.AVRO).build(),
+                    args.propagationWorkers);
+            var schema = new Schema.Parser().parse(session.getAvroSchema().getSchema());
+            var transformer = recordTransformer(args);
+
+            LOG.info(String.format("Reading table %s with %d read streams", table, session.getStreamsCount()));
+
+            var executor = Executors.newFixedThreadPool(args.propagationWorkers);
+            var completionService = new ExecutorCompletionService<String>(executor);
+
+            try {
+                session.getStreamsList().forEach(stream -> completionService.submit(() -> {
+                    try {
+                        return String.format("Stream %s read, %d propagations triggered.", stream.getName(),
+                                Functions.processReadStream(accumulationLimits(args), transformer, propagator,
+                                        resultSink, client, schema, stream.getName()));
+                    } finally {
+                        metrics.sourceFinished(stream.getName());
+                    }
+                }));
+
+                // wait for the workers to complete their streams, the results are reported by the sink as they are
+                // produced
+                for (var i = 0; i < session.getStreamsCount(); i++) {
+                    try {
+                        LOG.info(completionService.take().get());
+                    } catch (ExecutionException ex) {
+                        LOG.log(Level.SEVERE, "Errors occurred while processing a read stream.", ex.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Errors occurred while creating the BigQuery Storage Read API client.", ex);
+        }
+    }
+
+    /**
+     * Prints in the terminal a failed propagation, as soon as it is produced.
+     *
+     * @param result the propagation result.
+     */
+    private static void reportFailedPropagation(PropagationResult result) {
+        if (!result.success) {
+            LOG.warning(describeFailure(result));
+        }
+    }
+
+    /**
+     * Prints in the terminal the aggregated propagation results and the last failed propagations.
+     *
+     * @param resultSink the sink holding the aggregated results.
+     * @param deadLetters the spool holding the chunks that could not be propagated.
+     */
+    private static void reportPropagationSummary(PropagationResultSink resultSink, DeadLetterSpool deadLetters) {
+        LOG.info(String.format("Propagation completed, %d succeeded, %d failed, %dKB propagated, %d retries.",
+                resultSink.getSuccessCount(), resultSink.getFailureCount(), resultSink.getPropagatedBytes() / 1024,
+                resultSink.getMetrics().getRetries()));
+        resultSink.getFailureLog().forEach(result -> LOG.info(describeFailure(result)));
+        deadLetters.getSpoolFile().ifPresent(file -> LOG.info(String.format(
+                "%d failed chunks written to the dead letter file %s, replay them with --replaydeadletter.",
+                deadLetters.getSpooledCount(), file)));
+    }
 
-        // capture the entries in GCS based on the path prefix and stream them considering only files (skip dirs), 
-        // process those files that were exported and print the propagation results.
-        StreamSupport
-                .stream(bucketClient
-                        .list(Storage.BlobListOption.prefix(prefix),
-                                Storage.BlobListOption.pageSize(GCS_RESULT_PAGE_SIZE))
-                        .iterateAll()
-                        .spliterator(), false)
-                .filter(blob -> !blob.isDirectory())
-                // Each file may be bigger than the desired propagation chunk size, 
-                // then this function will return multiple propagation results per file.
-                // Lets partially apply the blob processor function with the params available before the stream 
-                // resolves its content. 
-                .flatMap(Functions.curry(blobProcessorFunction)
-                        .apply(accumulationMaxSize)
-                        .apply(millisPerPropagation))
-                // lets take care of those that failed propagation
-                .filter(pResult -> !pResult.success)
-                // print them in the terminal
-                .forEach(result -> {
-                    LOG.info(String.format("Failed to propagate a portion of file %s at %s, chunk size %dKB, message %s",
-                            result.path, result.executionDateString, result.payloadSizeInKB(),
-                            result.messageResult.orElse("No Message.")));
-                });
+    private static String describeFailure(PropagationResult result) {
+        return String.format("Failed to propagate a portion of file %s at %s, chunk size %dKB, message %s",
+                result.path, result.executionDateString, result.payloadSizeInKB(),
+                result.messageResult.orElse("No Message."));
     }
 
 }
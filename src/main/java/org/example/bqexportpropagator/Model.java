@@ -1,16 +1,84 @@
 package org.example.bqexportpropagator;
 
 import com.google.cloud.bigquery.QueryParameterValue;
+import com.google.cloud.storage.Blob;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPOutputStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
  * Holds the classes and entities that represents the model for the solution
@@ -24,17 +92,41 @@ public class Model {
 
         String path;
         String executionDateString;
+        /**
+         * The size in bytes of the serialized payload (wrapper and separators included) before any compression, the
+         * same for every propagation function.
+         */
         Integer payloadSize;
         Optional<String> messageResult;
         Boolean success;
+        /**
+         * Whether the failed payload was recorded in the dead letter file, so it can be replayed from there.
+         */
+        Boolean deadLettered;
 
         public PropagationResult(String path, String executionDateString, Integer payloadSize,
                 Optional<String> messageResult, Boolean success) {
+            this(path, executionDateString, payloadSize, messageResult, success, false);
+        }
+
+        public PropagationResult(String path, String executionDateString, Integer payloadSize,
+                Optional<String> messageResult, Boolean success, Boolean deadLettered) {
             this.path = path;
             this.executionDateString = executionDateString;
             this.payloadSize = payloadSize;
             this.messageResult = messageResult;
             this.success = success;
+            this.deadLettered = deadLettered;
+        }
+
+        /**
+         * Returns whether the propagated chunk needs no further work from this run, either it was propagated or it can
+         * be replayed from the dead letter file.
+         *
+         * @return true when the chunk was handled.
+         */
+        public Boolean isHandled() {
+            return success || deadLettered;
         }
 
         /**
@@ -45,6 +137,95 @@ public class Model {
         public Integer payloadSizeInKB() {
             return payloadSize / 1024;
         }
+
+        /**
+         * Creates a result for a propagation that could not be completed.
+         *
+         * @param path the file location of the propagated data
+         * @param payloadSize the size of the data that was not propagated
+         * @param messageResult the reason of the failure
+         * @return a failed propagation result
+         */
+        static PropagationResult failed(String path, Long payloadSize, Optional<String> messageResult) {
+            return new PropagationResult(path, Launcher.DATE_FORMATTER.format(LocalDateTime.now()),
+                    payloadSize.intValue(), messageResult, false);
+        }
+    }
+
+    /**
+     * Receives the propagation results as they are produced, emitting each one of them to the configured listener and
+     * keeping only compact aggregates: success and failure counts, propagated bytes and a log with the last failures,
+     * bounded to the configured size. This implementation is thread safe.
+     */
+    static class PropagationResultSink implements Consumer<PropagationResult> {
+
+        private final LongAdder successCount = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAdder propagatedBytes = new LongAdder();
+        private final Deque<PropagationResult> failureLog = new ArrayDeque<>();
+        private final Integer failureLogSize;
+        private final Consumer<PropagationResult> listener;
+        private final PropagationMetrics metrics;
+
+        public PropagationResultSink(Integer failureLogSize, Consumer<PropagationResult> listener) {
+            this(failureLogSize, listener, new PropagationMetrics());
+        }
+
+        public PropagationResultSink(Integer failureLogSize, Consumer<PropagationResult> listener,
+                PropagationMetrics metrics) {
+            this.failureLogSize = failureLogSize;
+            this.listener = listener;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void accept(PropagationResult result) {
+            if (result.success) {
+                successCount.increment();
+                propagatedBytes.add(result.payloadSize);
+            } else {
+                failureCount.increment();
+                synchronized (failureLog) {
+                    if (failureLog.size() == failureLogSize) {
+                        failureLog.removeFirst();
+                    }
+                    failureLog.addLast(result);
+                }
+            }
+            listener.accept(result);
+        }
+
+        public Long getSuccessCount() {
+            return successCount.sum();
+        }
+
+        public Long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        public Long getPropagatedBytes() {
+            return propagatedBytes.sum();
+        }
+
+        /**
+         * Returns the metrics of the propagation feeding this sink, where the readers report their progress.
+         *
+         * @return the propagation metrics.
+         */
+        public PropagationMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Returns the last failed propagations, up to the configured failure log size.
+         *
+         * @return a list with the last failures.
+         */
+        public List<PropagationResult> getFailureLog() {
+            synchronized (failureLog) {
+                return new ArrayList<>(failureLog);
+            }
+        }
     }
 
     /**
@@ -61,10 +242,65 @@ public class Model {
         Map<String, QueryParameterValue> bqQueryParams;
         Long accumulationSizeLimit;
         Long throttleTimeInMillis;
+        Integer propagationWorkers;
+        String throttlerType;
+        Double requestsPerSecond;
+        Long bytesPerSecond;
+        Double burstSeconds;
+        Double maxRequestsPerSecond;
+        Long targetLatencyInMillis;
+        Integer pipelineWorkers;
+        Integer pipelineQueueCapacity;
+        Integer maxInFlight;
+        Integer failureLogSize;
+        Boolean byteMode;
+        Boolean validatePayload;
+        String exportFormat;
+        String exportCompression;
+        String sourceMode;
+        String checkpointJournal;
+        Boolean resume;
+        Long splitSize;
+        Integer prefetchCount;
+        Long prefetchBudget;
+        Boolean streamExport;
+        Integer metricsPort;
+        String endpoint;
+        Map<String, String> httpHeaders;
+        Boolean gzipPayload;
+        Long connectTimeoutInMillis;
+        Long requestTimeoutInMillis;
+        Integer maxRetries;
+        Long retryBackoffInMillis;
+        String deadLetterFile;
+        String replayDeadLetter;
+        Integer maxBatchRecords;
+        Long lingerInMillis;
+        Boolean hardSizeLimit;
+        String partitionKey;
+        Integer partitions;
+        List<String> projectedFields;
+        List<String> recordFilters;
+        Boolean overwriteJournal;
+        String metricsAddress;
+        Long retryMaxBackoffInMillis;
+        Double retryBudgetRatio;
 
         public Arguments(String project, String destinationDataset, String exportDestinationTable, String exportBucketName,
                 String exportBucketPathPrefix, String bqQuery, Map<String, QueryParameterValue> bqQueryParams,
-                Long accumulationSizeLimit, Long throttleTimeInMillis) {
+                Long accumulationSizeLimit, Long throttleTimeInMillis, Integer propagationWorkers, String throttlerType,
+                Double requestsPerSecond, Long bytesPerSecond, Double burstSeconds, Double maxRequestsPerSecond,
+                Long targetLatencyInMillis, Integer pipelineWorkers, Integer pipelineQueueCapacity,
+                Integer maxInFlight, Integer failureLogSize, Boolean byteMode,
+                Boolean validatePayload, String exportFormat, String exportCompression, String sourceMode,
+                String checkpointJournal, Boolean resume, Long splitSize, Integer prefetchCount,
+                Long prefetchBudget, Boolean streamExport, Integer metricsPort, String endpoint,
+                Map<String, String> httpHeaders, Boolean gzipPayload, Long connectTimeoutInMillis,
+                Long requestTimeoutInMillis, Integer maxRetries, Long retryBackoffInMillis, String deadLetterFile,
+                String replayDeadLetter, Integer maxBatchRecords, Long lingerInMillis, Boolean hardSizeLimit,
+                String partitionKey, Integer partitions, List<String> projectedFields, List<String> recordFilters,
+                Boolean overwriteJournal, String metricsAddress, Long retryMaxBackoffInMillis,
+                Double retryBudgetRatio) {
             this.project = project;
             this.destinationDataset = destinationDataset;
             this.exportDestinationTable = exportDestinationTable;
@@ -74,58 +310,654 @@ public class Model {
             this.bqQueryParams = bqQueryParams;
             this.accumulationSizeLimit = accumulationSizeLimit;
             this.throttleTimeInMillis = throttleTimeInMillis;
+            this.propagationWorkers = propagationWorkers;
+            this.throttlerType = throttlerType;
+            this.requestsPerSecond = requestsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.burstSeconds = burstSeconds;
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            this.targetLatencyInMillis = targetLatencyInMillis;
+            this.pipelineWorkers = pipelineWorkers;
+            this.pipelineQueueCapacity = pipelineQueueCapacity;
+            this.maxInFlight = maxInFlight;
+            this.failureLogSize = failureLogSize;
+            this.byteMode = byteMode;
+            this.validatePayload = validatePayload;
+            this.exportFormat = exportFormat;
+            this.exportCompression = exportCompression;
+            this.sourceMode = sourceMode;
+            this.checkpointJournal = checkpointJournal;
+            this.resume = resume;
+            this.splitSize = splitSize;
+            this.prefetchCount = prefetchCount;
+            this.prefetchBudget = prefetchBudget;
+            this.streamExport = streamExport;
+            this.metricsPort = metricsPort;
+            this.endpoint = endpoint;
+            this.httpHeaders = httpHeaders;
+            this.gzipPayload = gzipPayload;
+            this.connectTimeoutInMillis = connectTimeoutInMillis;
+            this.requestTimeoutInMillis = requestTimeoutInMillis;
+            this.maxRetries = maxRetries;
+            this.retryBackoffInMillis = retryBackoffInMillis;
+            this.deadLetterFile = deadLetterFile;
+            this.replayDeadLetter = replayDeadLetter;
+            this.maxBatchRecords = maxBatchRecords;
+            this.lingerInMillis = lingerInMillis;
+            this.hardSizeLimit = hardSizeLimit;
+            this.partitionKey = partitionKey;
+            this.partitions = partitions;
+            this.projectedFields = projectedFields;
+            this.recordFilters = recordFilters;
+            this.overwriteJournal = overwriteJournal;
+            this.metricsAddress = metricsAddress;
+            this.retryMaxBackoffInMillis = retryMaxBackoffInMillis;
+            this.retryBudgetRatio = retryBudgetRatio;
+        }
+
+    }
+
+    /**
+     * The conditions that trigger the propagation of an accumulated batch, whichever is reached first: the accumulated
+     * size, the number of accumulated records and the age of the batch (the time since its first record was
+     * accumulated). The record and age limits are disabled when zero or less. The age is checked as the records arrive,
+     * and the readers also schedule a periodic check of their idle batches (see {@link #scheduleExpirationCheck}), so an
+     * expired batch starts its propagation at most a quarter of the max age late even when its reader is blocked on a
+     * slow source, unless the previous expired batch of the same accumulator is still being propagated. The propagation
+     * itself still waits for the throttler and the destination. The pending batch is always propagated once its source
+     * has been read.
+     *
+     * By default the size limit is a threshold, crossed by the last accumulated record. When it is a hard limit it
+     * applies to the whole payload (records, separators and wrapper) and it is never crossed: the record that would
+     * overflow the payload is held back for the next one, and the records that do not fit in a payload on their own
+     * are reported as failed propagations and skipped.
+     */
+    static class AccumulationLimits {
+
+        private static final Logger LOG = Logger.getLogger(AccumulationLimits.class.getCanonicalName());
+        private static final ScheduledExecutorService EXPIRATION_SCHEDULER
+                = Executors.newSingleThreadScheduledExecutor(task -> {
+                    var thread = new Thread(task, "batch-expiration");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        /**
+         * Propagates the expired batches, so a slow propagation (throttled or waiting for the destination) does not
+         * delay the checks of the other accumulators. There is at most one drain in flight for each accumulator.
+         */
+        private static final ExecutorService EXPIRATION_DRAINERS = Executors.newCachedThreadPool(task -> {
+            var thread = new Thread(task, "batch-expiration-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Long sizeLimit;
+        private final Integer maxRecords;
+        private final Long maxAgeInMillis;
+        private final Boolean hardSizeLimit;
+
+        public AccumulationLimits(Long sizeLimit, Integer maxRecords, Long maxAgeInMillis, Boolean hardSizeLimit) {
+            this.sizeLimit = sizeLimit;
+            this.maxRecords = maxRecords;
+            this.maxAgeInMillis = maxAgeInMillis;
+            this.hardSizeLimit = hardSizeLimit;
+        }
+
+        /**
+         * Creates limits triggering the propagation on the accumulated size only.
+         *
+         * @param sizeLimit the accumulated size limit
+         * @return the accumulation limits
+         */
+        static AccumulationLimits ofSize(Long sizeLimit) {
+            return new AccumulationLimits(sizeLimit, 0, 0L, false);
+        }
+
+        public Long getSizeLimit() {
+            return sizeLimit;
+        }
+
+        public Boolean isHardSizeLimit() {
+            return hardSizeLimit;
+        }
+
+        public Long getMaxAgeInMillis() {
+            return maxAgeInMillis;
+        }
+
+        /**
+         * Checks whether a payload of the given size can be propagated, always true unless the size limit is a hard
+         * one.
+         *
+         * @param payloadSize the size in bytes of the whole payload
+         * @return true when the payload is within the limits
+         */
+        public Boolean fits(Long payloadSize) {
+            return !hardSizeLimit || payloadSize <= sizeLimit;
+        }
+
+        /**
+         * Creates the message reporting a record too big to fit in a payload on its own.
+         *
+         * @param recordOffset the offset of the record in its source
+         * @param recordSize the size in bytes of the record
+         * @return the failure message
+         */
+        String oversizedRecordMessage(Long recordOffset, Long recordSize) {
+            return String.format("Record %d of %d bytes does not fit in a payload of %d bytes, it was not propagated.",
+                    recordOffset, recordSize, sizeLimit);
+        }
+
+        /**
+         * Checks whether an accumulated batch should be propagated.
+         *
+         * @param accumulatedSize the accumulated size in bytes, of the whole payload when the size limit is a hard one
+         * @param accumulatedRecords the number of accumulated records
+         * @param batchStartTimestamp the time, in epoch millis, the first record of the batch was accumulated
+         * @return true when any of the limits has been reached
+         */
+        public Boolean isReached(Long accumulatedSize, Integer accumulatedRecords, Long batchStartTimestamp) {
+            return accumulatedSize >= sizeLimit
+                    || (maxRecords > 0 && accumulatedRecords >= maxRecords)
+                    || isExpired(batchStartTimestamp);
+        }
+
+        /**
+         * Checks whether an accumulated batch has reached its max age.
+         *
+         * @param batchStartTimestamp the time, in epoch millis, the first record of the batch was accumulated
+         * @return true when the batch is older than the max age, always false when there is no max age
+         */
+        public Boolean isExpired(Long batchStartTimestamp) {
+            return maxAgeInMillis > 0 && System.currentTimeMillis() - batchStartTimestamp >= maxAgeInMillis;
+        }
+
+        /**
+         * Schedules the periodic propagation of the batch of an accumulator once it reaches the max age, so an idle
+         * batch does not wait for the next record to be read. The checks run every quarter of the max age in a daemon
+         * thread shared by all the accumulators, which only hands the check over to a drain thread of its own, so the
+         * expired batches are throttled and propagated without holding the checks of the other accumulators. A check
+         * is skipped while the previous drain of the same accumulator is still running.
+         *
+         * @param drainExpired propagates the accumulator batch when it has expired, holding the accumulator lock
+         * @return the scheduled check, to be closed once the accumulator has been completed
+         */
+        ExpirationCheck scheduleExpirationCheck(Runnable drainExpired) {
+            if (maxAgeInMillis <= 0) {
+                return new ExpirationCheck(Optional.empty());
+            }
+            var period = Math.max(maxAgeInMillis / 4, 1L);
+            var draining = new AtomicBoolean();
+            return new ExpirationCheck(Optional.of(EXPIRATION_SCHEDULER.scheduleWithFixedDelay(() -> {
+                if (!draining.compareAndSet(false, true)) {
+                    return;
+                }
+                EXPIRATION_DRAINERS.execute(() -> {
+                    try {
+                        drainExpired.run();
+                    } catch (RuntimeException ex) {
+                        LOG.log(Level.SEVERE, "Error while propagating an expired batch.", ex);
+                    } finally {
+                        draining.set(false);
+                    }
+                });
+            }, period, period, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    /**
+     * The periodic age check of the batches of an accumulator, closing it cancels the next checks.
+     */
+    static class ExpirationCheck implements AutoCloseable {
+
+        private final Optional<ScheduledFuture<?>> check;
+
+        ExpirationCheck(Optional<ScheduledFuture<?>> check) {
+            this.check = check;
+        }
+
+        @Override
+        public void close() {
+            check.ifPresent(scheduled -> scheduled.cancel(false));
+        }
+    }
+
+    /**
+     * Transforms the JSON records before they are accumulated, projecting a subset of their fields (optionally renamed)
+     * and filtering them out by the value of their fields. The field paths are compiled once into a tree, then each
+     * record is read with a streaming tokenizer that only descends into the objects holding projected or filtered fields:
+     * the projected values are copied straight to the output and the rest of the record is skipped, without building a
+     * JSON tree. The projected fields keep their nesting and the order they have in the record, and a renamed field
+     * keeps its position. When there is no projection the kept records are not rewritten, and the reading stops as soon
+     * as all the filters are evaluated. The records that are not JSON objects, or can not be parsed up to the projected
+     * and filtered fields, are rejected: the readers drop them and report each one as a failure. This implementation is
+     * thread safe.
+     */
+    static class RecordTransformer {
+
+        private static final RecordTransformer IDENTITY = new RecordTransformer(new PathNode(""), List.of(), false);
+        private final PathNode root;
+        private final List<FieldFilter> filters;
+        private final Boolean projecting;
+
+        private RecordTransformer(PathNode root, List<FieldFilter> filters, Boolean projecting) {
+            this.root = root;
+            this.filters = filters;
+            this.projecting = projecting;
+        }
+
+        /**
+         * Returns the transformer that keeps the records untouched.
+         *
+         * @return the identity transformer
+         */
+        static RecordTransformer identity() {
+            return IDENTITY;
+        }
+
+        /**
+         * Compiles the projected fields and filters into a transformer. The fields are dotted paths, optionally
+         * followed by the new name of the field, as in {@code user.id:userId}; the filters compare the value of a
+         * field path with {@code =} or {@code !=}, as in {@code status=active}, and a record is kept when all of them
+         * hold. A missing field, a null one or one with a non scalar value does not equal any value.
+         *
+         * @param fields the projected fields, all of them are kept when empty
+         * @param filters the filters the kept records satisfy
+         * @return the compiled transformer
+         * @throws IllegalArgumentException when a field or filter is malformed, or two projected fields overlap
+         */
+        static RecordTransformer compile(List<String> fields, List<String> filters) {
+            if (fields.isEmpty() && filters.isEmpty()) {
+                return IDENTITY;
+            }
+            var root = new PathNode("");
+            for (var field : fields) {
+                var separator = field.indexOf(':');
+                var path = parsePath(separator < 0 ? field : field.substring(0, separator));
+                var outputName = separator < 0 ? path[path.length - 1] : field.substring(separator + 1).trim();
+                if (outputName.isEmpty()) {
+                    throw new IllegalArgumentException("Malformed field, the new name is empty: " + field);
+                }
+                var node = root;
+                for (var name : path) {
+                    if (node.outputName != null) {
+                        throw new IllegalArgumentException("The projected field overlaps with a parent one: " + field);
+                    }
+                    node.projectedBelow = true;
+                    node = node.children.computeIfAbsent(name, PathNode::new);
+                }
+                if (node.outputName != null || !node.children.values().stream().allMatch(PathNode::isFilterOnly)) {
+                    throw new IllegalArgumentException("The projected field overlaps with another one: " + field);
+                }
+                node.outputName = outputName;
+            }
+            var compiledFilters = new ArrayList<FieldFilter>();
+            for (var filter : filters) {
+                var separator = filter.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Malformed filter, expected 'field=value' or 'field!=value' "
+                            + "but got: " + filter);
+                }
+                var negated = filter.charAt(separator - 1) == '!';
+                var path = parsePath(filter.substring(0, negated ? separator - 1 : separator));
+                var node = root;
+                for (var name : path) {
+                    node = node.children.computeIfAbsent(name, PathNode::new);
+                }
+                node.filters.add(compiledFilters.size());
+                compiledFilters.add(new FieldFilter(filter.substring(separator + 1), negated));
+            }
+            return new RecordTransformer(root, compiledFilters, !fields.isEmpty());
+        }
+
+        private static String[] parsePath(String path) {
+            var names = path.trim().split("\\.", -1);
+            if (Arrays.stream(names).anyMatch(String::isEmpty)) {
+                throw new IllegalArgumentException("Malformed field path: " + path);
+            }
+            return names;
+        }
+
+        /**
+         * Checks whether this transformer keeps the records untouched.
+         *
+         * @return true for the identity transformer
+         */
+        public Boolean isIdentity() {
+            return this == IDENTITY;
+        }
+
+        /**
+         * Transforms a record.
+         *
+         * @param record the JSON record
+         * @return the transformed record, null when the record is filtered out
+         * @throws IllegalArgumentException when the record is not a JSON object or can not be parsed
+         */
+        public String transform(String record) {
+            if (isIdentity()) {
+                return record;
+            }
+            var output = projecting ? new StringWriter(record.length()) : null;
+            try ( var reader = new JsonReader(new StringReader(record))) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    throw new IllegalArgumentException("The record is not a JSON object, it can not be transformed.");
+                }
+                var pass = new Pass(output == null ? null : new JsonWriter(output), filters);
+                if (pass.writer != null) {
+                    pass.writer.beginObject();
+                }
+                if (walkObject(reader, root, pass) && pass.writer != null) {
+                    pass.writer.endObject();
+                    pass.writer.flush();
+                }
+                // the filters on the fields not found in the record are evaluated last
+                for (var i = 0; i < filters.size() && !pass.rejected; i++) {
+                    if (!pass.evaluated[i]) {
+                        pass.rejected = !filters.get(i).matches(null);
+                    }
+                }
+                return pass.rejected ? null : output == null ? record : output.toString();
+            } catch (IOException | IllegalStateException | NumberFormatException ex) {
+                throw new IllegalArgumentException("The record can not be parsed, it can not be transformed: "
+                        + ex.getMessage(), ex);
+            }
+        }
+
+        /**
+         * Walks the fields of an object, the ones not in the path tree are skipped.
+         *
+         * @return false when the walk should stop, the record was filtered out or there is nothing left to evaluate
+         */
+        private Boolean walkObject(JsonReader reader, PathNode node, Pass pass) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                var child = node.children.get(reader.nextName());
+                if (child == null) {
+                    reader.skipValue();
+                } else if (!walkValue(reader, child, pass)) {
+                    return false;
+                }
+            }
+            reader.endObject();
+            return true;
+        }
+
+        private Boolean walkValue(JsonReader reader, PathNode node, Pass pass) throws IOException {
+            if (pass.writer != null && node.outputName != null) {
+                pass.openPendingObjects();
+                pass.writer.name(node.outputName);
+                return copyValue(reader, node, pass);
+            }
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    if (node.children.isEmpty()) {
+                        reader.skipValue();
+                        return true;
+                    }
+                    // the object is only written once one of its projected fields is found
+                    pass.pendingObjects.addLast(node.name);
+                    if (!walkObject(reader, node, pass)) {
+                        return false;
+                    }
+                    if (pass.pendingObjects.isEmpty()) {
+                        pass.writer.endObject();
+                    } else {
+                        pass.pendingObjects.removeLast();
+                    }
+                    return true;
+                case BEGIN_ARRAY:
+                    reader.skipValue();
+                    return true;
+                default:
+                    return pass.evaluate(node, copyScalar(reader, null));
+            }
+        }
+
+        /**
+         * Copies a value to the output, evaluating the filters on the fields it holds.
+         */
+        private Boolean copyValue(JsonReader reader, PathNode node, Pass pass) throws IOException {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    pass.writer.beginObject();
+                    while (reader.hasNext()) {
+                        var name = reader.nextName();
+                        pass.writer.name(name);
+                        if (!copyValue(reader, node == null ? null : node.children.get(name), pass)) {
+                            return false;
+                        }
+                    }
+                    reader.endObject();
+                    pass.writer.endObject();
+                    return true;
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    pass.writer.beginArray();
+                    while (reader.hasNext()) {
+                        if (!copyValue(reader, null, pass)) {
+                            return false;
+                        }
+                    }
+                    reader.endArray();
+                    pass.writer.endArray();
+                    return true;
+                default:
+                    var value = copyScalar(reader, pass.writer);
+                    return node == null || pass.evaluate(node, value);
+            }
+        }
+
+        /**
+         * Reads a scalar value, writing it to the output when there is one.
+         *
+         * @return the text of the value, null for a JSON null
+         */
+        private static String copyScalar(JsonReader reader, JsonWriter writer) throws IOException {
+            switch (reader.peek()) {
+                case STRING:
+                    var text = reader.nextString();
+                    if (writer != null) {
+                        writer.value(text);
+                    }
+                    return text;
+                case NUMBER:
+                    // the number is kept as it was written in the record
+                    var number = reader.nextString();
+                    if (writer != null) {
+                        writer.jsonValue(number);
+                    }
+                    return number;
+                case BOOLEAN:
+                    var bool = reader.nextBoolean();
+                    if (writer != null) {
+                        writer.value(bool);
+                    }
+                    return String.valueOf(bool);
+                case NULL:
+                    reader.nextNull();
+                    if (writer != null) {
+                        writer.nullValue();
+                    }
+                    return null;
+                default:
+                    throw new IllegalStateException("Unexpected token " + reader.peek());
+            }
+        }
+
+        /**
+         * A field of the compiled path tree.
+         */
+        private static class PathNode {
+
+            private final String name;
+            private final Map<String, PathNode> children = new HashMap<>();
+            private final List<Integer> filters = new ArrayList<>();
+            private String outputName;
+            private Boolean projectedBelow = false;
+
+            PathNode(String name) {
+                this.name = name;
+            }
+
+            Boolean isFilterOnly() {
+                return outputName == null && !projectedBelow;
+            }
+        }
+
+        private static class FieldFilter {
+
+            private final String value;
+            private final Boolean negated;
+
+            FieldFilter(String value, Boolean negated) {
+                this.value = value;
+                this.negated = negated;
+            }
+
+            Boolean matches(String fieldValue) {
+                return negated != value.equals(fieldValue);
+            }
         }
 
+        /**
+         * The state of the transformation of a record.
+         */
+        private static class Pass {
+
+            private final JsonWriter writer;
+            private final List<FieldFilter> filters;
+            private final boolean[] evaluated;
+            private final Deque<String> pendingObjects = new ArrayDeque<>();
+            private Integer evaluatedCount = 0;
+            private Boolean rejected = false;
+
+            Pass(JsonWriter writer, List<FieldFilter> filters) {
+                this.writer = writer;
+                this.filters = filters;
+                this.evaluated = new boolean[filters.size()];
+            }
+
+            void openPendingObjects() throws IOException {
+                for (var name : pendingObjects) {
+                    writer.name(name);
+                    writer.beginObject();
+                }
+                pendingObjects.clear();
+            }
+
+            /**
+             * Evaluates the filters on a field, the first occurrence of the field counts.
+             *
+             * @return false when the walk should stop
+             */
+            Boolean evaluate(PathNode node, String value) {
+                for (var index : node.filters) {
+                    if (!evaluated[index]) {
+                        evaluated[index] = true;
+                        evaluatedCount++;
+                        rejected = rejected || !filters.get(index).matches(value);
+                    }
+                }
+                return !rejected && (writer != null || evaluatedCount < evaluated.length);
+            }
+        }
     }
 
     /**
      * Serves as the accumulation facility before propagation occurs. The general logic is simply to hold data until the
-     * chunk size crosses the configured threshold and then propagates it using the provided propagation function.
+     * chunk crosses the configured limits (size, record count or age) and then hands it to the provided propagator, the propagation results
+     * are sent to the result sink as soon as each propagation completes. The records already propagated by a previous
+     * run, as recorded by the source checkpoint, are skipped. The accumulation is synchronized, so the expired batches
+     * can be drained from another thread while the reader is blocked.
      */
     static class Accumulator {
 
         private static final Logger LOG = Logger.getLogger(Accumulator.class.getCanonicalName());
-        private final BiFunction<String, List<String>, PropagationResult> propagationFunction;
+        private final Propagator<List<String>> propagator;
+        private final PropagationResultSink resultSink;
         private final String fileLocation;
-        private Stream.Builder<PropagationResult> resultsBuilder = Stream.builder();
-        private final Supplier<Stream<PropagationResult>> resultStreamSupplier = () -> resultsBuilder.build();
+        private final SourceCheckpoint checkpoint;
         private Long accumulatedSize = 0L;
-        private final Long accumulatedSizeLimit;
+        private final AccumulationLimits limits;
         private Long lastPropagationTimestamp = Instant.now().toEpochMilli();
-        private final List<String> accumulatedEntries = new LinkedList<>();
-        private final Throttler throttler;
+        private Long batchStartTimestamp = 0L;
+        private Long propagationCount = 0L;
+        private Long recordOffset = 0L;
+        private List<String> accumulatedEntries = new LinkedList<>();
 
-        public Accumulator(Long accumulatedSizeLimit, String fileLocation,
-                BiFunction<String, List<String>, PropagationResult> propagationFunction, Throttler throttler) {
-            this.propagationFunction = propagationFunction;
+        public Accumulator(Long accumulatedSizeLimit, String fileLocation, Propagator<List<String>> propagator,
+                PropagationResultSink resultSink) {
+            this(AccumulationLimits.ofSize(accumulatedSizeLimit), fileLocation, propagator, resultSink);
+        }
+
+        public Accumulator(AccumulationLimits limits, String fileLocation, Propagator<List<String>> propagator,
+                PropagationResultSink resultSink) {
+            this(limits, fileLocation, propagator, resultSink, SourceCheckpoint.untracked());
+        }
+
+        public Accumulator(AccumulationLimits limits, String fileLocation, Propagator<List<String>> propagator,
+                PropagationResultSink resultSink, SourceCheckpoint checkpoint) {
+            this.propagator = propagator;
+            this.resultSink = resultSink;
             this.fileLocation = fileLocation;
-            this.throttler = throttler;
-            this.accumulatedSizeLimit = accumulatedSizeLimit;
+            this.limits = limits;
+            this.checkpoint = checkpoint;
         }
 
         /**
-         * Takes an entry and accumulates it, based on the current accumulated size it may trigger the propagation after
-         * throttling the attempt.
+         * Takes an entry and accumulates it, based on the current accumulated size, record count and age it may trigger
+         * the propagation.
          *
          * @param entry the entry to be accumulated.
          * @return this same instance.
          */
-        public Accumulator accumulate(String entry) {
+        public synchronized Accumulator accumulate(String entry) {
+            if (recordOffset < checkpoint.getResumeOffset()) {
+                recordOffset++;
+                return this;
+            }
+            var entrySize = entry.getBytes(StandardCharsets.UTF_8).length;
+            if (!limits.fits(payloadSize(1, (long) entrySize))) {
+                resultSink.accept(PropagationResult.failed(fileLocation, (long) entrySize,
+                        Optional.of(limits.oversizedRecordMessage(recordOffset++, (long) entrySize))));
+                return this;
+            }
+            if (!accumulatedEntries.isEmpty()
+                    && !limits.fits(payloadSize(accumulatedEntries.size() + 1, accumulatedSize + entrySize))) {
+                // the entry would overflow the payload, it starts the next one
+                triggerPropagation();
+            }
+            if (accumulatedEntries.isEmpty()) {
+                batchStartTimestamp = System.currentTimeMillis();
+            }
             if (accumulatedEntries.add(entry)) {
-                accumulatedSize += entry.getBytes().length;
-                if (accumulatedSize >= accumulatedSizeLimit) {
+                recordOffset++;
+                accumulatedSize += entrySize;
+                var size = limits.isHardSizeLimit()
+                        ? payloadSize(accumulatedEntries.size(), accumulatedSize) : accumulatedSize;
+                if (limits.isReached(size, accumulatedEntries.size(), batchStartTimestamp)) {
                     triggerPropagation();
                 }
             }
             return this;
         }
 
+        /**
+         * Computes the size of the payload the propagation functions write for the given entries.
+         */
+        private static Long payloadSize(Integer entryCount, Long entriesSize) {
+            return Functions.PAYLOAD_PREFIX.length + entriesSize
+                    + (long) (entryCount - 1) * Functions.PAYLOAD_RECORD_SEPARATOR.length
+                    + Functions.PAYLOAD_SUFFIX.length;
+        }
+
         /**
          * Forces the propagation of the current accumulated state.
          *
          * @return the same instance, but with its previous content drained.
          */
-        public Accumulator drain() {
+        public synchronized Accumulator drain() {
             if (accumulatedSize > 0) {
                 triggerPropagation();
             }
@@ -133,12 +965,45 @@ public class Model {
         }
 
         /**
-         * Returns the propagation results.
+         * Forces the propagation of the current accumulated state when it has reached its max age, used to propagate
+         * the idle batches when no entries are arriving.
+         *
+         * @return the same instance, drained if its content had expired.
+         */
+        public synchronized Accumulator drainExpired() {
+            if (!accumulatedEntries.isEmpty() && limits.isExpired(batchStartTimestamp)) {
+                triggerPropagation();
+            }
+            return this;
+        }
+
+        /**
+         * Drains the current accumulated state and marks the source as completely read in the checkpoint.
          *
-         * @return
+         * @return the same instance, but with its previous content drained.
+         */
+        public synchronized Accumulator complete() {
+            drain();
+            checkpoint.finish(recordOffset);
+            return this;
+        }
+
+        /**
+         * Returns the number of propagations triggered by this accumulator.
+         *
+         * @return the propagation count.
+         */
+        public synchronized Long getPropagationCount() {
+            return propagationCount;
+        }
+
+        /**
+         * Returns the payload size of the batch accumulated but not yet propagated.
+         *
+         * @return the pending payload size in bytes, zero when nothing is accumulated.
          */
-        public Stream<PropagationResult> getResults() {
-            return resultStreamSupplier.get();
+        public synchronized Long getPendingPayloadSize() {
+            return accumulatedEntries.isEmpty() ? 0L : payloadSize(accumulatedEntries.size(), accumulatedSize);
         }
 
         /**
@@ -152,20 +1017,32 @@ public class Model {
             acc2.accumulatedEntries.forEach(entry -> {
                 acc1.accumulate(entry);
             });
-            acc2.resultsBuilder.build().forEach(result -> acc1.resultsBuilder.accept(result));
+            acc1.propagationCount += acc2.propagationCount;
             return acc1;
         }
 
         /**
-         * Triggers the propagation of the accumulated entries, uses the configured Throttle before propagation.
+         * Triggers the propagation of the accumulated entries, the entries are handed to the propagator and a new list
+         * is started so the propagator can keep working with them after this method returns.
          */
         private void triggerPropagation() {
             var accumulationTimestamp = Instant.now().toEpochMilli();
-            LOG.log(Level.INFO, String.format("Last accumulation took %d milliseconds.",
+            resultSink.getMetrics().recordAccumulation(accumulationTimestamp - lastPropagationTimestamp);
+            LOG.log(Level.FINE, String.format("Last accumulation took %d milliseconds.",
                     (accumulationTimestamp - lastPropagationTimestamp)));
-            throttler.throttle();
-            resultsBuilder.accept(propagationFunction.apply(fileLocation, accumulatedEntries));
-            accumulatedEntries.clear();
+            var size = payloadSize(accumulatedEntries.size(), accumulatedSize);
+            var chunkEndOffset = recordOffset;
+            checkpoint.chunkTriggered(chunkEndOffset);
+            propagator.propagate(fileLocation, accumulatedEntries, size)
+                    .whenComplete((result, error) -> {
+                        var propagationResult = Optional.ofNullable(result)
+                                .orElseGet(() -> PropagationResult.failed(fileLocation, size,
+                                Optional.ofNullable(error).map(Throwable::getMessage)));
+                        checkpoint.chunkCompleted(chunkEndOffset, propagationResult.isHandled());
+                        resultSink.accept(propagationResult);
+                    });
+            propagationCount++;
+            accumulatedEntries = new LinkedList<>();
             accumulatedSize = 0L;
             lastPropagationTimestamp = Instant.now().toEpochMilli();
         }
@@ -173,45 +1050,2473 @@ public class Model {
     }
 
     /**
-     * Defines a Throttling behavior to be used by the Accumulator when propagating data.
+     * Spreads the records among a fixed number of partitions by the value of a key field, each partition with its own
+     * {@link Accumulator} and worker thread, so the partitions are accumulated and propagated concurrently (sharing the
+     * propagator and its throttler) while the records of a key keep the order they were routed in. The key is read
+     * with a streaming tokenizer that stops as soon as the field is found, the records without the key (or with a non
+     * scalar value in it) share a partition. Each partition holds a bounded queue of records, the readers routing the
+     * records are blocked while it is full, and fail once its worker is no longer running. The propagator is expected
+     * to propagate in the caller thread, so a partition does not start a batch before the previous one completes. This
+     * implementation is thread safe.
      */
-    public interface Throttler {
+    static class KeyPartitioner implements AutoCloseable {
 
+        private static final Logger LOG = Logger.getLogger(KeyPartitioner.class.getCanonicalName());
         /**
-         * Will decide to throttle the execution based on some internal state.
+         * How long a reader waits for room in a full partition queue before checking the partition worker is still
+         * running, so the readers fail instead of waiting forever for a dead worker.
          */
-        void throttle();
-    }
-
-    /**
-     * Basic implementation for a throttler, using sleep method in Thread will hold the execution if the repeated calls
-     * are produced before the min wait time (hold by the internal state). This implementation class is not thread safe,
-     * but that's fine in this context since there is only one Accumulator at a time and no parallel processing of the
-     * data.
-     */
-    static class SimpleThrottler implements Throttler {
+        private static final Long WORKER_CHECK_INTERVAL_IN_MILLIS = 100L;
+        private static final Object END_OF_PARTITION = new Object();
+        private final String[] keyPath;
+        private final List<BlockingQueue<Object>> queues;
+        private final List<Accumulator> accumulators;
+        private final List<Future<?>> partitionWorkers;
+        private final ExecutorService workers;
+        private final Long maxAgeInMillis;
 
-        private Long last = Instant.now().toEpochMilli();
-        private final Long millisToWait;
+        public KeyPartitioner(String keyField, Integer partitionCount, Integer queueCapacity, AccumulationLimits limits,
+                Propagator<List<String>> propagator, PropagationResultSink resultSink) {
+            this.keyPath = keyField.split("\\.");
+            this.maxAgeInMillis = limits.getMaxAgeInMillis();
+            this.queues = IntStream.range(0, partitionCount)
+                    .mapToObj(i -> (BlockingQueue<Object>) new ArrayBlockingQueue<Object>(queueCapacity))
+                    .collect(Collectors.toList());
+            this.accumulators = IntStream.range(0, partitionCount)
+                    .mapToObj(i -> new Accumulator(limits, String.format("partition %d of %s", i, keyField),
+                    propagator, resultSink))
+                    .collect(Collectors.toList());
+            this.workers = Executors.newFixedThreadPool(partitionCount);
+            this.partitionWorkers = IntStream.range(0, partitionCount)
+                    .mapToObj(i -> workers.submit(() -> drainPartition(queues.get(i), accumulators.get(i), resultSink,
+                    String.format("partition %d of %s", i, keyField))))
+                    .collect(Collectors.toList());
+        }
 
-        public SimpleThrottler(Long millisToWait) {
-            this.millisToWait = millisToWait;
+        /**
+         * Hands a record to the partition of its key, blocks while the partition queue is full.
+         *
+         * @param record the JSON record
+         * @throws IllegalStateException if the worker of the partition is no longer running
+         */
+        public void route(String record) {
+            var partition = Math.floorMod(extractKey(record, keyPath).hashCode(), queues.size());
+            try {
+                if (!enqueue(partition, record)) {
+                    throw new IllegalStateException(String.format(
+                            "The worker of partition %d is no longer running, the record can not be routed.",
+                            partition));
+                }
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for room in the partition queue.", ex);
+                throw new RuntimeException(ex);
+            }
         }
 
-        @Override
+        /**
+         * Places an item in a partition queue, waiting for room in it while the partition worker is running.
+         *
+         * @return false when the partition worker is no longer running
+         */
+        private Boolean enqueue(Integer partition, Object item) throws InterruptedException {
+            var queue = queues.get(partition);
+            while (!queue.offer(item, WORKER_CHECK_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (partitionWorkers.get(partition).isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of propagations triggered by the partitions, complete once this partitioner is closed.
+         *
+         * @return the propagation count.
+         */
+        public Long getPropagationCount() {
+            return accumulators.stream().mapToLong(Accumulator::getPropagationCount).sum();
+        }
+
+        /**
+         * Stops the partition workers once all the routed records have been accumulated and propagated.
+         */
+        @Override
+        public void close() {
+            try {
+                for (var partition = 0; partition < queues.size(); partition++) {
+                    if (!enqueue(partition, END_OF_PARTITION)) {
+                        LOG.severe(String.format("The worker of partition %d stopped before the end of the partition, "
+                                + "its queued records were not propagated.", partition));
+                    }
+                }
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                LOG.info(String.format("Partitions completed, %d propagations triggered.", getPropagationCount()));
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for the partition workers to complete.", ex);
+                workers.shutdownNow();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        private void drainPartition(BlockingQueue<Object> queue, Accumulator accumulator,
+                PropagationResultSink resultSink, String location) {
+            try {
+                // when the batches have a max age the partition wakes up to propagate the idle ones
+                var record = maxAgeInMillis > 0 ? queue.poll(maxAgeInMillis, TimeUnit.MILLISECONDS) : queue.take();
+                while (record != END_OF_PARTITION) {
+                    try {
+                        if (record == null) {
+                            accumulator.drainExpired();
+                        } else {
+                            accumulator.accumulate((String) record);
+                        }
+                    } catch (RuntimeException ex) {
+                        // the worker keeps draining its queue, otherwise the readers would fail to route its records
+                        LOG.log(Level.SEVERE, "Error while propagating from " + location, ex);
+                        resultSink.accept(PropagationResult.failed(location, 0L,
+                                Optional.ofNullable(ex.getMessage())));
+                    }
+                    record = maxAgeInMillis > 0 ? queue.poll(maxAgeInMillis, TimeUnit.MILLISECONDS) : queue.take();
+                }
+                accumulator.complete();
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Partition worker interrupted.", ex);
+            }
+        }
+
+        /**
+         * Reads the value of the key field of a record, descending into the nested objects of a dotted path, without
+         * building a tree and skipping the rest of the record once the value is found.
+         *
+         * @param record the JSON record
+         * @param keyPath the names of the fields leading to the key
+         * @return the key value, empty when the record does not have it or its value is not a scalar
+         */
+        static String extractKey(String record, String[] keyPath) {
+            try ( var reader = new JsonReader(new StringReader(record))) {
+                for (var name : keyPath) {
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        return "";
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext() && !name.equals(reader.nextName())) {
+                        reader.skipValue();
+                    }
+                    if (reader.peek() == JsonToken.END_OBJECT) {
+                        return "";
+                    }
+                }
+                switch (reader.peek()) {
+                    case STRING:
+                    case NUMBER:
+                        return reader.nextString();
+                    case BOOLEAN:
+                        return String.valueOf(reader.nextBoolean());
+                    default:
+                        return "";
+                }
+            } catch (IOException | IllegalStateException ex) {
+                return "";
+            }
+        }
+    }
+
+    /**
+     * Byte oriented accumulation facility, the records are received as byte ranges and copied straight into a pooled
+     * growable buffer that already holds the final payload layout (prefix, records joined by the separator and suffix),
+     * so there is no charset decoding and re-encoding and no per record objects. A record may be received in multiple
+     * portions (when it spans multiple read buffers), {@link #completeRecord()} signals its end. Once the accumulated
+     * size, record count or age crosses the configured limits the payload is handed to the provided propagator, and the
+     * buffer goes back to the pool when the propagation completes. The records already propagated by a previous run, as
+     * recorded by the source checkpoint, are skipped. The accumulation is synchronized, so the expired batches can be
+     * drained from another thread while the reader is blocked.
+     */
+    static class ByteAccumulator {
+
+        private static final Logger LOG = Logger.getLogger(ByteAccumulator.class.getCanonicalName());
+        private final Propagator<ByteBuffer> propagator;
+        private final PropagationResultSink resultSink;
+        private final RecordBufferPool bufferPool;
+        private final String fileLocation;
+        private final AccumulationLimits limits;
+        private final byte[] payloadPrefix;
+        private final byte[] recordSeparator;
+        private final byte[] payloadSuffix;
+        private final SourceCheckpoint checkpoint;
+        private final SourceProgress progress;
+        private RecordBuffer buffer;
+        private Long accumulatedSize = 0L;
+        private Integer accumulatedRecords = 0;
+        private Boolean recordInProgress = false;
+        /**
+         * The buffer position where the current record starts, before its separator, and the position of its first
+         * byte, used to take it out of the payload when it does not fit in it.
+         */
+        private Integer recordStart = 0;
+        private Integer recordDataStart = 0;
+        private Long recordSize = 0L;
+        private Long lastPropagationTimestamp = Instant.now().toEpochMilli();
+        private Long batchStartTimestamp = 0L;
+        private Long propagationCount = 0L;
+        private Long recordOffset = 0L;
+
+        public ByteAccumulator(AccumulationLimits limits, String fileLocation, Propagator<ByteBuffer> propagator,
+                PropagationResultSink resultSink, RecordBufferPool bufferPool, byte[] payloadPrefix,
+                byte[] recordSeparator, byte[] payloadSuffix, SourceCheckpoint checkpoint) {
+            this.limits = limits;
+            this.fileLocation = fileLocation;
+            this.propagator = propagator;
+            this.resultSink = resultSink;
+            this.bufferPool = bufferPool;
+            this.payloadPrefix = payloadPrefix;
+            this.recordSeparator = recordSeparator;
+            this.payloadSuffix = payloadSuffix;
+            this.checkpoint = checkpoint;
+            this.progress = resultSink.getMetrics().sourceStarted(fileLocation);
+        }
+
+        /**
+         * Appends a portion of the current record.
+         *
+         * @param source the array holding the record bytes
+         * @param offset the position of the portion in the array
+         * @param length the length of the portion
+         * @return this same instance.
+         */
+        public synchronized ByteAccumulator append(byte[] source, int offset, int length) {
+            if (length == 0) {
+                return this;
+            }
+            if (recordOffset < checkpoint.getResumeOffset()) {
+                // the record was propagated by a previous run, it is only counted when completed
+                recordInProgress = true;
+                return this;
+            }
+            if (!recordInProgress) {
+                if (buffer == null) {
+                    buffer = bufferPool.acquire();
+                    buffer.append(payloadPrefix, 0, payloadPrefix.length);
+                    batchStartTimestamp = System.currentTimeMillis();
+                    recordStart = buffer.size();
+                } else {
+                    recordStart = buffer.size();
+                    buffer.append(recordSeparator, 0, recordSeparator.length);
+                }
+                recordDataStart = buffer.size();
+                recordSize = 0L;
+                recordInProgress = true;
+            }
+            buffer.append(source, offset, length);
+            recordSize += length;
+            accumulatedSize += length;
+            progress.addBytes(length);
+            return this;
+        }
+
+        /**
+         * Signals the end of the current record, based on the current accumulated size, record count and age it may
+         * trigger the propagation.
+         *
+         * @return this same instance.
+         */
+        public synchronized ByteAccumulator completeRecord() {
+            if (recordInProgress) {
+                recordInProgress = false;
+                // the byte level processing has no record transformation, every record read is kept
+                progress.addRecord();
+                resultSink.getMetrics().recordTransformed(true);
+                if (recordOffset++ < checkpoint.getResumeOffset()) {
+                    return this;
+                }
+                if (!limits.fits(payloadPrefix.length + recordSize + payloadSuffix.length)) {
+                    takeOutRecord();
+                    resultSink.accept(PropagationResult.failed(fileLocation, recordSize,
+                            Optional.of(limits.oversizedRecordMessage(recordOffset - 1, recordSize))));
+                    return this;
+                }
+                if (accumulatedRecords > 0 && !limits.fits(buffer.size() + (long) payloadSuffix.length)) {
+                    // the record overflows the payload, it is moved to the next one
+                    var nextBuffer = bufferPool.acquire();
+                    nextBuffer.append(payloadPrefix, 0, payloadPrefix.length);
+                    nextBuffer.append(buffer, recordDataStart, recordSize.intValue());
+                    takeOutRecord();
+                    triggerPropagation(recordOffset - 1);
+                    buffer = nextBuffer;
+                    accumulatedSize = recordSize;
+                    batchStartTimestamp = System.currentTimeMillis();
+                }
+                accumulatedRecords++;
+                var size = limits.isHardSizeLimit() ? buffer.size() + (long) payloadSuffix.length : accumulatedSize;
+                if (limits.isReached(size, accumulatedRecords, batchStartTimestamp)) {
+                    triggerPropagation(recordOffset);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Removes the current record, along with its separator, from the payload being accumulated.
+         */
+        private void takeOutRecord() {
+            buffer.truncate(recordStart);
+            accumulatedSize -= recordSize;
+            if (accumulatedRecords == 0) {
+                bufferPool.release(buffer);
+                buffer = null;
+            }
+        }
+
+        /**
+         * Forces the propagation of the current accumulated state.
+         *
+         * @return the same instance, but with its previous content drained.
+         */
+        public synchronized ByteAccumulator drain() {
+            completeRecord();
+            if (accumulatedRecords > 0) {
+                triggerPropagation(recordOffset);
+            }
+            return this;
+        }
+
+        /**
+         * Forces the propagation of the completed records when the batch has reached its max age, used to propagate the
+         * idle batches while no records are arriving. The portion already received of the record in progress is moved
+         * to the next payload.
+         *
+         * @return the same instance, drained if its content had expired.
+         */
+        public synchronized ByteAccumulator drainExpired() {
+            if (accumulatedRecords == 0 || !limits.isExpired(batchStartTimestamp)) {
+                return this;
+            }
+            if (!recordInProgress) {
+                triggerPropagation(recordOffset);
+                return this;
+            }
+            var nextBuffer = bufferPool.acquire();
+            nextBuffer.append(payloadPrefix, 0, payloadPrefix.length);
+            nextBuffer.append(buffer, recordDataStart, recordSize.intValue());
+            buffer.truncate(recordStart);
+            triggerPropagation(recordOffset);
+            buffer = nextBuffer;
+            recordStart = payloadPrefix.length;
+            recordDataStart = payloadPrefix.length;
+            accumulatedSize = recordSize;
+            batchStartTimestamp = System.currentTimeMillis();
+            return this;
+        }
+
+        /**
+         * Drains the current accumulated state and marks the source as completely read in the checkpoint.
+         *
+         * @return the same instance, but with its previous content drained.
+         */
+        public synchronized ByteAccumulator complete() {
+            drain();
+            checkpoint.finish(recordOffset);
+            return this;
+        }
+
+        /**
+         * Returns the number of propagations triggered by this accumulator.
+         *
+         * @return the propagation count.
+         */
+        public synchronized Long getPropagationCount() {
+            return propagationCount;
+        }
+
+        /**
+         * Triggers the propagation of the accumulated payload, holding the records up to the given offset.
+         */
+        private void triggerPropagation(Long chunkEndOffset) {
+            var accumulationTimestamp = Instant.now().toEpochMilli();
+            resultSink.getMetrics().recordAccumulation(accumulationTimestamp - lastPropagationTimestamp);
+            LOG.log(Level.FINE, String.format("Last accumulation took %d milliseconds.",
+                    (accumulationTimestamp - lastPropagationTimestamp)));
+            buffer.append(payloadSuffix, 0, payloadSuffix.length);
+            var payloadBuffer = buffer;
+            var size = buffer.size().longValue();
+            checkpoint.chunkTriggered(chunkEndOffset);
+            propagator.propagate(fileLocation, payloadBuffer.asByteBuffer(), size)
+                    .whenComplete((result, error) -> {
+                        bufferPool.release(payloadBuffer);
+                        var propagationResult = Optional.ofNullable(result)
+                                .orElseGet(() -> PropagationResult.failed(fileLocation, size,
+                                Optional.ofNullable(error).map(Throwable::getMessage)));
+                        checkpoint.chunkCompleted(chunkEndOffset, propagationResult.isHandled());
+                        resultSink.accept(propagationResult);
+                    });
+            propagationCount++;
+            buffer = null;
+            accumulatedSize = 0L;
+            accumulatedRecords = 0;
+            lastPropagationTimestamp = Instant.now().toEpochMilli();
+        }
+    }
+
+    /**
+     * A growable byte buffer, exposes its content as a read only ByteBuffer view without copying it. This
+     * implementation is not thread safe, each instance is used by one accumulator at a time.
+     */
+    static class RecordBuffer {
+
+        private byte[] data;
+        private Integer size = 0;
+
+        public RecordBuffer(Integer initialCapacity) {
+            this.data = new byte[initialCapacity];
+        }
+
+        public void append(byte[] source, int offset, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+            }
+            System.arraycopy(source, offset, data, size, length);
+            size += length;
+        }
+
+        public void append(RecordBuffer source, int offset, int length) {
+            append(source.data, offset, length);
+        }
+
+        /**
+         * Discards the content after the given size.
+         *
+         * @param newSize the size to keep
+         */
+        public void truncate(int newSize) {
+            size = Math.min(size, newSize);
+        }
+
+        public Integer size() {
+            return size;
+        }
+
+        public ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(data, 0, size).asReadOnlyBuffer();
+        }
+
+        public void reset() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Keeps released record buffers for reuse, so the big payload arrays are not allocated on every propagation. Up to
+     * the configured number of buffers are retained, the rest are left to the garbage collector. This implementation
+     * is thread safe.
+     */
+    static class RecordBufferPool {
+
+        private final Queue<RecordBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledBuffers = new AtomicInteger();
+        private final Integer initialCapacity;
+        private final Integer maxPooledBuffers;
+
+        public RecordBufferPool(Integer initialCapacity, Integer maxPooledBuffers) {
+            this.initialCapacity = initialCapacity;
+            this.maxPooledBuffers = maxPooledBuffers;
+        }
+
+        public RecordBuffer acquire() {
+            var buffer = buffers.poll();
+            if (buffer == null) {
+                return new RecordBuffer(initialCapacity);
+            }
+            pooledBuffers.decrementAndGet();
+            return buffer;
+        }
+
+        public void release(RecordBuffer buffer) {
+            buffer.reset();
+            if (pooledBuffers.incrementAndGet() <= maxPooledBuffers) {
+                buffers.offer(buffer);
+            } else {
+                pooledBuffers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A byte range of an exported file, the unit of work of the workers reading GCS. Big files can be split in
+     * multiple ranges so they are read in parallel, otherwise a single range covers the whole file.
+     */
+    static class BlobRange {
+
+        final Blob blob;
+        final Long start;
+        final Long end;
+        /**
+         * The range content when it was prefetched, from the read start to the range end.
+         */
+        final byte[] content;
+
+        public BlobRange(Blob blob, Long start, Long end) {
+            this(blob, start, end, null);
+        }
+
+        public BlobRange(Blob blob, Long start, Long end, byte[] content) {
+            this.blob = blob;
+            this.start = start;
+            this.end = end;
+            this.content = content;
+        }
+
+        public BlobRange withContent(byte[] content) {
+            return new BlobRange(blob, start, end, content);
+        }
+
+        static BlobRange whole(Blob blob) {
+            return new BlobRange(blob, 0L, blob.getSize());
+        }
+
+        /**
+         * Splits the file in consecutive ranges of the provided size, the last one may be smaller.
+         *
+         * @param blob the file to split
+         * @param rangeSize the size of the ranges
+         * @return the list of ranges covering the file
+         */
+        static List<BlobRange> split(Blob blob, Long rangeSize) {
+            var size = blob.getSize();
+            if (size <= rangeSize) {
+                return List.of(whole(blob));
+            }
+            return LongStream.iterate(0L, start -> start < size, start -> start + rangeSize)
+                    .mapToObj(start -> new BlobRange(blob, start, Math.min(start + rangeSize, size)))
+                    .collect(Collectors.toList());
+        }
+
+        public Boolean isWhole() {
+            return start == 0L && end >= blob.getSize();
+        }
+
+        public Long getSize() {
+            return end - start;
+        }
+
+        /**
+         * Returns the offset the range is read from, when it is not the first range of the file the byte before the
+         * range start is included since it tells if a record starts right at the range start.
+         *
+         * @return the read start offset
+         */
+        public Long getReadStart() {
+            return isWhole() ? 0L : Math.max(start - 1, 0L);
+        }
+
+        /**
+         * Returns the name of the file, with the range boundaries appended when the range does not cover it all.
+         *
+         * @return the range name
+         */
+        public String getName() {
+            return isWhole() ? blob.getName() : String.format("%s#%d-%d", blob.getName(), start, end);
+        }
+
+        /**
+         * Returns the location of the file, with the range boundaries appended when the range does not cover it all.
+         * The gs:// URI of the file is used when the blob has no self link (e.g. local storage implementations).
+         *
+         * @return the range location
+         */
+        public String getLocation() {
+            var location = Optional.ofNullable(blob.getSelfLink())
+                    .orElseGet(() -> String.format("gs://%s/%s", blob.getBucket(), blob.getName()));
+            return isWhole() ? location : String.format("%s#%d-%d", location, start, end);
+        }
+    }
+
+    /**
+     * Exposes the records of a byte range of a delimited source, the range holds the records starting within it. The
+     * source channel is expected to be positioned on the byte before the range start (when it is not the first range),
+     * the content up to the first delimiter belongs to the previous range and it is skipped; once the range end is
+     * reached the content is exposed up to the end of the current record. This implementation is not thread safe.
+     */
+    static class RecordRangeChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel source;
+        private final Long end;
+        private final byte delimiter;
+        private final ByteBuffer buffer;
+        /**
+         * The offset in the source of the next byte in the buffer.
+         */
+        private Long position;
+        private Boolean aligned;
+        private Boolean finished = false;
+
+        public RecordRangeChannel(ReadableByteChannel source, Long start, Long end, byte delimiter,
+                Integer bufferSize) {
+            this.source = source;
+            this.end = end;
+            this.delimiter = delimiter;
+            this.buffer = ByteBuffer.allocate(bufferSize).flip();
+            this.position = Math.max(start - 1, 0L);
+            this.aligned = start == 0L;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            var copied = 0;
+            while (destination.hasRemaining() && !finished) {
+                if (!buffer.hasRemaining()) {
+                    if (copied > 0) {
+                        break;
+                    }
+                    buffer.clear();
+                    var read = source.read(buffer);
+                    buffer.flip();
+                    finished = read < 0;
+                } else if (!aligned) {
+                    // skip the tail of the record started in the previous range
+                    position++;
+                    if (buffer.get() == delimiter) {
+                        aligned = true;
+                        finished = position >= end;
+                    }
+                } else if (position < end - 1) {
+                    var length = (int) Math.min(Math.min(buffer.remaining(), destination.remaining()),
+                            end - 1 - position);
+                    var portion = buffer.slice().limit(length);
+                    destination.put(portion);
+                    buffer.position(buffer.position() + length);
+                    position += length;
+                    copied += length;
+                } else {
+                    // the range end was reached, complete the current record
+                    var current = buffer.get();
+                    destination.put(current);
+                    position++;
+                    copied++;
+                    finished = current == delimiter;
+                }
+            }
+            return copied == 0 && finished ? -1 : copied;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    /**
+     * Bounds the amount of bytes held in memory, the callers are blocked until the requested bytes are available. This
+     * implementation is thread safe.
+     */
+    static class ByteBudget {
+
+        private final Long capacity;
+        private Long available;
+
+        public ByteBudget(Long capacity) {
+            this.capacity = capacity;
+            this.available = capacity;
+        }
+
+        public Long getCapacity() {
+            return capacity;
+        }
+
+        public synchronized Long getUsed() {
+            return capacity - available;
+        }
+
+        public synchronized void acquire(Long bytes) throws InterruptedException {
+            while (available < bytes) {
+                wait();
+            }
+            available -= bytes;
+        }
+
+        public synchronized void release(Long bytes) {
+            available += bytes;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Downloads the upcoming file ranges into memory while the current ones are being propagated, hiding the GCS first
+     * byte latency and transfer time behind the throttle waits. The slot and the bytes of each range are reserved by a
+     * single sequencing thread in the order the ranges are submitted, so a range never takes the budget an earlier one
+     * is waiting for (the workers wait for the ranges in that same order), then the downloads run in parallel. The
+     * ranges are prefetched up to the configured number of ranges ahead of the ones being processed and within the
+     * configured byte budget; the ranges that do not fit in the budget, or that fail to download, are read from GCS as
+     * usual. The content of a prefetched range is held until it is released by the worker processing it.
+     */
+    static class BlobPrefetcher implements AutoCloseable {
+
+        private static final Logger LOG = Logger.getLogger(BlobPrefetcher.class.getCanonicalName());
+        private final ExecutorService sequencer;
+        private final ExecutorService executor;
+        private final Semaphore slots;
+        private final ByteBudget budget;
+
+        /**
+         * Creates a prefetcher.
+         *
+         * @param prefetchCount the number of ranges downloaded ahead, zero or less disables the prefetch
+         * @param workers the number of workers processing the prefetched ranges
+         * @param budgetInBytes the max amount of prefetched bytes held in memory
+         */
+        public BlobPrefetcher(Integer prefetchCount, Integer workers, Long budgetInBytes) {
+            this.sequencer = prefetchCount > 0 ? Executors.newSingleThreadExecutor() : null;
+            this.executor = prefetchCount > 0 ? Executors.newFixedThreadPool(prefetchCount) : null;
+            // the ranges being processed by the workers keep their content until released
+            this.slots = new Semaphore(Math.max(prefetchCount, 0) + workers);
+            this.budget = new ByteBudget(budgetInBytes);
+        }
+
+        /**
+         * Starts the download of the range, the returned future completes with the range holding its content, or with
+         * the same range when it is not prefetched.
+         *
+         * @param range the range to be prefetched
+         * @return a future with the range to be processed
+         */
+        public CompletableFuture<BlobRange> prefetch(BlobRange range) {
+            Long size = range.end - range.getReadStart();
+            if (executor == null || size > budget.getCapacity()) {
+                return CompletableFuture.completedFuture(range);
+            }
+            return CompletableFuture.supplyAsync(() -> reserve(size), sequencer).thenApplyAsync(reserved -> {
+                if (!reserved) {
+                    return range;
+                }
+                try {
+                    return range.withContent(download(range, size.intValue()));
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, String.format("Error while prefetching %s, it will be read from GCS.",
+                            range.getName()), ex);
+                    budget.release(size);
+                    slots.release();
+                    return range;
+                }
+            }, executor);
+        }
+
+        /**
+         * Reserves a slot and the bytes of a range, blocking the sequencing thread until the earlier ranges release
+         * them.
+         *
+         * @return false when interrupted, the range is then read from GCS
+         */
+        private Boolean reserve(Long size) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            try {
+                budget.acquire(size);
+                return true;
+            } catch (InterruptedException ex) {
+                slots.release();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Releases the memory held by a prefetched range, once its processing is done.
+         *
+         * @param range the processed range
+         */
+        public void release(BlobRange range) {
+            if (range.content != null) {
+                budget.release(range.end - range.getReadStart());
+                slots.release();
+            }
+        }
+
+        /**
+         * Returns the amount of prefetched bytes currently held in memory.
+         *
+         * @return the prefetched bytes.
+         */
+        public Long getPrefetchedBytes() {
+            return budget.getUsed();
+        }
+
+        private static byte[] download(BlobRange range, Integer size) throws IOException {
+            var content = new byte[size];
+            var buffer = ByteBuffer.wrap(content);
+            try ( var reader = range.blob.reader()) {
+                reader.seek(range.getReadStart());
+                while (buffer.hasRemaining()) {
+                    if (reader.read(buffer) < 0) {
+                        break;
+                    }
+                }
+            }
+            return buffer.hasRemaining() ? Arrays.copyOf(content, buffer.position()) : content;
+        }
+
+        @Override
+        public void close() {
+            if (executor != null) {
+                sequencer.shutdownNow();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Durable record of the propagation progress of an export, written as an append only journal in the local
+     * filesystem so a crashed run can be resumed. The first entries hold the export path prefix and the settings the
+     * record offsets depend on (split size and reading mode), the following ones the record offset up to which each
+     * exported file has been propagated successfully, or its completion. Every entry is flushed as soon as it is
+     * written, so it survives the termination of the JVM. This implementation is thread safe.
+     */
+    static class CheckpointJournal implements AutoCloseable {
+
+        private static final Logger LOG = Logger.getLogger(CheckpointJournal.class.getCanonicalName());
+        private static final String FIELD_SEPARATOR = "\t";
+        private static final String EXPORT_ENTRY = "export";
+        private static final String SPLIT_SIZE_ENTRY = "splitsize";
+        private static final String READING_MODE_ENTRY = "reading";
+        private static final String OFFSET_ENTRY = "offset";
+        private static final String COMPLETED_ENTRY = "completed";
+        private final Writer writer;
+        private final String exportPrefix;
+        private final Long splitSize;
+        private final Map<String, Long> offsets;
+        private final Set<String> completedSources;
+
+        private CheckpointJournal(Writer writer, String exportPrefix, Long splitSize, Map<String, Long> offsets,
+                Set<String> completedSources) {
+            this.writer = writer;
+            this.exportPrefix = exportPrefix;
+            this.splitSize = splitSize;
+            this.offsets = offsets;
+            this.completedSources = completedSources;
+        }
+
+        /**
+         * Creates a journal that does not record anything, used when no checkpoint journal is configured.
+         *
+         * @return a disabled journal
+         */
+        static CheckpointJournal disabled() {
+            return new CheckpointJournal(null, null, 0L, Map.of(), Set.of());
+        }
+
+        /**
+         * Describes the settings that decide which records the offsets count: the export format and the byte mode
+         * (the byte level reader skips the blank lines the String one counts) decide what is read as a record, and the
+         * record transformation which records reach the accumulators.
+         *
+         * @param exportFormat the format of the exported files
+         * @param byteMode whether the files are read at the byte level
+         * @param projectedFields the fields projected by the record transformation
+         * @param recordFilters the filters of the record transformation
+         * @return the reading mode to be recorded in the journal
+         */
+        static String readingMode(String exportFormat, Boolean byteMode, List<String> projectedFields,
+                List<String> recordFilters) {
+            return String.format("format=%s bytemode=%s fields=%s filters=%s", exportFormat, byteMode,
+                    String.join(",", projectedFields), String.join(",", recordFilters));
+        }
+
+        /**
+         * Starts a new journal for an export. The progress is recorded by range name and record offset, so the split
+         * size and the reading mode are recorded too and a resumed run has to use the same ones. An existing journal
+         * file is only replaced when explicitly requested, since it holds the progress of a run that may still need to
+         * be resumed.
+         *
+         * @param journalFile the journal file location
+         * @param exportPrefix the path prefix of the export being propagated
+         * @param splitSize the size of the ranges the exported files are split in, zero or less when not split
+         * @param readingMode the reading mode the offsets are counted with, see {@link #readingMode}
+         * @param overwrite whether an existing journal file is replaced
+         * @return a journal ready to record the propagation progress
+         * @throws IOException if the journal file can not be written, or it already exists and is not to be replaced
+         */
+        static CheckpointJournal create(Path journalFile, String exportPrefix, Long splitSize, String readingMode,
+                Boolean overwrite) throws IOException {
+            var writer = overwrite
+                    ? Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8)
+                    : Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE);
+            var journal = new CheckpointJournal(writer, exportPrefix, splitSize, Map.of(), Set.of());
+            journal.write(EXPORT_ENTRY, exportPrefix);
+            journal.write(SPLIT_SIZE_ENTRY, splitSize.toString());
+            journal.write(READING_MODE_ENTRY, readingMode);
+            return journal;
+        }
+
+        /**
+         * Loads the progress recorded by a previous run, keeping the last offset recorded for each file, and continues
+         * appending to the same journal file. The offsets are recorded by range name and count the records read in a
+         * given reading mode, so the run can only be resumed with the split size and the reading mode it was recorded
+         * with; journals without a split size entry were not split.
+         *
+         * @param journalFile the journal file location
+         * @param splitSize the size of the ranges the resumed run splits the exported files in
+         * @param readingMode the reading mode of the resumed run, see {@link #readingMode}
+         * @return a journal holding the recorded progress
+         * @throws IOException if the journal file can not be read, it does not hold an export entry or it was recorded
+         * with a different split size or reading mode
+         */
+        static CheckpointJournal resume(Path journalFile, Long splitSize, String readingMode) throws IOException {
+            String exportPrefix = null;
+            String recordedReadingMode = null;
+            var recordedSplitSize = 0L;
+            var offsets = new HashMap<String, Long>();
+            var completedSources = new HashSet<String>();
+            for (var line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                var fields = line.split(FIELD_SEPARATOR);
+                if (EXPORT_ENTRY.equals(fields[0]) && fields.length == 2) {
+                    exportPrefix = fields[1];
+                } else if (SPLIT_SIZE_ENTRY.equals(fields[0]) && fields.length == 2) {
+                    recordedSplitSize = Long.parseLong(fields[1]);
+                } else if (READING_MODE_ENTRY.equals(fields[0]) && fields.length > 1) {
+                    // the filter values may hold the separator
+                    recordedReadingMode = line.substring(READING_MODE_ENTRY.length() + FIELD_SEPARATOR.length());
+                } else if (OFFSET_ENTRY.equals(fields[0]) && fields.length == 3) {
+                    offsets.put(fields[1], Long.valueOf(fields[2]));
+                } else if (COMPLETED_ENTRY.equals(fields[0]) && fields.length == 2) {
+                    completedSources.add(fields[1]);
+                }
+                // a partially written last entry (the process died while writing it) is ignored
+            }
+            if (exportPrefix == null) {
+                throw new IOException("No export entry found in the checkpoint journal " + journalFile);
+            }
+            // a split size of zero or less disables the splitting, whatever the value
+            if (Math.max(recordedSplitSize, 0L) != Math.max(splitSize, 0L)) {
+                throw new IOException(String.format("The checkpoint journal %s was recorded with a split size of %d "
+                        + "bytes, it can only be resumed with the same split size (got %d).", journalFile,
+                        recordedSplitSize, splitSize));
+            }
+            if (!readingMode.equals(recordedReadingMode)) {
+                throw new IOException(String.format("The checkpoint journal %s was recorded reading the files with "
+                        + "'%s', it can only be resumed with the same export format, byte mode, fields and filters "
+                        + "(got '%s').", journalFile, recordedReadingMode, readingMode));
+            }
+            var writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            return new CheckpointJournal(writer, exportPrefix, recordedSplitSize, offsets, completedSources);
+        }
+
+        public String getExportPrefix() {
+            return exportPrefix;
+        }
+
+        public Boolean isCompleted(String sourceName) {
+            return completedSources.contains(sourceName);
+        }
+
+        /**
+         * Creates the checkpoint for a source, starting at the offset recorded by a previous run if any.
+         *
+         * @param sourceName the name of the source being propagated
+         * @return the checkpoint for the source
+         */
+        public SourceCheckpoint checkpoint(String sourceName) {
+            return new SourceCheckpoint(this, sourceName, offsets.getOrDefault(sourceName, 0L));
+        }
+
+        void recordOffset(String sourceName, Long offset) {
+            write(OFFSET_ENTRY, sourceName, offset.toString());
+        }
+
+        void recordCompletion(String sourceName) {
+            write(COMPLETED_ENTRY, sourceName);
+        }
+
+        private synchronized void write(String... fields) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(String.join(FIELD_SEPARATOR, fields));
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException ex) {
+                // the propagation goes on, a resumed run would only repeat some of the propagations
+                LOG.log(Level.WARNING, "Error while writing the checkpoint journal.", ex);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Tracks the propagation progress of a single source. The propagations may complete out of order (pipelined or
+     * asynchronous propagators), so the checkpoint only advances up to the end of the contiguous run of chunks that
+     * have been handled: propagated successfully, or recorded in the dead letter file so they are replayed from there
+     * and not propagated again by a resumed run. Any other failed chunk stops the checkpoint from advancing, so a
+     * resumed run propagates it again. This implementation is thread safe.
+     */
+    static class SourceCheckpoint {
+
+        private final CheckpointJournal journal;
+        private final String sourceName;
+        private final Long resumeOffset;
+        /**
+         * The end offset of the in flight chunks, mapped to whether they were propagated successfully.
+         */
+        private final NavigableMap<Long, Boolean> chunks = new TreeMap<>();
+        private Long committedOffset;
+        private Long finalOffset = -1L;
+
+        public SourceCheckpoint(CheckpointJournal journal, String sourceName, Long resumeOffset) {
+            this.journal = journal;
+            this.sourceName = sourceName;
+            this.resumeOffset = resumeOffset;
+            this.committedOffset = resumeOffset;
+        }
+
+        /**
+         * Creates a checkpoint that does not record anything, used for sources that can not be resumed.
+         *
+         * @return an untracked checkpoint
+         */
+        static SourceCheckpoint untracked() {
+            return new SourceCheckpoint(CheckpointJournal.disabled(), null, 0L);
+        }
+
+        /**
+         * Returns the number of records propagated by a previous run, those should be skipped.
+         *
+         * @return the resume offset
+         */
+        public Long getResumeOffset() {
+            return resumeOffset;
+        }
+
+        public synchronized void chunkTriggered(Long endOffset) {
+            chunks.put(endOffset, false);
+        }
+
+        public synchronized void chunkCompleted(Long endOffset, Boolean handled) {
+            if (handled) {
+                chunks.put(endOffset, true);
+                advance();
+            }
+        }
+
+        /**
+         * Signals the source has been completely read, it gets recorded as completed once all its chunks are
+         * handled.
+         *
+         * @param endOffset the offset of the end of the source
+         */
+        public synchronized void finish(Long endOffset) {
+            finalOffset = endOffset;
+            advance();
+        }
+
+        private void advance() {
+            var advanced = false;
+            while (!chunks.isEmpty() && chunks.firstEntry().getValue()) {
+                committedOffset = chunks.pollFirstEntry().getKey();
+                advanced = true;
+            }
+            if (chunks.isEmpty() && committedOffset.equals(finalOffset)) {
+                journal.recordCompletion(sourceName);
+                // completion is recorded only once
+                finalOffset = -1L;
+            } else if (advanced) {
+                journal.recordOffset(sourceName, committedOffset);
+            }
+        }
+    }
+
+    /**
+     * Propagates the accumulated data to an HTTP endpoint, POSTing each payload with the configured headers. A single
+     * {@link HttpClient} is shared by all the propagation workers, it negotiates HTTP/2 when the endpoint supports it
+     * (multiplexing the concurrent requests over the same connection) and keeps the HTTP/1.1 connections alive
+     * otherwise, so the connection and TLS setup is not paid per payload. The payloads can be gzip compressed, the
+     * already assembled ones are sent straight from their buffers. The configured headers override the default content
+     * type, the ones the HTTP client does not allow to set (as Host or Connection) are rejected when the sink is
+     * created. Any non 2xx status is reported as a failed propagation. This implementation is thread safe.
+     */
+    static class HttpPropagationSink {
+
+        private static final Logger LOG = Logger.getLogger(HttpPropagationSink.class.getCanonicalName());
+        private final HttpClient client;
+        private final URI endpoint;
+        private final Map<String, String> headers;
+        private final Boolean gzipPayload;
+        private final Duration requestTimeout;
+
+        public HttpPropagationSink(URI endpoint, Map<String, String> headers, Boolean gzipPayload,
+                Duration connectTimeout, Duration requestTimeout) {
+            validateHeaders(headers);
+            this.endpoint = endpoint;
+            this.headers = headers;
+            this.gzipPayload = gzipPayload;
+            this.requestTimeout = requestTimeout;
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .build();
+        }
+
+        /**
+         * Checks the headers can be set on the requests, the HTTP client rejects the restricted ones (as Host,
+         * Connection or Content-Length) and the malformed names or values.
+         *
+         * @param headers the headers to be added to the requests
+         * @throws IllegalArgumentException naming the first header that can not be set
+         */
+        static void validateHeaders(Map<String, String> headers) {
+            var request = HttpRequest.newBuilder();
+            headers.forEach((name, value) -> {
+                try {
+                    request.setHeader(name, value);
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException(String.format("The header '%s' can not be sent to the "
+                            + "endpoint: %s", name, ex.getMessage()), ex);
+                }
+            });
+        }
+
+        /**
+         * Propagates the accumulated entries, wrapped in the same payload layout the other propagation functions use.
+         * The reported size is the one of the serialized payload before the compression, as for the assembled ones.
+         *
+         * @param fileLocation original file location
+         * @param entries the JSON entries to be propagated
+         * @return the propagation results
+         */
+        public PropagationResult propagateEntries(String fileLocation, List<String> entries) {
+            var payload = new ByteArrayOutputStream();
+            Long size;
+            try {
+                size = writePayload(entries, payload);
+            } catch (IOException ex) {
+                return PropagationResult.failed(fileLocation, Functions.payloadSize(entries),
+                        Optional.of(ex.getMessage()));
+            }
+            return send(fileLocation, HttpRequest.BodyPublishers.ofByteArray(payload.toByteArray()), size.intValue());
+        }
+
+        /**
+         * Writes the payload of the entries, compressed when configured, into the provided stream.
+         *
+         * @return the size of the payload before the compression
+         */
+        private Long writePayload(List<String> entries, OutputStream payload) throws IOException {
+            var serializedPayload = new CountingOutputStream(gzipPayload ? new GZIPOutputStream(payload) : payload);
+            try ( var writer = new OutputStreamWriter(serializedPayload, StandardCharsets.UTF_8)) {
+                Functions.writePayload(entries, writer);
+            }
+            return serializedPayload.count;
+        }
+
+        /**
+         * Propagates an already assembled payload.
+         *
+         * @param fileLocation original file location
+         * @param payload the payload to be propagated
+         * @return the propagation results
+         */
+        public PropagationResult propagatePayload(String fileLocation, ByteBuffer payload) {
+            var size = payload.remaining();
+            if (!gzipPayload) {
+                return send(fileLocation, ofByteBuffer(payload), size);
+            }
+            var compressed = new ByteArrayOutputStream(size / 4);
+            try ( var channel = Channels.newChannel(new GZIPOutputStream(compressed))) {
+                channel.write(payload.duplicate());
+            } catch (IOException ex) {
+                return PropagationResult.failed(fileLocation, (long) size, Optional.of(ex.getMessage()));
+            }
+            return send(fileLocation, HttpRequest.BodyPublishers.ofByteArray(compressed.toByteArray()), size);
+        }
+
+        private PropagationResult send(String fileLocation, HttpRequest.BodyPublisher body, Integer size) {
+            var executionDate = Launcher.DATE_FORMATTER.format(LocalDateTime.now());
+            var request = HttpRequest.newBuilder(endpoint)
+                    .timeout(requestTimeout)
+                    .setHeader("Content-Type", "application/json");
+            // the configured headers replace the default ones instead of duplicating them
+            headers.forEach(request::setHeader);
+            if (gzipPayload) {
+                // the compressed body needs its encoding, whatever the configured headers say
+                request.setHeader("Content-Encoding", "gzip");
+            }
+            try {
+                var response = client.send(request.POST(body).build(), HttpResponse.BodyHandlers.discarding());
+                return new PropagationResult(fileLocation, executionDate, size,
+                        Optional.of(String.format("Sent to endpoint %s, status %d", endpoint, response.statusCode())),
+                        response.statusCode() / 100 == 2);
+            } catch (IOException ex) {
+                return PropagationResult.failed(fileLocation, size.longValue(),
+                        Optional.of(String.format("Error while sending to endpoint %s: %s", endpoint, ex)));
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for the endpoint response.", ex);
+                Thread.currentThread().interrupt();
+                return PropagationResult.failed(fileLocation, size.longValue(), Optional.of("Interrupted."));
+            }
+        }
+
+        /**
+         * Counts the bytes written through it, the uncompressed payload size when it wraps the compressing stream.
+         */
+        private static class CountingOutputStream extends FilterOutputStream {
+
+            private Long count = 0L;
+
+            public CountingOutputStream(OutputStream out) {
+                super(out);
+            }
+
+            @Override
+            public void write(int value) throws IOException {
+                out.write(value);
+                count++;
+            }
+
+            @Override
+            public void write(byte[] source, int offset, int length) throws IOException {
+                out.write(source, offset, length);
+                count += length;
+            }
+        }
+
+        /**
+         * Publishes the content of a (possibly read only) buffer without copying it, every subscription gets its own
+         * view of the content so the client can send it again (e.g. on a redirect).
+         */
+        private static HttpRequest.BodyPublisher ofByteBuffer(ByteBuffer payload) {
+            Flow.Publisher<ByteBuffer> publisher = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+                private Boolean done = false;
+
+                @Override
+                public void request(long n) {
+                    if (!done && n > 0) {
+                        done = true;
+                        subscriber.onNext(payload.duplicate());
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+            });
+            return HttpRequest.BodyPublishers.fromPublisher(publisher, payload.remaining());
+        }
+    }
+
+    /**
+     * Defines how the accumulated data is sent to the destination. Implementations are shared by all the workers
+     * reading GCS files, so they are expected to be thread safe.
+     *
+     * @param <T> the type of the accumulated batch, a list of entries or an already assembled payload.
+     */
+    public interface Propagator<T> extends AutoCloseable {
+
+        /**
+         * Propagates the accumulated batch, the returned future completes once the destination has been reached.
+         *
+         * @param fileLocation original file location
+         * @param batch the accumulated batch
+         * @param size the size in bytes of the serialized batch payload, reported when the propagation fails
+         * @return a future with the propagation result
+         */
+        CompletableFuture<PropagationResult> propagate(String fileLocation, T batch, Long size);
+
+        /**
+         * Returns the number of batches waiting to be propagated or in flight, by default there are none since the
+         * propagation happens in the caller thread.
+         *
+         * @return the pending batch count
+         */
+        default Integer getPendingCount() {
+            return 0;
+        }
+
+        /**
+         * Releases the resources in use by this propagator, by default there are none.
+         */
+        @Override
+        default void close() {
+        }
+    }
+
+    /**
+     * Propagates in the caller thread: uses the configured Throttle before propagation and reports the propagation
+     * outcome back to it, unless the function is a {@link RetryingPropagation} which reports every one of its attempts.
+     * The returned future is always completed.
+     */
+    static class DirectPropagator<T> implements Propagator<T> {
+
+        private final BiFunction<String, T, PropagationResult> propagationFunction;
+        private final Throttler throttler;
+        private final Boolean reportOutcome;
+
+        public DirectPropagator(BiFunction<String, T, PropagationResult> propagationFunction,
+                Throttler throttler) {
+            this.propagationFunction = propagationFunction;
+            this.throttler = throttler;
+            this.reportOutcome = !(propagationFunction instanceof RetryingPropagation);
+        }
+
+        @Override
+        public CompletableFuture<PropagationResult> propagate(String fileLocation, T batch, Long size) {
+            throttler.throttle(size);
+            var propagationStart = Instant.now().toEpochMilli();
+            var result = propagationFunction.apply(fileLocation, batch);
+            if (reportOutcome) {
+                throttler.report(result, Instant.now().toEpochMilli() - propagationStart);
+            }
+            return CompletableFuture.completedFuture(result);
+        }
+    }
+
+    /**
+     * Decouples the GCS reading stage from the propagation one. The accumulated entries are placed in a bounded queue
+     * and a set of propagation workers drain it, throttling and propagating each one of the batches. When the queue is
+     * full the readers are blocked until a worker takes a batch from it (backpressure), this way the reading threads
+     * are not stalled by the throttle waits while the memory in use is kept bounded.
+     */
+    static class PipelinedPropagator<T> implements Propagator<T> {
+
+        private static final Logger LOG = Logger.getLogger(PipelinedPropagator.class.getCanonicalName());
+        private final PendingBatch<T> poisonPill = new PendingBatch<>(null, null, null);
+        private final DirectPropagator<T> propagator;
+        private final BlockingQueue<PendingBatch<T>> queue;
+        private final ExecutorService workers;
+        private final Integer workerCount;
+
+        public PipelinedPropagator(BiFunction<String, T, PropagationResult> propagationFunction,
+                Throttler throttler, Integer queueCapacity, Integer workerCount) {
+            this.propagator = new DirectPropagator<>(propagationFunction, throttler);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.workerCount = workerCount;
+            this.workers = Executors.newFixedThreadPool(workerCount);
+            IntStream.range(0, workerCount).forEach(i -> workers.submit(this::drainQueue));
+        }
+
+        @Override
+        public CompletableFuture<PropagationResult> propagate(String fileLocation, T batch, Long size) {
+            var pending = new PendingBatch<>(fileLocation, batch, size);
+            try {
+                // blocks when the queue is full, until a propagation worker makes room for the batch
+                queue.put(pending);
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for room in the propagation queue.", ex);
+                throw new RuntimeException(ex);
+            }
+            return pending.result;
+        }
+
+        @Override
+        public Integer getPendingCount() {
+            return queue.size();
+        }
+
+        /**
+         * Stops the propagation workers once all the queued batches have been propagated.
+         */
+        @Override
+        public void close() {
+            try {
+                for (var i = 0; i < workerCount; i++) {
+                    queue.put(poisonPill);
+                }
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for the propagation workers to complete.", ex);
+                workers.shutdownNow();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        private void drainQueue() {
+            try {
+                var batch = queue.take();
+                while (batch != poisonPill) {
+                    try {
+                        batch.result.complete(propagator.propagate(batch.fileLocation, batch.batch, batch.size).join());
+                    } catch (RuntimeException ex) {
+                        batch.result.completeExceptionally(ex);
+                    }
+                    batch = queue.take();
+                }
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Propagation worker interrupted.", ex);
+            }
+        }
+
+        /**
+         * A batch waiting in the queue to be propagated, along with the future to be completed with its result.
+         */
+        private static class PendingBatch<T> {
+
+            final String fileLocation;
+            final T batch;
+            final Long size;
+            final CompletableFuture<PropagationResult> result = new CompletableFuture<>();
+
+            PendingBatch(String fileLocation, T batch, Long size) {
+                this.fileLocation = fileLocation;
+                this.batch = batch;
+                this.size = size;
+            }
+        }
+    }
+
+    /**
+     * Propagates using an asynchronous propagation function, enabling multiple propagation requests to be in flight at
+     * the same time. The callers are blocked when the configured max of in flight requests has been reached, and the
+     * configured Throttle is used before each request is started, so the pipelined requests still respect the rate.
+     * The outcome of each request is reported back to the throttler once it completes, except for the blocking
+     * {@link RetryingPropagation} functions which report every one of their attempts.
+     */
+    static class AsyncPropagator<T> implements Propagator<T> {
+
+        private static final Logger LOG = Logger.getLogger(AsyncPropagator.class.getCanonicalName());
+        private final BiFunction<String, T, CompletableFuture<PropagationResult>> propagationFunction;
+        private final Throttler throttler;
+        private final Semaphore inFlight;
+        private final Integer maxInFlight;
+        private final Optional<ExecutorService> ownedExecutor;
+        private final Boolean reportOutcome;
+
+        public AsyncPropagator(
+                BiFunction<String, T, CompletableFuture<PropagationResult>> propagationFunction,
+                Throttler throttler, Integer maxInFlight) {
+            this(propagationFunction, throttler, maxInFlight, Optional.empty(), true);
+        }
+
+        private AsyncPropagator(
+                BiFunction<String, T, CompletableFuture<PropagationResult>> propagationFunction,
+                Throttler throttler, Integer maxInFlight, Optional<ExecutorService> ownedExecutor,
+                Boolean reportOutcome) {
+            this.propagationFunction = propagationFunction;
+            this.throttler = throttler;
+            this.maxInFlight = maxInFlight;
+            this.inFlight = new Semaphore(maxInFlight);
+            this.ownedExecutor = ownedExecutor;
+            this.reportOutcome = reportOutcome;
+        }
+
+        /**
+         * Creates an asynchronous propagator from a blocking propagation function, the function is executed in a pool
+         * with as many threads as the max in flight requests, which is shutdown when the propagator gets closed.
+         *
+         * @param propagationFunction a blocking propagation function
+         * @param throttler the throttler in use
+         * @param maxInFlight max number of concurrent requests
+         * @return an asynchronous propagator
+         */
+        static <T> AsyncPropagator<T> ofBlocking(BiFunction<String, T, PropagationResult> propagationFunction,
+                Throttler throttler, Integer maxInFlight) {
+            var executor = Executors.newFixedThreadPool(maxInFlight);
+            return new AsyncPropagator<>(
+                    (fileLocation, batch) -> CompletableFuture.supplyAsync(
+                            () -> propagationFunction.apply(fileLocation, batch), executor),
+                    throttler, maxInFlight, Optional.of(executor),
+                    !(propagationFunction instanceof RetryingPropagation));
+        }
+
+        @Override
+        public CompletableFuture<PropagationResult> propagate(String fileLocation, T batch, Long size) {
+            try {
+                // blocks until one of the in flight requests completes
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for in flight propagations to complete.", ex);
+                throw new RuntimeException(ex);
+            }
+            try {
+                throttler.throttle(size);
+                var propagationStart = Instant.now().toEpochMilli();
+                return propagationFunction.apply(fileLocation, batch)
+                        .whenComplete((result, error) -> {
+                            inFlight.release();
+                            if (!reportOutcome && error == null) {
+                                return;
+                            }
+                            var latency = Instant.now().toEpochMilli() - propagationStart;
+                            throttler.report(Optional.ofNullable(result)
+                                    .orElseGet(() -> PropagationResult.failed(fileLocation, size,
+                                    Optional.ofNullable(error).map(Throwable::getMessage))), latency);
+                        });
+            } catch (RuntimeException ex) {
+                inFlight.release();
+                throw ex;
+            }
+        }
+
+        @Override
+        public Integer getPendingCount() {
+            return maxInFlight - inFlight.availablePermits();
+        }
+
+        /**
+         * Waits for the in flight requests to complete before releasing the resources in use.
+         */
+        @Override
+        public void close() {
+            try {
+                inFlight.acquire(maxInFlight);
+                inFlight.release(maxInFlight);
+            } catch (InterruptedException ex) {
+                LOG.log(Level.SEVERE, "Interrupted while waiting for in flight propagations to complete.", ex);
+                throw new RuntimeException(ex);
+            } finally {
+                ownedExecutor.ifPresent(ExecutorService::shutdown);
+            }
+        }
+    }
+
+    /**
+     * Retries the failed propagations with an exponential backoff and full jitter: the n-th retry waits a random time
+     * between zero and the initial backoff times 2^(n-1), capped by the max backoff, so the workers that failed at the
+     * same time do not retry at the same time. Every retry goes through the throttler, as any other propagation, and
+     * the failed attempts are reported to it, so the retries count against the configured rate and the adaptive
+     * throttler slows down while the destination fails. Every attempt, the last one included, is reported with its own
+     * latency (the backoff waits are left out), the propagators do not report the outcome of the wrapped calls. The
+     * retries are also bounded by a {@link RetryBudget} shared by all the workers. The chunks still failing after the
+     * last retry are written to the dead letter spool, so they can be replayed later, and their results tell whether
+     * the spool recorded them. This implementation is thread safe, the retries run in the thread propagating the chunk.
+     */
+    static class RetryingPropagation<T> implements BiFunction<String, T, PropagationResult> {
+
+        private final BiFunction<String, T, PropagationResult> propagationFunction;
+        private final Throttler throttler;
+        private final RetryBudget budget;
+        private final Integer maxRetries;
+        private final Long initialBackoffInMillis;
+        private final Long maxBackoffInMillis;
+        private final BiPredicate<String, T> deadLetter;
+        private final PropagationMetrics metrics;
+
+        public RetryingPropagation(BiFunction<String, T, PropagationResult> propagationFunction, Throttler throttler,
+                RetryBudget budget, Integer maxRetries, Long initialBackoffInMillis, Long maxBackoffInMillis,
+                BiPredicate<String, T> deadLetter, PropagationMetrics metrics) {
+            this.propagationFunction = propagationFunction;
+            this.throttler = throttler;
+            this.budget = budget;
+            this.maxRetries = maxRetries;
+            this.initialBackoffInMillis = initialBackoffInMillis;
+            this.maxBackoffInMillis = maxBackoffInMillis;
+            this.deadLetter = deadLetter;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public PropagationResult apply(String fileLocation, T batch) {
+            budget.deposit();
+            var attemptStart = Instant.now().toEpochMilli();
+            var result = propagationFunction.apply(fileLocation, batch);
+            throttler.report(result, Instant.now().toEpochMilli() - attemptStart);
+            var retries = 0;
+            while (!result.success && retries < maxRetries && budget.tryWithdraw()) {
+                retries++;
+                sleep(TimeUnit.MILLISECONDS.toNanos(backoff(retries)));
+                throttler.throttle(result.payloadSize.longValue());
+                metrics.recordRetry();
+                attemptStart = Instant.now().toEpochMilli();
+                result = propagationFunction.apply(fileLocation, batch);
+                throttler.report(result, Instant.now().toEpochMilli() - attemptStart);
+            }
+            if (!result.success) {
+                var deadLettered = deadLetter.test(fileLocation, batch);
+                if (deadLettered) {
+                    metrics.recordDeadLetter();
+                }
+                result = new PropagationResult(result.path, result.executionDateString, result.payloadSize,
+                        Optional.of(String.format("%s (%s after %d retries)",
+                                result.messageResult.orElse("Propagation failed"),
+                                deadLettered ? "dead lettered" : "dropped", retries)),
+                        false, deadLettered);
+            }
+            return result;
+        }
+
+        private Long backoff(Integer retry) {
+            var ceiling = Math.min(maxBackoffInMillis, initialBackoffInMillis << Math.min(retry - 1, 30));
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+    }
+
+    /**
+     * Bounds the retries of all the workers, so an outage of the destination does not turn into a retry storm: every
+     * propagation deposits a fraction of a retry in the budget, and every retry withdraws a whole one, so over time the
+     * retries can not exceed that fraction of the propagations. The budget starts full and holds at most the configured
+     * capacity, allowing a burst of retries after a short failure. When the budget is exhausted the failed chunks go
+     * straight to the dead letter spool. This implementation is thread safe.
+     */
+    static class RetryBudget {
+
+        private final Double retryRatio;
+        private final Double capacity;
+        private Double balance;
+
+        public RetryBudget(Double retryRatio, Integer capacity) {
+            this.retryRatio = retryRatio;
+            this.capacity = capacity.doubleValue();
+            this.balance = this.capacity;
+        }
+
+        public synchronized void deposit() {
+            balance = Math.min(capacity, balance + retryRatio);
+        }
+
+        public synchronized Boolean tryWithdraw() {
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Append only file in the local filesystem holding the chunks that could not be propagated, one line per chunk with
+     * the original file location and the propagation payload (the same JSON object sent to the destination, so no
+     * re-accumulation is needed to replay it). Every chunk is flushed as soon as it is written, so it survives the
+     * termination of the JVM. This implementation is thread safe.
+     */
+    static class DeadLetterSpool implements AutoCloseable {
+
+        private static final Logger LOG = Logger.getLogger(DeadLetterSpool.class.getCanonicalName());
+        private static final String FIELD_SEPARATOR = "\t";
+        private final OutputStream output;
+        private final Path spoolFile;
+        private Long spooledCount = 0L;
+
+        private DeadLetterSpool(OutputStream output, Path spoolFile) {
+            this.output = output;
+            this.spoolFile = spoolFile;
+        }
+
+        /**
+         * Creates a spool that does not record anything, used when no dead letter file is configured.
+         *
+         * @return a disabled spool
+         */
+        static DeadLetterSpool disabled() {
+            return new DeadLetterSpool(null, null);
+        }
+
+        /**
+         * Opens a spool appending to the content of the given file, creating it if needed.
+         *
+         * @param spoolFile the dead letter file location
+         * @return a spool ready to record the failed chunks
+         * @throws IOException if the dead letter file can not be written
+         */
+        static DeadLetterSpool open(Path spoolFile) throws IOException {
+            return new DeadLetterSpool(new BufferedOutputStream(Files.newOutputStream(spoolFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)), spoolFile);
+        }
+
+        /**
+         * Reads the chunks recorded in a dead letter file, in the order they were written.
+         *
+         * @param spoolFile the dead letter file location
+         * @param chunkConsumer receives the original file location and the payload of each chunk
+         * @throws IOException if the dead letter file can not be read
+         */
+        static void replay(Path spoolFile, BiConsumer<String, ByteBuffer> chunkConsumer) throws IOException {
+            try ( var lines = Files.lines(spoolFile, StandardCharsets.UTF_8)) {
+                lines.forEach(line -> {
+                    var separator = line.indexOf(FIELD_SEPARATOR);
+                    // a partially written last chunk (the process died while writing it) is ignored
+                    if (separator > 0 && line.endsWith(Functions.PAYLOAD_SUFFIX_STRING)) {
+                        chunkConsumer.accept(line.substring(0, separator), ByteBuffer.wrap(
+                                line.substring(separator + 1).getBytes(StandardCharsets.UTF_8)));
+                    }
+                });
+            }
+        }
+
+        /**
+         * Records a chunk of entries, assembled in the propagation payload layout.
+         *
+         * @param fileLocation original file location
+         * @param entries the entries of the chunk
+         * @return true when the chunk was written to the dead letter file
+         */
+        public Boolean appendEntries(String fileLocation, List<String> entries) {
+            var payload = new ByteArrayOutputStream();
+            try ( var writer = new OutputStreamWriter(payload, StandardCharsets.UTF_8)) {
+                Functions.writePayload(entries, writer);
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Error while assembling a dead letter chunk.", ex);
+                return false;
+            }
+            return appendPayload(fileLocation, ByteBuffer.wrap(payload.toByteArray()));
+        }
+
+        /**
+         * Records an already assembled payload.
+         *
+         * @param fileLocation original file location
+         * @param payload the payload of the chunk
+         * @return true when the chunk was written to the dead letter file, false when the spool is disabled or failed
+         */
+        public synchronized Boolean appendPayload(String fileLocation, ByteBuffer payload) {
+            if (output == null) {
+                return false;
+            }
+            try {
+                output.write((fileLocation + FIELD_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+                Channels.newChannel(output).write(payload.duplicate());
+                output.write('\n');
+                output.flush();
+                spooledCount++;
+                return true;
+            } catch (IOException ex) {
+                // the chunk is still reported as a failed propagation, and its checkpoint does not advance
+                LOG.log(Level.WARNING, "Error while writing the dead letter spool.", ex);
+                return false;
+            }
+        }
+
+        public Optional<Path> getSpoolFile() {
+            return Optional.ofNullable(spoolFile);
+        }
+
+        public synchronized Long getSpooledCount() {
+            return spooledCount;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Defines a Throttling behavior to be used by the Propagator when propagating data. A single instance is shared by
+     * all the propagation workers, so implementations are expected to be thread safe.
+     */
+    public interface Throttler {
+
+        /**
+         * Will decide to throttle the execution based on some internal state.
+         */
+        void throttle();
+
+        /**
+         * Will decide to throttle the execution based on some internal state and the size of the data about to be
+         * propagated. By default the size is ignored.
+         *
+         * @param payloadSize the size in bytes of the data about to be propagated.
+         */
+        default void throttle(Long payloadSize) {
+            throttle();
+        }
+
+        /**
+         * Receives the outcome of a propagation, implementations may use it to adapt their internal state. By default
+         * the feedback is ignored.
+         *
+         * @param result the propagation result.
+         * @param latencyInMillis the time the propagation took.
+         */
+        default void report(PropagationResult result, Long latencyInMillis) {
+        }
+    }
+
+    /**
+     * Basic implementation for a throttler, using sleep method in Thread will hold the execution if the repeated calls
+     * are produced before the min wait time (hold by the internal state). This implementation is thread safe, each
+     * caller reserves the next available time slot while holding the lock and then sleeps outside of it, so multiple
+     * workers sharing the same instance will see the configured global rate.
+     */
+    static class SimpleThrottler implements Throttler {
+
+        private Long next;
+        private final Long millisToWait;
+
+        public SimpleThrottler(Long millisToWait) {
+            this.millisToWait = millisToWait;
+            this.next = Instant.now().toEpochMilli() + millisToWait;
+        }
+
+        @Override
         public void throttle() {
-            var end = Instant.now();
-            var timeToSleep = millisToWait - (end.toEpochMilli() - last);
+            long timeToSleep;
+            // reserve the next available slot, subsequent callers will be scheduled after this one.
+            synchronized (this) {
+                var now = Instant.now().toEpochMilli();
+                var slot = Math.max(now, next);
+                next = slot + millisToWait;
+                timeToSleep = slot - now;
+            }
             // check if we need to sleep to throttle the requests based on the configured time.
-            if (timeToSleep > 0) {
+            sleep(TimeUnit.MILLISECONDS.toNanos(timeToSleep));
+        }
+    }
+
+    /**
+     * Token bucket based throttler, enforces a requests per second and a bytes per second rate at the same time. Both
+     * buckets can hold up to the configured burst (expressed in seconds of unused quota), so idle periods can be
+     * compensated with short bursts. When a payload is bigger than the available tokens the bucket goes into debt and
+     * the caller waits until the debt is paid back, this way payloads bigger than the burst capacity are still allowed.
+     * A rate lower or equal than zero disables its bucket. This implementation is thread safe.
+     */
+    static class TokenBucketThrottler implements Throttler {
+
+        private final Double requestsPerSecond;
+        private final Double bytesPerSecond;
+        private final Double requestsCapacity;
+        private final Double bytesCapacity;
+        private final LongSupplier nanoClock;
+        private final LongConsumer sleeper;
+        private Double availableRequests;
+        private Double availableBytes;
+        private Long lastRefill;
+
+        public TokenBucketThrottler(Double requestsPerSecond, Long bytesPerSecond, Double burstSeconds) {
+            this(requestsPerSecond, bytesPerSecond, burstSeconds, System::nanoTime, Model::sleep);
+        }
+
+        /**
+         * Creates a throttler reading the time from the given clock and waiting with the given sleeper.
+         *
+         * @param nanoClock the monotonic clock, in nanoseconds
+         * @param sleeper holds the caller for the given nanoseconds
+         */
+        TokenBucketThrottler(Double requestsPerSecond, Long bytesPerSecond, Double burstSeconds, LongSupplier nanoClock,
+                LongConsumer sleeper) {
+            this.nanoClock = nanoClock;
+            this.sleeper = sleeper;
+            this.lastRefill = nanoClock.getAsLong();
+            this.requestsPerSecond = requestsPerSecond;
+            this.bytesPerSecond = bytesPerSecond.doubleValue();
+            // at least one request should fit in the bucket
+            this.requestsCapacity = Math.max(1D, requestsPerSecond * burstSeconds);
+            this.bytesCapacity = this.bytesPerSecond * burstSeconds;
+            this.availableRequests = requestsCapacity;
+            this.availableBytes = bytesCapacity;
+        }
+
+        @Override
+        public void throttle() {
+            throttle(0L);
+        }
+
+        @Override
+        public void throttle(Long payloadSize) {
+            long nanosToSleep;
+            synchronized (this) {
+                refill();
+                availableRequests -= requestsPerSecond > 0 ? 1 : 0;
+                availableBytes -= bytesPerSecond > 0 ? payloadSize : 0;
+                // the wait time is defined by the bucket with the bigger debt
+                nanosToSleep = Math.max(
+                        nanosToPayDebt(availableRequests, requestsPerSecond),
+                        nanosToPayDebt(availableBytes, bytesPerSecond));
+            }
+            sleeper.accept(nanosToSleep);
+        }
+
+        private void refill() {
+            var now = nanoClock.getAsLong();
+            var elapsedSeconds = (now - lastRefill) / 1_000_000_000D;
+            availableRequests = Math.min(requestsCapacity, availableRequests + elapsedSeconds * requestsPerSecond);
+            availableBytes = Math.min(bytesCapacity, availableBytes + elapsedSeconds * bytesPerSecond);
+            lastRefill = now;
+        }
+
+        private static Long nanosToPayDebt(Double available, Double rate) {
+            if (rate <= 0 || available >= 0) {
+                return 0L;
+            }
+            return (long) (-available / rate * 1_000_000_000D);
+        }
+    }
+
+    /**
+     * Adaptive throttler, uses an additive increase / multiplicative decrease (AIMD) strategy to define the requests
+     * per second rate. While the propagations succeed under the target latency the rate grows additively up to the max
+     * configured rate, when a propagation fails or its latency goes over the target the rate is cut multiplicatively. To
+     * avoid cutting the rate multiple times for the same sink slowdown (parallel workers report it at about the same
+     * time) a new decrease is not applied until a target latency period has passed since the last one. This
+     * implementation is thread safe.
+     */
+    static class AdaptiveThrottler implements Throttler {
+
+        private static final Logger LOG = Logger.getLogger(AdaptiveThrottler.class.getCanonicalName());
+        private final Double minRequestsPerSecond;
+        private final Double maxRequestsPerSecond;
+        private final Double increaseStep;
+        private final Double decreaseFactor;
+        private final Long targetLatencyInMillis;
+        private final LongSupplier nanoClock;
+        private final LongConsumer sleeper;
+        private Double requestsPerSecond;
+        private Long next;
+        private Long lastDecrease;
+
+        public AdaptiveThrottler(Double initialRequestsPerSecond, Double minRequestsPerSecond,
+                Double maxRequestsPerSecond, Double increaseStep, Double decreaseFactor, Long targetLatencyInMillis) {
+            this(initialRequestsPerSecond, minRequestsPerSecond, maxRequestsPerSecond, increaseStep, decreaseFactor,
+                    targetLatencyInMillis, System::nanoTime, Model::sleep);
+        }
+
+        /**
+         * Creates a throttler reading the time from the given clock and waiting with the given sleeper.
+         *
+         * @param nanoClock the monotonic clock, in nanoseconds
+         * @param sleeper holds the caller for the given nanoseconds
+         */
+        AdaptiveThrottler(Double initialRequestsPerSecond, Double minRequestsPerSecond, Double maxRequestsPerSecond,
+                Double increaseStep, Double decreaseFactor, Long targetLatencyInMillis, LongSupplier nanoClock,
+                LongConsumer sleeper) {
+            this.nanoClock = nanoClock;
+            this.sleeper = sleeper;
+            this.next = nanoClock.getAsLong();
+            // the first decrease is not delayed
+            this.lastDecrease = next - TimeUnit.MILLISECONDS.toNanos(targetLatencyInMillis);
+            this.minRequestsPerSecond = minRequestsPerSecond;
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            this.increaseStep = increaseStep;
+            this.decreaseFactor = decreaseFactor;
+            this.targetLatencyInMillis = targetLatencyInMillis;
+            this.requestsPerSecond = Math.min(maxRequestsPerSecond,
+                    Math.max(minRequestsPerSecond, initialRequestsPerSecond));
+        }
+
+        @Override
+        public void throttle() {
+            long nanosToSleep;
+            // reserve the next available slot based on the current rate
+            synchronized (this) {
+                var now = nanoClock.getAsLong();
+                var slot = Math.max(now, next);
+                next = slot + (long) (1_000_000_000D / requestsPerSecond);
+                nanosToSleep = slot - now;
+            }
+            sleeper.accept(nanosToSleep);
+        }
+
+        @Override
+        public synchronized void report(PropagationResult result, Long latencyInMillis) {
+            if (result.success && latencyInMillis <= targetLatencyInMillis) {
+                requestsPerSecond = Math.min(maxRequestsPerSecond, requestsPerSecond + increaseStep);
+                return;
+            }
+            var now = nanoClock.getAsLong();
+            if (now - lastDecrease >= TimeUnit.MILLISECONDS.toNanos(targetLatencyInMillis)) {
+                requestsPerSecond = Math.max(minRequestsPerSecond, requestsPerSecond * decreaseFactor);
+                lastDecrease = now;
+                LOG.info(String.format("Propagation %s in %d milliseconds, rate decreased to %.2f requests per second.",
+                        result.success ? "succeeded" : "failed", latencyInMillis, requestsPerSecond));
+            }
+        }
+    }
+
+    /**
+     * Throttler decorator feeding the propagation metrics: measures the time the callers are blocked by the decorated
+     * throttler and records the outcome and latency of every propagation reported to it.
+     */
+    static class MeasuredThrottler implements Throttler {
+
+        private final Throttler throttler;
+        private final PropagationMetrics metrics;
+
+        public MeasuredThrottler(Throttler throttler, PropagationMetrics metrics) {
+            this.throttler = throttler;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void throttle() {
+            var throttleStart = System.nanoTime();
+            throttler.throttle();
+            metrics.recordThrottleWait(System.nanoTime() - throttleStart);
+        }
+
+        @Override
+        public void throttle(Long payloadSize) {
+            var throttleStart = System.nanoTime();
+            throttler.throttle(payloadSize);
+            metrics.recordThrottleWait(System.nanoTime() - throttleStart);
+        }
+
+        @Override
+        public void report(PropagationResult result, Long latencyInMillis) {
+            metrics.recordPropagation(result, latencyInMillis);
+            throttler.report(result, latencyInMillis);
+        }
+    }
+
+    /**
+     * Lock free histogram of durations in milliseconds, using fixed bucket bounds. Each bucket counts the values falling
+     * in it (not the cumulative count), the cumulative view is computed when the histogram is read. This implementation
+     * is thread safe.
+     */
+    static class LatencyHistogram {
+
+        private static final long[] BUCKET_BOUNDS_IN_MILLIS
+                = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+        // the last bucket holds the values over the last bound
+        private final LongAdder[] buckets = IntStream.rangeClosed(0, BUCKET_BOUNDS_IN_MILLIS.length)
+                .mapToObj(i -> new LongAdder())
+                .toArray(LongAdder[]::new);
+        private final LongAdder sumInMillis = new LongAdder();
+
+        public void record(Long valueInMillis) {
+            var bucket = 0;
+            while (bucket < BUCKET_BOUNDS_IN_MILLIS.length && valueInMillis > BUCKET_BOUNDS_IN_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumInMillis.add(valueInMillis);
+        }
+
+        public Long getCount() {
+            return Arrays.stream(buckets).mapToLong(LongAdder::sum).sum();
+        }
+
+        public Double getMeanInMillis() {
+            var count = getCount();
+            return count == 0 ? 0D : sumInMillis.sum() / count.doubleValue();
+        }
+
+        /**
+         * Writes the histogram in the Prometheus text format, expressed in seconds.
+         *
+         * @param output where the histogram is written to
+         * @param name the metric name
+         * @param help the metric description
+         */
+        void writePrometheusText(StringBuilder output, String name, String help) {
+            output.append(String.format("# HELP %s %s%n# TYPE %s histogram%n", name, help, name));
+            var cumulativeCount = 0L;
+            for (var i = 0; i < BUCKET_BOUNDS_IN_MILLIS.length; i++) {
+                cumulativeCount += buckets[i].sum();
+                output.append(String.format("%s_bucket{le=\"%s\"} %d%n", name,
+                        BUCKET_BOUNDS_IN_MILLIS[i] / 1000D, cumulativeCount));
+            }
+            cumulativeCount += buckets[BUCKET_BOUNDS_IN_MILLIS.length].sum();
+            output.append(String.format("%s_bucket{le=\"+Inf\"} %d%n", name, cumulativeCount));
+            output.append(String.format("%s_sum %s%n", name, sumInMillis.sum() / 1000D));
+            output.append(String.format("%s_count %d%n", name, cumulativeCount));
+        }
+    }
+
+    /**
+     * The propagation metrics exposed over JMX.
+     */
+    public interface PropagationMetricsMBean {
+
+        Long getRecordsRead();
+
+        Long getBytesRead();
+
+        Long getRecordsKept();
+
+        Long getRecordsDropped();
+
+        Double getRecordsPerSecond();
+
+        Double getBytesPerSecond();
+
+        Long getThrottleBlockedMillis();
+
+        Long getSuccessfulPropagations();
+
+        Long getFailedPropagations();
+
+        Double getMeanPropagationLatencyMillis();
+
+        Double getMeanAccumulationMillis();
+
+        Integer getQueueDepth();
+
+        Long getPrefetchedBytes();
+
+        Long getCompletedSources();
+
+        Long getRetries();
+
+        Long getDeadLetteredBatches();
+
+        /**
+         * Returns the progress of the sources (files, file ranges or read streams) being read.
+         *
+         * @return a description of each source in progress, with its records and bytes read so far.
+         */
+        String[] getSourcesInProgress();
+    }
+
+    /**
+     * Collects the metrics of the propagation hot path: records and bytes read (counted before the record
+     * transformation), records kept and dropped by the transformation, time blocked in the throttler, propagation
+     * outcomes and latencies, accumulation times, queue depths and the progress of each source being read. The counters
+     * and histograms are lock free, so they can be updated on every record, the rates are averaged since the metrics
+     * were created. The metrics are exposed over JMX and in the Prometheus text format, see {@link MetricsExporter}.
+     * This implementation is thread safe.
+     */
+    static class PropagationMetrics implements PropagationMetricsMBean {
+
+        private final Long startTimestamp = System.nanoTime();
+        private final LongAdder recordsRead = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder recordsKept = new LongAdder();
+        private final LongAdder recordsDropped = new LongAdder();
+        private final LongAdder throttleBlockedNanos = new LongAdder();
+        private final LongAdder successfulPropagations = new LongAdder();
+        private final LongAdder failedPropagations = new LongAdder();
+        private final LongAdder completedSources = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder deadLetteredBatches = new LongAdder();
+        private final LatencyHistogram propagationLatency = new LatencyHistogram();
+        private final LatencyHistogram accumulationTime = new LatencyHistogram();
+        private final Map<String, SourceProgress> sourcesInProgress = new ConcurrentHashMap<>();
+        private volatile Supplier<Integer> queueDepth = () -> 0;
+        private volatile Supplier<Long> prefetchedBytes = () -> 0L;
+
+        /**
+         * Returns the progress of a source, starting to track it if it was not already.
+         *
+         * @param location the source location
+         * @return the source progress.
+         */
+        public SourceProgress sourceStarted(String location) {
+            return sourcesInProgress.computeIfAbsent(location, l -> new SourceProgress(this));
+        }
+
+        /**
+         * Stops tracking the progress of a source, once it has been completely read or has failed.
+         *
+         * @param location the source location
+         */
+        public void sourceFinished(String location) {
+            sourcesInProgress.remove(location);
+            completedSources.increment();
+        }
+
+        /**
+         * Counts a record read from a source as kept or dropped by the record transformation.
+         *
+         * @param kept true when the record was kept
+         */
+        public void recordTransformed(Boolean kept) {
+            (kept ? recordsKept : recordsDropped).increment();
+        }
+
+        public void recordThrottleWait(Long nanos) {
+            throttleBlockedNanos.add(nanos);
+        }
+
+        public void recordPropagation(PropagationResult result, Long latencyInMillis) {
+            (result.success ? successfulPropagations : failedPropagations).increment();
+            propagationLatency.record(latencyInMillis);
+        }
+
+        public void recordAccumulation(Long millis) {
+            accumulationTime.record(millis);
+        }
+
+        public void recordRetry() {
+            retries.increment();
+        }
+
+        public void recordDeadLetter() {
+            deadLetteredBatches.increment();
+        }
+
+        /**
+         * Sets the source of the propagation queue depth, the batches waiting to be propagated or in flight.
+         *
+         * @param queueDepth the queue depth supplier
+         */
+        public void trackQueueDepth(Supplier<Integer> queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+
+        /**
+         * Sets the source of the amount of prefetched bytes held in memory.
+         *
+         * @param prefetchedBytes the prefetched bytes supplier
+         */
+        public void trackPrefetchedBytes(Supplier<Long> prefetchedBytes) {
+            this.prefetchedBytes = prefetchedBytes;
+        }
+
+        @Override
+        public Long getRecordsRead() {
+            return recordsRead.sum();
+        }
+
+        @Override
+        public Long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        @Override
+        public Long getRecordsKept() {
+            return recordsKept.sum();
+        }
+
+        @Override
+        public Long getRecordsDropped() {
+            return recordsDropped.sum();
+        }
+
+        @Override
+        public Double getRecordsPerSecond() {
+            return recordsRead.sum() / elapsedSeconds();
+        }
+
+        @Override
+        public Double getBytesPerSecond() {
+            return bytesRead.sum() / elapsedSeconds();
+        }
+
+        @Override
+        public Long getThrottleBlockedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(throttleBlockedNanos.sum());
+        }
+
+        @Override
+        public Long getSuccessfulPropagations() {
+            return successfulPropagations.sum();
+        }
+
+        @Override
+        public Long getFailedPropagations() {
+            return failedPropagations.sum();
+        }
+
+        @Override
+        public Double getMeanPropagationLatencyMillis() {
+            return propagationLatency.getMeanInMillis();
+        }
+
+        @Override
+        public Double getMeanAccumulationMillis() {
+            return accumulationTime.getMeanInMillis();
+        }
+
+        @Override
+        public Integer getQueueDepth() {
+            return queueDepth.get();
+        }
+
+        @Override
+        public Long getPrefetchedBytes() {
+            return prefetchedBytes.get();
+        }
+
+        @Override
+        public Long getCompletedSources() {
+            return completedSources.sum();
+        }
+
+        @Override
+        public Long getRetries() {
+            return retries.sum();
+        }
+
+        @Override
+        public Long getDeadLetteredBatches() {
+            return deadLetteredBatches.sum();
+        }
+
+        @Override
+        public String[] getSourcesInProgress() {
+            return sourcesInProgress.entrySet().stream()
+                    .map(source -> String.format("%s: %d records, %d bytes", source.getKey(),
+                    source.getValue().records.sum(), source.getValue().bytes.sum()))
+                    .sorted()
+                    .toArray(String[]::new);
+        }
+
+        /**
+         * Renders the current metrics in the Prometheus text exposition format.
+         *
+         * @return the metrics text.
+         */
+        public String toPrometheusText() {
+            var output = new StringBuilder();
+            writeMetric(output, "bqexport_records_read_total", "counter", "Records read from the sources.",
+                    getRecordsRead());
+            writeMetric(output, "bqexport_bytes_read_total", "counter", "Bytes read from the sources.",
+                    getBytesRead());
+            writeMetric(output, "bqexport_records_kept_total", "counter",
+                    "Records read from the sources and kept by the transformation.", getRecordsKept());
+            writeMetric(output, "bqexport_records_dropped_total", "counter",
+                    "Records read from the sources and filtered out or rejected by the transformation.",
+                    getRecordsDropped());
+            writeMetric(output, "bqexport_throttle_blocked_seconds_total", "counter",
+                    "Time the propagations were blocked by the throttler.", throttleBlockedNanos.sum() / 1e9D);
+            output.append(String.format("# HELP bqexport_propagations_total Propagations completed by outcome.%n"
+                    + "# TYPE bqexport_propagations_total counter%n"
+                    + "bqexport_propagations_total{outcome=\"success\"} %d%n"
+                    + "bqexport_propagations_total{outcome=\"failure\"} %d%n",
+                    getSuccessfulPropagations(), getFailedPropagations()));
+            propagationLatency.writePrometheusText(output, "bqexport_propagation_latency_seconds",
+                    "Latency of the propagation requests.");
+            accumulationTime.writePrometheusText(output, "bqexport_accumulation_seconds",
+                    "Time spent accumulating each batch.");
+            writeMetric(output, "bqexport_propagation_queue_depth", "gauge",
+                    "Batches waiting to be propagated or in flight.", getQueueDepth());
+            writeMetric(output, "bqexport_prefetched_bytes", "gauge", "Prefetched bytes held in memory.",
+                    getPrefetchedBytes());
+            writeMetric(output, "bqexport_sources_completed_total", "counter", "Sources read completely or failed.",
+                    getCompletedSources());
+            writeMetric(output, "bqexport_retries_total", "counter", "Propagations retried after a failure.",
+                    getRetries());
+            writeMetric(output, "bqexport_dead_lettered_total", "counter",
+                    "Batches written to the dead letter spool after their last retry.", getDeadLetteredBatches());
+            output.append(String.format("# HELP bqexport_source_records_read Records read from each source in "
+                    + "progress.%n# TYPE bqexport_source_records_read gauge%n"));
+            sourcesInProgress.forEach((location, progress) -> output.append(String.format(
+                    "bqexport_source_records_read{source=\"%s\"} %d%n", escapeLabel(location),
+                    progress.records.sum())));
+            output.append(String.format("# HELP bqexport_source_bytes_read Bytes read from each source in "
+                    + "progress.%n# TYPE bqexport_source_bytes_read gauge%n"));
+            sourcesInProgress.forEach((location, progress) -> output.append(String.format(
+                    "bqexport_source_bytes_read{source=\"%s\"} %d%n", escapeLabel(location),
+                    progress.bytes.sum())));
+            return output.toString();
+        }
+
+        private Double elapsedSeconds() {
+            return Math.max(System.nanoTime() - startTimestamp, 1L) / 1e9D;
+        }
+
+        private static void writeMetric(StringBuilder output, String name, String type, String help, Number value) {
+            output.append(String.format("# HELP %s %s%n# TYPE %s %s%n%s %s%n", name, help, name, type, name, value));
+        }
+
+        private static String escapeLabel(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+    }
+
+    /**
+     * The records and bytes read from a source, also added to the global metrics. Each source is read by a single
+     * worker, but its progress is read by the metrics exporter at any time.
+     */
+    static class SourceProgress {
+
+        private final PropagationMetrics metrics;
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        public SourceProgress(PropagationMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public void addRecord() {
+            records.increment();
+            metrics.recordsRead.increment();
+        }
+
+        public void addBytes(Integer length) {
+            bytes.add(length);
+            metrics.bytesRead.add(length);
+        }
+    }
+
+    /**
+     * Exposes the propagation metrics: registers them as a platform MBean and, when a port is configured, serves them in
+     * the Prometheus text format on the /metrics path of a local HTTP endpoint. Closing the exporter stops the endpoint
+     * and unregisters the MBean.
+     */
+    static class MetricsExporter implements AutoCloseable {
+
+        private static final Logger LOG = Logger.getLogger(MetricsExporter.class.getCanonicalName());
+        private static final String OBJECT_NAME = "org.example.bqexportpropagator:type=PropagationMetrics";
+        private final Optional<ObjectName> objectName;
+        private final Optional<HttpServer> server;
+
+        private MetricsExporter(Optional<ObjectName> objectName, Optional<HttpServer> server) {
+            this.objectName = objectName;
+            this.server = server;
+        }
+
+        /**
+         * Starts exposing the metrics.
+         *
+         * @param metrics the metrics to be exposed
+         * @param bindAddress the address the HTTP endpoint is bound to, the loopback one when null
+         * @param port the port of the HTTP endpoint, zero or less disables it
+         * @return the started exporter
+         * @throws IOException if the HTTP endpoint can not be started
+         */
+        public static MetricsExporter start(PropagationMetrics metrics, String bindAddress, Integer port)
+                throws IOException {
+            Optional<ObjectName> objectName = Optional.empty();
+            try {
+                var name = new ObjectName(OBJECT_NAME);
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new StandardMBean(metrics, PropagationMetricsMBean.class), name);
+                objectName = Optional.of(name);
+            } catch (JMException ex) {
+                LOG.log(Level.WARNING, "The propagation metrics could not be registered over JMX.", ex);
+            }
+            Optional<HttpServer> server = Optional.empty();
+            if (port > 0) {
+                var address = bindAddress == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+                var httpServer = HttpServer.create(new InetSocketAddress(address, port), 0);
+                httpServer.createContext("/metrics", exchange -> {
+                    var response = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, response.length);
+                    try ( var body = exchange.getResponseBody()) {
+                        body.write(response);
+                    }
+                });
+                httpServer.start();
+                LOG.info(String.format("Serving the propagation metrics at http://%s:%d/metrics",
+                        httpServer.getAddress().getHostString(), port));
+                server = Optional.of(httpServer);
+            }
+            return new MetricsExporter(objectName, server);
+        }
+
+        @Override
+        public void close() {
+            server.ifPresent(httpServer -> httpServer.stop(0));
+            objectName.ifPresent(name -> {
                 try {
-                    Thread.sleep(timeToSleep);
-                } catch (InterruptedException ex) {
-                    Logger.getLogger(Model.class.getName()).log(Level.SEVERE, "Thread sleep interruption!", ex);
-                    throw new RuntimeException(ex);
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                } catch (JMException ex) {
+                    LOG.log(Level.WARNING, "The propagation metrics could not be unregistered from JMX.", ex);
                 }
+            });
+        }
+    }
+
+    /**
+     * Holds the execution of the current thread for the given amount of time, if positive.
+     *
+     * @param nanosToSleep the time to hold the execution.
+     */
+    static void sleep(Long nanosToSleep) {
+        if (nanosToSleep > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanosToSleep);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(Model.class.getName()).log(Level.SEVERE, "Thread sleep interruption!", ex);
+                throw new RuntimeException(ex);
             }
-            last = Instant.now().toEpochMilli();
         }
     }
 
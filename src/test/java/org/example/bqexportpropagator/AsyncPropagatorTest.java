@@ -0,0 +1,149 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Checks the asynchronous propagator blocks the readers once the max in flight requests are pending, reports the
+ * failed requests to the throttler releasing their slot, and waits for the in flight requests before closing.
+ */
+public class AsyncPropagatorTest {
+
+    private static final Long WAIT_MILLIS = 200L;
+
+    @Test(timeout = 10000)
+    public void blocksTheReadersWhileTheMaxInFlightRequestsArePending() throws Exception {
+        var requests = Collections.synchronizedList(new ArrayList<CompletableFuture<PropagationResult>>());
+        try ( var propagator = new AsyncPropagator<String>((location, batch) -> {
+            var request = new CompletableFuture<PropagationResult>();
+            requests.add(request);
+            return request;
+        }, () -> {
+        }, 2)) {
+            var first = propagator.propagate("gs://bucket/file.json", "batch-0", 7L);
+            propagator.propagate("gs://bucket/file.json", "batch-1", 7L);
+            assertEquals(2, (int) propagator.getPendingCount());
+
+            var reader = CompletableFuture.supplyAsync(
+                    () -> propagator.propagate("gs://bucket/file.json", "batch-2", 7L));
+            try {
+                reader.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                fail("the reader was not blocked by the in flight requests");
+            } catch (TimeoutException ex) {
+                // the max in flight requests are pending, as expected
+            }
+            assertEquals(2, requests.size());
+
+            // completing a request lets the blocked reader send the next one
+            requests.get(0).complete(success());
+            assertTrue(first.get(5, TimeUnit.SECONDS).success);
+            reader.get(5, TimeUnit.SECONDS);
+            assertEquals(3, requests.size());
+            assertEquals(2, (int) propagator.getPendingCount());
+
+            requests.forEach(request -> request.complete(success()));
+            assertEquals(0, (int) propagator.getPendingCount());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void reportsTheFailedRequestsAndReleasesTheirSlot() throws Exception {
+        var reported = Collections.synchronizedList(new ArrayList<PropagationResult>());
+        var throttler = new Throttler() {
+            @Override
+            public void throttle() {
+            }
+
+            @Override
+            public void report(PropagationResult result, Long latencyInMillis) {
+                reported.add(result);
+            }
+        };
+        try ( var propagator = new AsyncPropagator<String>((location, batch) -> {
+            if (batch.equals("rejected")) {
+                throw new IllegalArgumentException("request rejected");
+            }
+            return CompletableFuture.failedFuture(new IllegalStateException("destination unavailable"));
+        }, throttler, 1)) {
+            var failed = propagator.propagate("gs://bucket/file.json", "batch", 5L);
+            try {
+                failed.join();
+                fail("the failed request completed normally");
+            } catch (CompletionException ex) {
+                assertEquals("destination unavailable", ex.getCause().getMessage());
+            }
+            assertEquals(1, reported.size());
+            assertFalse(reported.get(0).success);
+            assertEquals(5, (int) reported.get(0).payloadSize);
+            assertEquals(Optional.of("destination unavailable"), reported.get(0).messageResult);
+            assertEquals(0, (int) propagator.getPendingCount());
+
+            // a request failing before it is sent also releases its slot
+            try {
+                propagator.propagate("gs://bucket/file.json", "rejected", 8L);
+                fail("the rejected request did not fail");
+            } catch (IllegalArgumentException ex) {
+                assertEquals("request rejected", ex.getMessage());
+            }
+            assertEquals(0, (int) propagator.getPendingCount());
+            // with a single slot, this would block if any of the failures had kept theirs
+            propagator.propagate("gs://bucket/file.json", "batch", 5L)
+                    .exceptionally(error -> null)
+                    .get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void waitsForTheInFlightRequestsBeforeClosing() throws Exception {
+        var release = new CountDownLatch(1);
+        var results = new ArrayList<CompletableFuture<PropagationResult>>();
+        var propagator = AsyncPropagator.<String>ofBlocking((location, batch) -> {
+            await(release);
+            return success();
+        }, () -> {
+        }, 3);
+        for (var i = 0; i < 3; i++) {
+            results.add(propagator.propagate("gs://bucket/file.json", "batch-" + i, 7L));
+        }
+
+        var closing = CompletableFuture.runAsync(propagator::close);
+        try {
+            closing.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("the propagator closed with requests in flight");
+        } catch (TimeoutException ex) {
+            // the requests are still in flight, as expected
+        } finally {
+            release.countDown();
+        }
+        closing.get(5, TimeUnit.SECONDS);
+        results.forEach(result -> {
+            assertTrue(result.isDone());
+            assertTrue(result.join().success);
+        });
+    }
+
+    private static PropagationResult success() {
+        return new PropagationResult("gs://bucket/file.json", "", 7, Optional.empty(), true);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
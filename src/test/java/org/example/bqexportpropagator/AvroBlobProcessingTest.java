@@ -0,0 +1,146 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the Avro exports are decoded into the same JSON entries BigQuery would export, for the supported codecs,
+ * including the decimal, timestamp and date logical types and the non finite floating point values.
+ */
+public class AvroBlobProcessingTest {
+
+    private static final String BUCKET = "test-bucket";
+    private static final Integer RECORD_COUNT = 2_500;
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Row\","
+            + "\"fields\":[{\"name\":\"id\",\"type\":\"long\"},{\"name\":\"name\",\"type\":\"string\"},"
+            + "{\"name\":\"score\",\"type\":[\"null\",\"double\"]},"
+            + "{\"name\":\"amount\",\"type\":[\"null\",{\"type\":\"bytes\",\"logicalType\":\"decimal\","
+            + "\"precision\":38,\"scale\":9}]},"
+            + "{\"name\":\"created_at\",\"type\":{\"type\":\"long\",\"logicalType\":\"timestamp-micros\"}},"
+            + "{\"name\":\"day\",\"type\":{\"type\":\"int\",\"logicalType\":\"date\"}},"
+            + "{\"name\":\"ratio\",\"type\":\"double\"}]}");
+    // 2020-10-17 12:30:00.123456 UTC
+    private static final Long CREATED_AT_MICROS = 1_602_937_800_123_456L;
+    private static final Integer DAY = 18_552;
+
+    private Storage storage;
+    private List<String> propagatedEntries;
+    private Propagator<List<String>> propagator;
+
+    @Before
+    public void setUp() {
+        storage = LocalStorageHelper.getOptions().getService();
+        propagatedEntries = Collections.synchronizedList(new ArrayList<>());
+        propagator = new DirectPropagator<>((location, entries) -> {
+            propagatedEntries.addAll(entries);
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        });
+    }
+
+    @Test
+    public void decodesDeflateFiles() throws IOException {
+        assertDecoded(CodecFactory.deflateCodec(6), "export/000000000000.avro");
+    }
+
+    @Test
+    public void decodesSnappyFiles() throws IOException {
+        assertDecoded(CodecFactory.snappyCodec(), "export/000000000001.avro");
+    }
+
+    private void assertDecoded(CodecFactory codec, String name) throws IOException {
+        var records = generateRecords();
+        storage.create(BlobInfo.newBuilder(BUCKET, name).build(), writeAvroFile(records, codec));
+        // the created blob does not carry its size, the listed ones do
+        var blob = storage.get(BlobId.of(BUCKET, name));
+        var resultSink = new PropagationResultSink(10, result -> {
+        });
+
+        var propagationCount = Functions.processGCSBlobAvro(AccumulationLimits.ofSize(16 * 1024L),
+                RecordTransformer.identity(), propagator, resultSink, CheckpointJournal.disabled(),
+                BlobRange.whole(blob));
+
+        assertTrue("the file should be propagated in several chunks", propagationCount > 1);
+        assertEquals(propagationCount, resultSink.getSuccessCount());
+        assertEquals(0L, (long) resultSink.getFailureCount());
+        assertEquals((long) RECORD_COUNT, (long) resultSink.getMetrics().getRecordsRead());
+        assertEquals(RECORD_COUNT.intValue(), propagatedEntries.size());
+        assertEquals("{\"id\":\"0\",\"name\":\"name \\\"0\\\" ñ\",\"score\":null,\"amount\":null,"
+                + "\"created_at\":\"2020-10-17 12:30:00.123456 UTC\",\"day\":\"2020-10-17\",\"ratio\":0.0}",
+                propagatedEntries.get(0));
+        assertEquals("{\"id\":\"1\",\"name\":\"name \\\"1\\\" ñ\",\"score\":0.14285714285714285,"
+                + "\"amount\":\"0.001\",\"created_at\":\"2020-10-17 12:30:01.123456 UTC\",\"day\":\"2020-10-18\","
+                + "\"ratio\":\"NaN\"}", propagatedEntries.get(1));
+        var parser = new Gson().getAdapter(JsonElement.class);
+        for (var i = 0; i < RECORD_COUNT; i++) {
+            var record = records.get(i);
+            // the strict parser rejects the bare NaN and Infinity tokens
+            var json = parser.fromJson(propagatedEntries.get(i)).getAsJsonObject();
+            assertEquals((long) record.get("id"), json.get("id").getAsLong());
+            assertEquals(record.get("name").toString(), json.get("name").getAsString());
+            assertEquals(record.get("score") == null, json.get("score").isJsonNull());
+            assertEquals(i % 5 == 0 ? null : amount(i), json.get("amount").isJsonNull()
+                    ? null : new BigDecimal(json.get("amount").getAsString()));
+            assertEquals(Double.toString((Double) record.get("ratio")), json.get("ratio").getAsString());
+        }
+        assertEquals("{\"id\":\"2\",\"name\":\"name \\\"2\\\" ñ\",\"score\":0.2857142857142857,"
+                + "\"amount\":\"0.002\",\"created_at\":\"2020-10-17 12:30:02.123456 UTC\",\"day\":\"2020-10-19\","
+                + "\"ratio\":\"Infinity\"}", propagatedEntries.get(2));
+    }
+
+    private static BigDecimal amount(Integer i) {
+        return BigDecimal.valueOf(i, 3);
+    }
+
+    private static List<GenericRecord> generateRecords() {
+        var records = new ArrayList<GenericRecord>();
+        for (var i = 0; i < RECORD_COUNT; i++) {
+            records.add(new GenericRecordBuilder(SCHEMA)
+                    .set("id", (long) i)
+                    .set("name", "name \"" + i + "\" ñ")
+                    .set("score", i % 3 == 0 ? null : i / 7D)
+                    .set("amount", i % 5 == 0 ? null
+                            : ByteBuffer.wrap(amount(i).setScale(9).unscaledValue().toByteArray()))
+                    .set("created_at", CREATED_AT_MICROS + i * 1_000_000L)
+                    .set("day", DAY + i)
+                    .set("ratio", i % 4 == 1 ? Double.NaN : i % 4 == 2 ? Double.POSITIVE_INFINITY : i / 3D)
+                    .build());
+        }
+        return records;
+    }
+
+    private static byte[] writeAvroFile(List<GenericRecord> records, CodecFactory codec) throws IOException {
+        var content = new ByteArrayOutputStream();
+        try ( var writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(SCHEMA))) {
+            // small blocks, so the file holds many of them
+            writer.setCodec(codec).setSyncInterval(4 * 1024).create(SCHEMA, content);
+            for (var record : records) {
+                writer.append(record);
+            }
+        }
+        return content.toByteArray();
+    }
+}
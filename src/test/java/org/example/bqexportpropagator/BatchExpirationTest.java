@@ -0,0 +1,132 @@
+package org.example.bqexportpropagator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the idle batches are propagated once they reach their max age, without waiting for the next record, that a
+ * blocked propagation does not delay the expiration of the other accumulators, and that the byte accumulator keeps the
+ * record being read for the next payload.
+ */
+public class BatchExpirationTest {
+
+    private static final Long MAX_AGE_IN_MILLIS = 100L;
+    private static final AccumulationLimits LIMITS = new AccumulationLimits(1024L * 1024, 0, MAX_AGE_IN_MILLIS, false);
+
+    @Test
+    public void propagatesTheIdleEntries() throws InterruptedException {
+        var payloads = new LinkedBlockingQueue<String>();
+        try ( var propagator = new DirectPropagator<List<String>>((location, entries) -> {
+            payloads.add(String.join(",", entries));
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var accumulator = new Accumulator(LIMITS, "gs://bucket/file.json", propagator, sink());
+            try ( var expirationCheck = LIMITS.scheduleExpirationCheck(accumulator::drainExpired)) {
+                accumulator.accumulate("{\"id\":1}").accumulate("{\"id\":2}");
+                assertEquals("{\"id\":1},{\"id\":2}", next(payloads));
+
+                accumulator.accumulate("{\"id\":3}");
+                assertEquals("{\"id\":3}", next(payloads));
+                accumulator.complete();
+            }
+        }
+        assertNull(payloads.poll());
+    }
+
+    @Test
+    public void propagatesTheIdleEntriesWhileAnotherPropagationIsBlocked() throws InterruptedException {
+        var blocked = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var payloads = new LinkedBlockingQueue<String>();
+        try ( var propagator = new DirectPropagator<List<String>>((location, entries) -> {
+            if (location.contains("slow")) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            payloads.add(String.join(",", entries));
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var slow = new Accumulator(LIMITS, "gs://bucket/slow.json", propagator, sink());
+            var fast = new Accumulator(LIMITS, "gs://bucket/fast.json", propagator, sink());
+            try ( var slowCheck = LIMITS.scheduleExpirationCheck(slow::drainExpired);
+                    var fastCheck = LIMITS.scheduleExpirationCheck(fast::drainExpired)) {
+                slow.accumulate("{\"id\":1}");
+                assertTrue(blocked.await(MAX_AGE_IN_MILLIS * 20, TimeUnit.MILLISECONDS));
+
+                fast.accumulate("{\"id\":2}");
+                assertEquals("{\"id\":2}", next(payloads));
+                release.countDown();
+                assertEquals("{\"id\":1}", next(payloads));
+                slow.complete();
+                fast.complete();
+            } finally {
+                release.countDown();
+            }
+        }
+        assertNull(payloads.poll());
+    }
+
+    @Test
+    public void propagatesTheIdleRecordsOfAPayload() throws InterruptedException {
+        var payloads = new LinkedBlockingQueue<String>();
+        try ( var propagator = new DirectPropagator<ByteBuffer>((location, payload) -> {
+            payloads.add(StandardCharsets.UTF_8.decode(payload).toString());
+            return new PropagationResult(location, "", payload.remaining(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var accumulator = new ByteAccumulator(LIMITS, "gs://bucket/file.json", propagator, sink(),
+                    new RecordBufferPool(64, 2), Functions.PAYLOAD_PREFIX, Functions.PAYLOAD_RECORD_SEPARATOR,
+                    Functions.PAYLOAD_SUFFIX, SourceCheckpoint.untracked());
+            try ( var expirationCheck = LIMITS.scheduleExpirationCheck(accumulator::drainExpired)) {
+                append(accumulator, "{\"id\":1}").completeRecord();
+                // the reader waits for the rest of the second record
+                append(accumulator, "{\"id\"");
+                assertEquals("{\"records\":[{\"id\":1}]}", next(payloads));
+
+                append(accumulator, ":2}").completeRecord();
+                append(accumulator, "{\"id\":3}").completeRecord();
+                accumulator.complete();
+            }
+        }
+        var remaining = next(payloads);
+        // the completed records may expire again before the accumulator is completed
+        if (!remaining.contains("3")) {
+            assertEquals("{\"records\":[{\"id\":2}]}", remaining);
+            assertEquals("{\"records\":[{\"id\":3}]}", next(payloads));
+        } else {
+            assertEquals("{\"records\":[{\"id\":2},{\"id\":3}]}", remaining);
+        }
+        assertNull(payloads.poll());
+    }
+
+    private static ByteAccumulator append(ByteAccumulator accumulator, String portion) {
+        var bytes = portion.getBytes(StandardCharsets.UTF_8);
+        return accumulator.append(bytes, 0, bytes.length);
+    }
+
+    private static String next(BlockingQueue<String> payloads) throws InterruptedException {
+        return payloads.poll(MAX_AGE_IN_MILLIS * 20, TimeUnit.MILLISECONDS);
+    }
+
+    private static PropagationResultSink sink() {
+        return new PropagationResultSink(10, result -> {
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the prefetched ranges are handed to the workers in the order they are submitted, whatever their sizes, so a
+ * later range never holds the budget an earlier one needs, and that the budget is released once they are processed.
+ */
+public class BlobPrefetcherTest {
+
+    private static final Long BUDGET = 100L;
+    private final Random random = new Random(20201017L);
+
+    @Test(timeout = 30000)
+    public void prefetchesMixedSizesInOrder() throws InterruptedException, ExecutionException, TimeoutException {
+        var storage = LocalStorageHelper.getOptions().getService();
+        var sizes = new ArrayList<Integer>(List.of(10, 80, 50));
+        for (var i = 0; i < 200; i++) {
+            sizes.add(1 + random.nextInt(BUDGET.intValue()));
+        }
+        var contents = new ArrayList<byte[]>();
+        var ranges = new ArrayList<BlobRange>();
+        for (var i = 0; i < sizes.size(); i++) {
+            var content = new byte[sizes.get(i)];
+            random.nextBytes(content);
+            contents.add(content);
+            var blobId = BlobId.of("test-bucket", String.format("export/%012d.json", i));
+            storage.create(BlobInfo.newBuilder(blobId).build(), content);
+            ranges.add(BlobRange.whole(storage.get(blobId)));
+        }
+
+        try ( var prefetcher = new BlobPrefetcher(4, 1, BUDGET)) {
+            var prefetched = new ArrayList<CompletableFuture<BlobRange>>();
+            ranges.forEach(range -> prefetched.add(prefetcher.prefetch(range)));
+            // a single worker processing the ranges in order, the way the workers take them from the pool
+            for (var i = 0; i < ranges.size(); i++) {
+                var range = prefetched.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(ranges.get(i).getName(), range.getName());
+                assertTrue(prefetcher.getPrefetchedBytes() <= BUDGET);
+                if (range.content != null) {
+                    assertArrayEquals(contents.get(i), range.content);
+                }
+                prefetcher.release(range);
+            }
+            assertEquals(0L, (long) prefetcher.getPrefetchedBytes());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.bqexportpropagator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the records read at the byte level are split on the newlines no matter how they are spread over the read
+ * buffers, that the blank lines are skipped, and that the payloads roll over once they reach the size limit.
+ */
+public class ByteAccumulatorTest {
+
+    private static final List<String> RECORDS = List.of(
+            "{\"id\":1,\"name\":\"Zoë\"}",
+            "{\"id\":2,\"name\":\"日本語\"}",
+            "{\"id\":3}",
+            "{\"id\":4,\"name\":\"😀\",\"tags\":[\"a\",\"b\",\"c\"]}",
+            "{\"id\":5}");
+
+    @Test
+    public void splitsTheRecordsSpanningTheReadBuffers() {
+        var content = (String.join("\n", RECORDS) + "\n").getBytes(StandardCharsets.UTF_8);
+        var expected = List.of("{\"records\":[" + String.join(",", RECORDS) + "]}");
+
+        // every read buffer size, from a single byte up to the whole content
+        for (var readSize = 1; readSize <= content.length; readSize++) {
+            assertEquals("read size " + readSize, expected,
+                    propagate(AccumulationLimits.ofSize(1024L), content, readSize));
+        }
+    }
+
+    @Test
+    public void completesTheLastRecordWithoutNewline() {
+        var content = String.join("\n", RECORDS).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(List.of("{\"records\":[" + String.join(",", RECORDS) + "]}"),
+                propagate(AccumulationLimits.ofSize(1024L), content, 7));
+    }
+
+    @Test
+    public void skipsTheBlankLines() {
+        var content = "\n\n{\"id\":1}\n\n\n{\"id\":2}\n\n".getBytes(StandardCharsets.UTF_8);
+
+        for (var readSize = 1; readSize <= content.length; readSize++) {
+            var sink = new PropagationResultSink(10, result -> {
+            });
+            assertEquals("read size " + readSize, List.of("{\"records\":[{\"id\":1},{\"id\":2}]}"),
+                    propagate(AccumulationLimits.ofSize(1024L), content, readSize, sink));
+            // the blank lines are not counted as records either
+            assertEquals(2L, (long) sink.getMetrics().getRecordsRead());
+        }
+    }
+
+    @Test
+    public void rollsOverThePayloadAtTheSizeLimit() {
+        // 8 bytes each, the payload is propagated once its records add up to 16 bytes
+        var content = "{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n{\"id\":4}\n{\"id\":5}\n".getBytes(StandardCharsets.UTF_8);
+        var expected = List.of(
+                "{\"records\":[{\"id\":1},{\"id\":2}]}",
+                "{\"records\":[{\"id\":3},{\"id\":4}]}",
+                "{\"records\":[{\"id\":5}]}");
+
+        for (var readSize = 1; readSize <= content.length; readSize++) {
+            assertEquals("read size " + readSize, expected,
+                    propagate(AccumulationLimits.ofSize(16L), content, readSize));
+        }
+        // a record crossing the limit still goes in the payload it started
+        assertEquals(List.of(
+                "{\"records\":[{\"id\":1},{\"id\":2},{\"id\":3}]}",
+                "{\"records\":[{\"id\":4},{\"id\":5}]}"),
+                propagate(AccumulationLimits.ofSize(17L), content, 5));
+    }
+
+    private static List<String> propagate(AccumulationLimits limits, byte[] content, Integer readSize) {
+        return propagate(limits, content, readSize, new PropagationResultSink(10, result -> {
+        }));
+    }
+
+    /**
+     * Splits the content read in buffers of the given size, as the blob processing does, returning the payloads.
+     */
+    private static List<String> propagate(AccumulationLimits limits, byte[] content, Integer readSize,
+            PropagationResultSink sink) {
+        var payloads = new ArrayList<String>();
+        try ( var propagator = new DirectPropagator<ByteBuffer>((location, payload) -> {
+            payloads.add(StandardCharsets.UTF_8.decode(payload).toString());
+            return new PropagationResult(location, "", payload.remaining(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var accumulator = new ByteAccumulator(limits, "gs://bucket/file.json", propagator, sink,
+                    new RecordBufferPool(8, 2), Functions.PAYLOAD_PREFIX, Functions.PAYLOAD_RECORD_SEPARATOR,
+                    Functions.PAYLOAD_SUFFIX, SourceCheckpoint.untracked());
+            for (var offset = 0; offset < content.length; offset += readSize) {
+                // a buffer positioned in the middle of its array, as a reused read buffer could be
+                var readBuffer = ByteBuffer.wrap(content, offset, Math.min(readSize, content.length - offset));
+                Functions.splitRecords(readBuffer, accumulator);
+            }
+            accumulator.complete();
+        }
+        return payloads;
+    }
+}
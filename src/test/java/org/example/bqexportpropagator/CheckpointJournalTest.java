@@ -0,0 +1,128 @@
+package org.example.bqexportpropagator;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the checkpoint journal protects the recorded progress and is resumed with the split size and reading mode it
+ * was recorded with, and that the checkpoints advance past the chunks recorded in the dead letter file.
+ */
+public class CheckpointJournalTest {
+
+    private static final String READING_MODE
+            = CheckpointJournal.readingMode("json", false, List.of("id"), List.of("status=active"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesTheRecordedProgress() throws IOException {
+        var journalFile = folder.getRoot().toPath().resolve("journal");
+        try ( var journal = CheckpointJournal.create(journalFile, "export/prefix", 1000L, READING_MODE, false)) {
+            journal.recordOffset("file-1#0-1000", 42L);
+            journal.recordCompletion("file-2");
+        }
+
+        try ( var journal = CheckpointJournal.resume(journalFile, 1000L, READING_MODE)) {
+            assertEquals("export/prefix", journal.getExportPrefix());
+            assertEquals(42L, (long) journal.checkpoint("file-1#0-1000").getResumeOffset());
+            assertTrue(journal.isCompleted("file-2"));
+            assertFalse(journal.isCompleted("file-1#0-1000"));
+        }
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void doesNotReplaceAnExistingJournal() throws IOException {
+        var journalFile = recordedJournal();
+        CheckpointJournal.create(journalFile, "export/other", 0L, READING_MODE, false).close();
+    }
+
+    @Test
+    public void replacesAnExistingJournalWhenRequested() throws IOException {
+        var journalFile = recordedJournal();
+        CheckpointJournal.create(journalFile, "export/other", 0L, READING_MODE, true).close();
+
+        try ( var journal = CheckpointJournal.resume(journalFile, 0L, READING_MODE)) {
+            assertEquals("export/other", journal.getExportPrefix());
+            assertEquals(0L, (long) journal.checkpoint("file-1").getResumeOffset());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsResumingWithADifferentSplitSize() throws IOException {
+        var journalFile = recordedJournal();
+        CheckpointJournal.resume(journalFile, 2000L, READING_MODE).close();
+    }
+
+    @Test
+    public void rejectsResumingWithADifferentReadingMode() throws IOException {
+        var journalFile = recordedJournal();
+        var filters = List.of("status=active");
+        for (var readingMode : List.of(CheckpointJournal.readingMode("json", true, List.of("id"), filters),
+                CheckpointJournal.readingMode("avro", false, List.of("id"), filters),
+                CheckpointJournal.readingMode("json", false, List.of(), filters),
+                CheckpointJournal.readingMode("json", false, List.of("id"), List.of()))) {
+            try {
+                CheckpointJournal.resume(journalFile, 0L, readingMode).close();
+                fail("resumed with " + readingMode);
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().contains(READING_MODE));
+            }
+        }
+    }
+
+    @Test
+    public void completesTheSourcesWithDeadLetteredChunks() throws IOException {
+        var journalFile = folder.getRoot().toPath().resolve("journal");
+        try ( var journal = CheckpointJournal.create(journalFile, "export/prefix", 0L, READING_MODE, false)) {
+            accumulateFailing(journal, "file-1", true);
+            accumulateFailing(journal, "file-2", false);
+        }
+
+        try ( var journal = CheckpointJournal.resume(journalFile, 0L, READING_MODE)) {
+            // the dead lettered chunks are replayed from the dead letter file, not propagated again
+            assertTrue(journal.isCompleted("file-1"));
+            assertFalse(journal.isCompleted("file-2"));
+            assertEquals(0L, (long) journal.checkpoint("file-2").getResumeOffset());
+        }
+    }
+
+    private static void accumulateFailing(CheckpointJournal journal, String sourceName, Boolean recorded) {
+        BiFunction<String, List<String>, PropagationResult> failing
+                = (location, entries) -> PropagationResult.failed(location, 0L, Optional.empty());
+        var propagation = new RetryingPropagation<>(failing, () -> {
+        }, new RetryBudget(0.2D, 100), 0, 1L, 1L, (location, entries) -> recorded, new PropagationMetrics());
+        try ( var propagator = new DirectPropagator<>(propagation, () -> {
+        })) {
+            var accumulator = new Accumulator(AccumulationLimits.ofSize(20L), sourceName, propagator,
+                    new PropagationResultSink(10, result -> {
+                    }), journal.checkpoint(sourceName));
+            for (var i = 0; i < 5; i++) {
+                accumulator.accumulate("{\"id\":" + i + "}");
+            }
+            accumulator.complete();
+        }
+    }
+
+    private Path recordedJournal() throws IOException {
+        var journalFile = folder.getRoot().toPath().resolve("journal");
+        try ( var journal = CheckpointJournal.create(journalFile, "export/prefix", 0L, READING_MODE, false)) {
+            journal.recordOffset("file-1", 10L);
+        }
+        assertTrue(Files.exists(journalFile));
+        return journalFile;
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the gzip compressed exported files are decompressed while being read, whether they are read from GCS or from
+ * their prefetched content, and that the compressed exports get the gzip extension and are sized with the expected
+ * compression ratio.
+ */
+public class ExportCompressionTest {
+
+    /**
+     * The size of the exported files the launcher aims for.
+     */
+    private static final Long DESIRED_FILE_SIZE = 1024L * 1024 * 10;
+
+    private final Storage storage = LocalStorageHelper.getOptions().getService();
+    private final List<String> records = new ArrayList<>();
+
+    public ExportCompressionTest() {
+        for (var i = 0; i < 2000; i++) {
+            records.add(String.format("{\"id\":%d,\"name\":\"name %d ñandú 日本語\"}", i, i));
+        }
+    }
+
+    @Test
+    public void readsTheGzippedEntries() throws IOException {
+        var range = BlobRange.whole(gzippedBlob("export/1/000000000000-file.json.gz"));
+        var entries = Collections.synchronizedList(new ArrayList<String>());
+
+        Functions.processGCSBlob(AccumulationLimits.ofSize(4096L), RecordTransformer.identity(),
+                new DirectPropagator<>((location, batch) -> {
+                    entries.addAll(batch);
+                    return new PropagationResult(location, "", batch.size(), Optional.empty(), true);
+                }, () -> {
+                }), sink(), CheckpointJournal.disabled(), range);
+
+        assertEquals(records, entries);
+    }
+
+    @Test
+    public void readsTheGzippedBytes() throws IOException {
+        var blob = gzippedBlob("export/1/000000000000-file.json.gz");
+        // the range read from GCS and the same range once prefetched
+        for (var range : List.of(BlobRange.whole(blob), new BlobRange(blob, 0L, blob.getSize(), blob.getContent()))) {
+            var payloads = new StringBuilder();
+
+            Functions.processGCSBlobBytes(AccumulationLimits.ofSize(1024L * 1024), new DirectPropagator<ByteBuffer>(
+                    (location, payload) -> {
+                        payloads.append(StandardCharsets.UTF_8.decode(payload));
+                        return new PropagationResult(location, "", payload.remaining(), Optional.empty(), true);
+                    }, () -> {
+                    }), sink(), CheckpointJournal.disabled(), range);
+
+            assertEquals("{\"records\":[" + String.join(",", records) + "]}", payloads.toString());
+        }
+    }
+
+    @Test
+    public void readsTheUncompressedFilesAsTheyAre() {
+        var blobId = BlobId.of("test-bucket", "export/1/000000000000-file.json");
+        storage.create(BlobInfo.newBuilder(blobId).build(),
+                (String.join("\n", records) + "\n").getBytes(StandardCharsets.UTF_8));
+        var entries = Collections.synchronizedList(new ArrayList<String>());
+
+        Functions.processGCSBlob(AccumulationLimits.ofSize(4096L), RecordTransformer.identity(),
+                new DirectPropagator<>((location, batch) -> {
+                    entries.addAll(batch);
+                    return new PropagationResult(location, "", batch.size(), Optional.empty(), true);
+                }, () -> {
+                }), sink(), CheckpointJournal.disabled(), BlobRange.whole(storage.get(blobId)));
+
+        assertEquals(records, entries);
+    }
+
+    @Test
+    public void addsTheGzipExtensionToTheCompressedExports() {
+        assertEquals(".json.gz", Launcher.exportFileExtension("json", "gzip"));
+        assertEquals(".json", Launcher.exportFileExtension("json", "none"));
+        assertEquals(".avro", Launcher.exportFileExtension("avro", "deflate"));
+        assertEquals(List.of("gs://bucket/prefix/export/1/*-file.json.gz"),
+                Launcher.createExportWildcardPaths(0L, "gs://bucket/prefix", ".json.gz", 8L));
+    }
+
+    @Test
+    public void sizesTheCompressedExportsWithTheirRatio() {
+        var bytesProcessed = DESIRED_FILE_SIZE * 16;
+
+        assertEquals(16, Launcher.createExportWildcardPaths(bytesProcessed, "gs://bucket/prefix", ".json",
+                Launcher.exportCompressionRatio("none")).size());
+        // the gzip files are expected to be 8 times smaller, so 8 times less of them are needed
+        var paths = Launcher.createExportWildcardPaths(bytesProcessed, "gs://bucket/prefix", ".json.gz",
+                Launcher.exportCompressionRatio("gzip"));
+        assertEquals(2, paths.size());
+        assertEquals("gs://bucket/prefix/export/2/*-file.json.gz", paths.get(1));
+        // a small compressed export still gets one file
+        assertEquals(1, Launcher.createExportWildcardPaths(DESIRED_FILE_SIZE, "gs://bucket/prefix", ".json.gz",
+                Launcher.exportCompressionRatio("gzip")).size());
+    }
+
+    private Blob gzippedBlob(String name) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try ( var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write((String.join("\n", records) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        var blobId = BlobId.of("test-bucket", name);
+        storage.create(BlobInfo.newBuilder(blobId).build(), compressed.toByteArray());
+        return storage.get(blobId);
+    }
+
+    private static PropagationResultSink sink() {
+        return new PropagationResultSink(10, result -> {
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.bqexportpropagator;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the queries are embedded in the EXPORT DATA statement without breaking it.
+ */
+public class ExportDataStatementTest {
+
+    @Test
+    public void quotesTheOptionValues() {
+        assertEquals("EXPORT DATA OPTIONS(uri='gs://bucket/it\\'s/a\\\\b/export/*-file.json', format='JSON', "
+                + "compression='GZIP') AS\nSELECT 1",
+                Launcher.exportDataStatement("SELECT 1", "gs://bucket/it's/a\\b/export/*-file.json", "JSON", "GZIP"));
+        assertEquals("EXPORT DATA OPTIONS(uri='gs://b/*.avro', format='AVRO') AS\nSELECT 1",
+                Launcher.exportDataStatement("SELECT 1", "gs://b/*.avro", "AVRO", "NONE"));
+    }
+
+    @Test
+    public void removesTheTrailingTerminatorsAndComments() {
+        assertEquals("SELECT a FROM t", Launcher.exportDataQuery("SELECT a FROM t;"));
+        assertEquals("SELECT a FROM t", Launcher.exportDataQuery("SELECT a FROM t ; ;\n"));
+        assertEquals("SELECT a FROM t", Launcher.exportDataQuery("SELECT a FROM t -- the source table"));
+        assertEquals("SELECT a FROM t", Launcher.exportDataQuery("SELECT a FROM t; # done\n/* trailing */"));
+        assertEquals("-- leading\nSELECT a /* inner */ FROM t",
+                Launcher.exportDataQuery("-- leading\nSELECT a /* inner */ FROM t;"));
+    }
+
+    @Test
+    public void keepsTheSemicolonsInLiteralsAndComments() {
+        assertEquals("SELECT 'a;b', \"c;\\\";d\", '''e;\nf''' AS `g;h` FROM t -- x;y\nWHERE u = ';'",
+                Launcher.exportDataQuery(
+                        "SELECT 'a;b', \"c;\\\";d\", '''e;\nf''' AS `g;h` FROM t -- x;y\nWHERE u = ';';"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMultipleStatements() {
+        Launcher.exportDataQuery("SELECT 1; SELECT 2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyQueries() {
+        Launcher.exportDataQuery(" ; -- nothing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnterminatedLiterals() {
+        Launcher.exportDataQuery("SELECT 'a;");
+    }
+}
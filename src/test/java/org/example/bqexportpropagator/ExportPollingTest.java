@@ -0,0 +1,93 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the export location is polled while the export runs: the files landing between the listings are processed
+ * once, even though every listing sees the files of the previous ones, and the polling stops with the listing that
+ * follows the export completion.
+ */
+public class ExportPollingTest {
+
+    private static final String BUCKET = "test-bucket";
+    private static final String PREFIX = "polled/export";
+    private static final Long POLL_INTERVAL_IN_MILLIS = 10L;
+
+    private final Storage storage = LocalStorageHelper.getOptions().getService();
+
+    @Test(timeout = 30000)
+    public void processesTheFilesLandingBetweenThePolls() throws InterruptedException {
+        var polls = new AtomicInteger();
+        // a new file lands before each listing, the export completes right before the third file is listed
+        BooleanSupplier exportCompleted = () -> {
+            var poll = polls.incrementAndGet();
+            createFile(String.format("%s/%012d.json", PREFIX, poll), "{\"id\":" + poll + "}\n");
+            return poll == 3;
+        };
+
+        var processed = process(exportCompleted, 0L);
+
+        assertEquals(3, polls.get());
+        assertEquals(List.of(
+                "gs://test-bucket/polled/export/000000000001.json",
+                "gs://test-bucket/polled/export/000000000002.json",
+                "gs://test-bucket/polled/export/000000000003.json"),
+                processed.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test(timeout = 30000)
+    public void listsOnceWhenTheExportIsCompleted() throws InterruptedException {
+        createFile(PREFIX + "/000000000001.json", "{\"id\":1}\n");
+        createFile(PREFIX + "/000000000002.json.gz", "not really compressed");
+        var polls = new AtomicInteger();
+
+        // big files are split in ranges, the compressed ones can not be split
+        var processed = process(() -> polls.incrementAndGet() > 0, 4L);
+
+        assertEquals(1, polls.get());
+        assertEquals(List.of(
+                "gs://test-bucket/polled/export/000000000001.json#0-4",
+                "gs://test-bucket/polled/export/000000000001.json#4-8",
+                "gs://test-bucket/polled/export/000000000001.json#8-9",
+                "gs://test-bucket/polled/export/000000000002.json.gz"),
+                processed.stream().sorted().collect(Collectors.toList()));
+    }
+
+    private void createFile(String name, String content) {
+        storage.create(BlobInfo.newBuilder(BlobId.of(BUCKET, name)).build(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Polls the export location until the export completes, returning the location of the processed ranges.
+     */
+    private List<String> process(BooleanSupplier exportCompleted, Long splitSize) throws InterruptedException {
+        var processed = Collections.synchronizedList(new ArrayList<String>());
+        try ( var propagator = new DirectPropagator<List<String>>((location, entries)
+                -> new PropagationResult(location, "", entries.size(), Optional.empty(), true), () -> {
+                });
+                var prefetcher = new BlobPrefetcher(2, 2, 1024L)) {
+            Launcher.propagateExportResults(storage, BUCKET, PREFIX, AccumulationLimits.ofSize(1024L), propagator,
+                    new PropagationResultSink(10, result -> {
+                    }), CheckpointJournal.disabled(), prefetcher, exportCompleted, POLL_INTERVAL_IN_MILLIS, 2,
+                    splitSize, (limits, ignoredPropagator, sink, journal, range) -> {
+                        processed.add(range.getLocation());
+                        return 0L;
+                    });
+        }
+        return processed;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.bqexportpropagator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the payloads packed under a hard size limit never exceed it once the prefix, the record separators and the
+ * suffix are counted, whether the records are accumulated as strings or as bytes, and that a record that does not fit
+ * in a payload on its own is reported as failed and skipped, without holding back the other records.
+ */
+public class HardSizeLimitTest {
+
+    private static final String LOCATION = "gs://bucket/file.json";
+    /**
+     * The prefix, suffix and the separators of a payload with two 10 bytes records add up to 35 bytes.
+     */
+    private static final Long TWO_RECORDS_PAYLOAD_SIZE = 35L;
+    private static final List<String> RECORDS = List.of(
+            "{\"id\":\"1\"}", "{\"id\":\"2\"}", "{\"id\":\"3\"}", "{\"id\":\"4\"}", "{\"id\":\"5\"}");
+
+    private final Random random = new Random(20201017L);
+    private final List<PropagationResult> failures = Collections.synchronizedList(new ArrayList<>());
+    private final PropagationResultSink resultSink = new PropagationResultSink(10, result -> {
+        if (!result.success) {
+            failures.add(result);
+        }
+    });
+
+    @Test
+    public void fillsThePayloadsUpToTheLimit() {
+        var exactFit = hardLimit(TWO_RECORDS_PAYLOAD_SIZE);
+        var expected = List.of(
+                "{\"records\":[{\"id\":\"1\"},{\"id\":\"2\"}]}",
+                "{\"records\":[{\"id\":\"3\"},{\"id\":\"4\"}]}",
+                "{\"records\":[{\"id\":\"5\"}]}");
+        assertEquals(expected, accumulate(exactFit, RECORDS));
+        assertEquals(expected, accumulateBytes(exactFit, RECORDS));
+
+        // a byte less and the second record no longer fits
+        var oneByteShort = hardLimit(TWO_RECORDS_PAYLOAD_SIZE - 1);
+        assertEquals(5, accumulate(oneByteShort, RECORDS).size());
+        assertEquals(5, accumulateBytes(oneByteShort, RECORDS).size());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void neverExceedsTheLimit() {
+        // up to 75 bytes long, every record fits in the smallest payload on its own
+        var records = new ArrayList<String>();
+        for (var i = 0; i < 2000; i++) {
+            records.add(String.format("{\"id\":%d,\"name\":\"%s\"}", i, "ñ日😀".repeat(random.nextInt(7))));
+        }
+        for (var limit : List.of(100L, 128L, 333L, 1024L)) {
+            var limits = hardLimit(limit);
+            for (var payloads : List.of(accumulate(limits, records), accumulateBytes(limits, records))) {
+                payloads.forEach(payload -> assertTrue(
+                        payload, payload.getBytes(StandardCharsets.UTF_8).length <= limit));
+                // every record is propagated, in order
+                assertEquals(String.join(",", records), payloads.stream()
+                        .map(payload -> payload.substring(Functions.PAYLOAD_PREFIX.length,
+                        payload.length() - Functions.PAYLOAD_SUFFIX.length))
+                        .collect(Collectors.joining(",")));
+            }
+        }
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void skipsTheRecordsThatDoNotFitInAPayload() {
+        // a payload with a single 21 bytes record is 35 bytes long, a 22 bytes record does not fit
+        var records = List.of("{\"id\":\"1\"}", "{\"id\":\"2\",\"x\":\"1234\"}", "{\"id\":\"3\",\"x\":\"12345\"}",
+                "{\"id\":\"4\"}");
+        var limits = hardLimit(TWO_RECORDS_PAYLOAD_SIZE);
+        var expected = List.of(
+                "{\"records\":[{\"id\":\"1\"}]}",
+                "{\"records\":[{\"id\":\"2\",\"x\":\"1234\"}]}",
+                "{\"records\":[{\"id\":\"4\"}]}");
+
+        assertEquals(expected, accumulate(limits, records));
+        assertEquals(expected, accumulateBytes(limits, records));
+
+        // reported once by each accumulator
+        assertEquals(2, failures.size());
+        for (var failure : failures) {
+            assertFalse(failure.success);
+            assertEquals(LOCATION, failure.path);
+            assertEquals(22, (int) failure.payloadSize);
+            assertEquals(Optional.of("Record 2 of 22 bytes does not fit in a payload of 35 bytes, it was not "
+                    + "propagated."), failure.messageResult);
+        }
+    }
+
+    private static AccumulationLimits hardLimit(Long sizeLimit) {
+        return new AccumulationLimits(sizeLimit, 0, 0L, true);
+    }
+
+    private List<String> accumulate(AccumulationLimits limits, List<String> records) {
+        var payloads = new ArrayList<String>();
+        try ( var propagator = new DirectPropagator<List<String>>((location, entries) -> {
+            payloads.add("{\"records\":[" + String.join(",", entries) + "]}");
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var accumulator = new Accumulator(limits, LOCATION, propagator, resultSink);
+            records.forEach(accumulator::accumulate);
+            accumulator.complete();
+        }
+        return payloads;
+    }
+
+    private List<String> accumulateBytes(AccumulationLimits limits, List<String> records) {
+        var payloads = new ArrayList<String>();
+        try ( var propagator = new DirectPropagator<ByteBuffer>((location, payload) -> {
+            payloads.add(StandardCharsets.UTF_8.decode(payload).toString());
+            return new PropagationResult(location, "", payload.remaining(), Optional.empty(), true);
+        }, () -> {
+        })) {
+            var accumulator = new ByteAccumulator(limits, LOCATION, propagator, resultSink,
+                    new RecordBufferPool(16, 2), Functions.PAYLOAD_PREFIX, Functions.PAYLOAD_RECORD_SEPARATOR,
+                    Functions.PAYLOAD_SUFFIX, SourceCheckpoint.untracked());
+            var content = (String.join("\n", records) + "\n").getBytes(StandardCharsets.UTF_8);
+            Functions.splitRecords(ByteBuffer.wrap(content), accumulator);
+            accumulator.complete();
+        }
+        return payloads;
+    }
+}
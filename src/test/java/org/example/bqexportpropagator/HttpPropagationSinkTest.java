@@ -0,0 +1,109 @@
+package org.example.bqexportpropagator;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the HTTP sink reports the size of the serialized payload, before the compression, for both the entries and
+ * the already assembled payloads, and that the configured headers replace the default ones.
+ */
+public class HttpPropagationSinkTest {
+
+    private static final List<String> ENTRIES = List.of("{\"name\":\"Zoë\"}", "{\"name\":\"日本語\"}", "{\"id\":1}");
+
+    private HttpServer server;
+    private final AtomicInteger receivedSize = new AtomicInteger();
+    private final AtomicReference<List<String>> receivedContentTypes = new AtomicReference<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            receivedContentTypes.set(exchange.getRequestHeaders().get("Content-Type"));
+            var compressed = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            try ( var body = compressed ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+                receivedSize.set(body.readAllBytes().length);
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void reportsTheSerializedPayloadSize() throws IOException {
+        assertReportedSizes(false);
+    }
+
+    @Test
+    public void reportsTheUncompressedPayloadSize() throws IOException {
+        assertReportedSizes(true);
+    }
+
+    @Test
+    public void replacesTheDefaultHeaders() {
+        var sink = new HttpPropagationSink(URI.create("http://localhost:" + server.getAddress().getPort() + "/"),
+                Map.of("content-type", "application/x-ndjson"), false, Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        assertTrue(sink.propagateEntries("gs://bucket/file.json", ENTRIES).success);
+        assertEquals(List.of("application/x-ndjson"), receivedContentTypes.get());
+    }
+
+    @Test
+    public void rejectsTheRestrictedHeaders() {
+        for (var name : List.of("Host", "Connection", "Content-Length")) {
+            try {
+                HttpPropagationSink.validateHeaders(Map.of(name, "value"));
+                fail("accepted the header " + name);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage().contains(name));
+            }
+        }
+        HttpPropagationSink.validateHeaders(Map.of("Authorization", "Bearer token", "Content-Type", "text/plain"));
+    }
+
+    private void assertReportedSizes(Boolean gzipPayload) throws IOException {
+        var sink = new HttpPropagationSink(URI.create("http://localhost:" + server.getAddress().getPort() + "/"),
+                Map.of(), gzipPayload, Duration.ofSeconds(5), Duration.ofSeconds(5));
+        var serialized = new ByteArrayOutputStream();
+        try ( var writer = new OutputStreamWriter(serialized, StandardCharsets.UTF_8)) {
+            Functions.writePayload(ENTRIES, writer);
+        }
+        var expectedSize = serialized.size();
+
+        var entriesResult = sink.propagateEntries("gs://bucket/file.json", ENTRIES);
+        assertTrue(entriesResult.success);
+        assertEquals(expectedSize, receivedSize.get());
+        assertEquals(expectedSize, (int) entriesResult.payloadSize);
+
+        var payloadResult = sink.propagatePayload("gs://bucket/file.json", ByteBuffer.wrap(serialized.toByteArray()));
+        assertTrue(payloadResult.success);
+        assertEquals(expectedSize, receivedSize.get());
+        assertEquals(expectedSize, (int) payloadResult.payloadSize);
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the partitions keep the order of the records of each key, and that the readers fail instead of waiting
+ * forever when a partition worker is no longer running.
+ */
+public class KeyPartitionerTest {
+
+    @Test(timeout = 10000)
+    public void keepsTheOrderOfEachKey() {
+        var propagated = Collections.synchronizedList(new ArrayList<String>());
+        var propagator = new DirectPropagator<List<String>>((location, entries) -> {
+            propagated.addAll(entries);
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        });
+        var records = new ArrayList<String>();
+        for (var i = 0; i < 500; i++) {
+            records.add(String.format("{\"key\":\"k%d\",\"seq\":%d}", i % 7, i));
+        }
+        try ( var partitioner = new KeyPartitioner("key", 3, 4, AccumulationLimits.ofSize(64L), propagator,
+                new PropagationResultSink(10, result -> {
+                }))) {
+            records.forEach(partitioner::route);
+        }
+
+        assertEquals(records.size(), propagated.size());
+        for (var key = 0; key < 7; key++) {
+            var keyRecord = String.format("\"k%d\"", key);
+            assertEquals(records.stream().filter(record -> record.contains(keyRecord)).collect(Collectors.toList()),
+                    propagated.stream().filter(record -> record.contains(keyRecord)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void failsTheReadersOfAStoppedPartition() {
+        var propagator = new DirectPropagator<List<String>>((location, entries) -> {
+            // not caught by the partition worker, which stops
+            throw new AssertionError("propagation crashed");
+        }, () -> {
+        });
+        try ( var partitioner = new KeyPartitioner("key", 1, 2, AccumulationLimits.ofSize(1L), propagator,
+                new PropagationResultSink(10, result -> {
+                }))) {
+            for (var i = 0; i < 100; i++) {
+                partitioner.route(String.format("{\"key\":\"k\",\"seq\":%d}", i));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Checks the pipelined propagator blocks the readers once its queue is full, fails only the futures of the batches
+ * whose propagation failed, and propagates every queued batch before closing.
+ */
+public class PipelinedPropagatorTest {
+
+    private static final Long WAIT_MILLIS = 200L;
+
+    @Test(timeout = 10000)
+    public void blocksTheReadersWhileTheQueueIsFull() throws Exception {
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var propagated = Collections.synchronizedList(new ArrayList<String>());
+        var propagator = new PipelinedPropagator<String>((location, batch) -> {
+            started.countDown();
+            await(release);
+            propagated.add(batch);
+            return new PropagationResult(location, "", batch.length(), Optional.empty(), true);
+        }, () -> {
+        }, 2, 1);
+        try {
+            var results = new ArrayList<CompletableFuture<PropagationResult>>();
+            // the worker takes the first batch and blocks, the next two fill the queue
+            results.add(propagator.propagate("gs://bucket/file.json", "batch-0", 7L));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            results.add(propagator.propagate("gs://bucket/file.json", "batch-1", 7L));
+            results.add(propagator.propagate("gs://bucket/file.json", "batch-2", 7L));
+            assertEquals(2, (int) propagator.getPendingCount());
+
+            var reader = CompletableFuture.supplyAsync(
+                    () -> propagator.propagate("gs://bucket/file.json", "batch-3", 7L));
+            try {
+                reader.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                fail("the reader was not blocked by the full queue");
+            } catch (TimeoutException ex) {
+                // the queue is full, as expected
+            }
+
+            release.countDown();
+            results.add(reader.get(5, TimeUnit.SECONDS));
+            for (var result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).success);
+            }
+            assertEquals(List.of("batch-0", "batch-1", "batch-2", "batch-3"), propagated);
+        } finally {
+            release.countDown();
+            propagator.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failsOnlyTheFailedBatches() {
+        try ( var propagator = new PipelinedPropagator<String>((location, batch) -> {
+            if (batch.contains("bad")) {
+                throw new IllegalStateException("propagation crashed");
+            }
+            return new PropagationResult(location, "", batch.length(), Optional.empty(), true);
+        }, () -> {
+        }, 4, 2)) {
+            var failed = propagator.propagate("gs://bucket/file.json", "bad-batch", 9L);
+            var succeeded = propagator.propagate("gs://bucket/file.json", "batch", 5L);
+
+            try {
+                failed.join();
+                fail("the failed propagation completed normally");
+            } catch (CompletionException ex) {
+                assertEquals("propagation crashed", ex.getCause().getMessage());
+            }
+            // the worker survives the failure
+            assertTrue(succeeded.join().success);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void propagatesTheQueuedBatchesBeforeClosing() {
+        var results = new ArrayList<CompletableFuture<PropagationResult>>();
+        try ( var propagator = new PipelinedPropagator<String>((location, batch) -> {
+            sleep(10L);
+            return new PropagationResult(location, "", batch.length(), Optional.empty(), true);
+        }, () -> {
+        }, 8, 2)) {
+            for (var i = 0; i < 20; i++) {
+                results.add(propagator.propagate("gs://bucket/file.json", "batch-" + i, 7L));
+            }
+        }
+        results.forEach(result -> {
+            assertTrue(result.isDone());
+            assertFalse(result.isCompletedExceptionally());
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(Long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
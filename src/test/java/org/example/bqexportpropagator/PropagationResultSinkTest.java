@@ -0,0 +1,80 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the result sink keeps only the last failures, up to its failure log size, while the success, failure and byte
+ * counts, and the results handed to its listener, stay exact, also when the results arrive from many threads.
+ */
+public class PropagationResultSinkTest {
+
+    private static final Integer FAILURE_LOG_SIZE = 5;
+
+    @Test
+    public void keepsTheLastFailures() {
+        var sink = new PropagationResultSink(FAILURE_LOG_SIZE, result -> {
+        });
+
+        for (var i = 0; i < 100; i++) {
+            sink.accept(i % 4 == 0 ? failure(i) : success(i));
+        }
+
+        assertEquals(75L, (long) sink.getSuccessCount());
+        assertEquals(25L, (long) sink.getFailureCount());
+        assertEquals(IntStream.range(0, 100).filter(i -> i % 4 != 0).sum(), (long) sink.getPropagatedBytes());
+        // the failure log holds the last 5 failures, in the order they were received
+        assertEquals(List.of("file-80", "file-84", "file-88", "file-92", "file-96"),
+                sink.getFailureLog().stream().map(result -> result.path).collect(Collectors.toList()));
+    }
+
+    @Test(timeout = 30000)
+    public void countsTheResultsOfAllTheWorkers() throws Exception {
+        var listened = new LongAdder();
+        var sink = new PropagationResultSink(FAILURE_LOG_SIZE, result -> listened.increment());
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var workers = new ArrayList<Future<?>>();
+            for (var worker = 0; worker < 8; worker++) {
+                workers.add(executor.submit(() -> {
+                    for (var i = 0; i < 10_000; i++) {
+                        sink.accept(i % 10 == 0 ? failure(i) : success(3));
+                        // the log is read while the workers report, as the progress reporting does
+                        if (i % 1000 == 0) {
+                            assertTrue(sink.getFailureLog().size() <= FAILURE_LOG_SIZE);
+                        }
+                    }
+                }));
+            }
+            for (var worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(72_000L, (long) sink.getSuccessCount());
+        assertEquals(8_000L, (long) sink.getFailureCount());
+        assertEquals(3L * 72_000, (long) sink.getPropagatedBytes());
+        assertEquals(80_000L, listened.sum());
+        assertEquals(FAILURE_LOG_SIZE, (Integer) sink.getFailureLog().size());
+    }
+
+    private static PropagationResult success(Integer size) {
+        return new PropagationResult("file-" + size, "", size, Optional.empty(), true);
+    }
+
+    private static PropagationResult failure(Integer index) {
+        return PropagationResult.failed("file-" + index, 1000L, Optional.of("failed"));
+    }
+}
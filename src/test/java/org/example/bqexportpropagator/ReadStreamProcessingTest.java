@@ -0,0 +1,173 @@
+package org.example.bqexportpropagator;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.bigquery.storage.v1.AvroRows;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadGrpc;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadSettings;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.EncoderFactory;
+import org.example.bqexportpropagator.Model.*;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the Avro row blocks served by a fake in process BigQuery Storage Read API are decoded into the expected JSON
+ * entries, with the NUMERIC, TIMESTAMP and DATE columns in the format of the JSON exports, while the decoder and record
+ * instances are reused across the rows and blocks of the stream.
+ */
+public class ReadStreamProcessingTest {
+
+    private static final String STREAM_NAME = "projects/p/locations/us/sessions/s/streams/0";
+    private static final Integer ROWS_PER_BLOCK = 100;
+    private static final Integer BLOCK_COUNT = 7;
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Row\","
+            + "\"fields\":[{\"name\":\"id\",\"type\":\"long\"},"
+            + "{\"name\":\"name\",\"type\":[\"null\",\"string\"]},"
+            + "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},"
+            + "{\"name\":\"address\",\"type\":[\"null\",{\"type\":\"record\",\"name\":\"Address\","
+            + "\"fields\":[{\"name\":\"city\",\"type\":\"string\"}]}]},"
+            + "{\"name\":\"amount\",\"type\":[\"null\",{\"type\":\"bytes\",\"logicalType\":\"decimal\","
+            + "\"precision\":38,\"scale\":9}]},"
+            + "{\"name\":\"updated_at\",\"type\":[\"null\",{\"type\":\"long\","
+            + "\"logicalType\":\"timestamp-micros\"}]},"
+            + "{\"name\":\"day\",\"type\":{\"type\":\"int\",\"logicalType\":\"date\"}}]}");
+
+    private final List<ReadRowsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private List<GenericRecord> rows;
+    private Server server;
+    private ManagedChannel channel;
+    private BigQueryReadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        rows = generateRows();
+        var blocks = encodeBlocks(rows);
+        var serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .directExecutor()
+                .addService(new BigQueryReadGrpc.BigQueryReadImplBase() {
+                    @Override
+                    public void readRows(ReadRowsRequest request, StreamObserver<ReadRowsResponse> observer) {
+                        requests.add(request);
+                        blocks.forEach(block -> observer.onNext(ReadRowsResponse.newBuilder()
+                                .setRowCount(ROWS_PER_BLOCK)
+                                .setAvroRows(AvroRows.newBuilder().setSerializedBinaryRows(block))
+                                .build()));
+                        observer.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+        client = BigQueryReadClient.create(BigQueryReadSettings.newBuilder()
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .setTransportChannelProvider(FixedTransportChannelProvider.create(
+                        GrpcTransportChannel.create(channel)))
+                .build());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        client.close();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void decodesTheRowBlocksOfTheStream() {
+        var propagatedEntries = Collections.synchronizedList(new ArrayList<String>());
+        Propagator<List<String>> propagator = new DirectPropagator<>((location, entries) -> {
+            propagatedEntries.addAll(entries);
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        });
+        var resultSink = new PropagationResultSink(10, result -> {
+        });
+
+        var propagationCount = Functions.processReadStream(AccumulationLimits.ofSize(8 * 1024L),
+                RecordTransformer.identity(), propagator, resultSink, client, SCHEMA, STREAM_NAME);
+
+        assertEquals(1, requests.size());
+        assertEquals(STREAM_NAME, requests.get(0).getReadStream());
+        assertEquals(propagationCount, resultSink.getSuccessCount());
+        assertEquals(0L, (long) resultSink.getFailureCount());
+        assertEquals((long) rows.size(), (long) resultSink.getMetrics().getRecordsRead());
+        assertEquals("{\"id\":\"1\",\"name\":null,\"tags\":[\"tag1\"],\"address\":{\"city\":\"city 1\"},"
+                + "\"amount\":\"-1.5\",\"updated_at\":\"1970-01-01 00:00:01 UTC\",\"day\":\"1970-01-02\"}",
+                propagatedEntries.get(1));
+        var expectedEntries = new ArrayList<String>();
+        rows.forEach(row -> expectedEntries.add(Functions.toJson(row)));
+        // a reused record leaking a previous value (a name, a tag, an address or a decimal) would break the equality
+        assertEquals(expectedEntries, propagatedEntries);
+    }
+
+    /**
+     * Generates rows alternating null and non null values, and arrays of different lengths, so the reused record
+     * instance is overwritten with values of a different shape on every row.
+     */
+    private static List<GenericRecord> generateRows() {
+        var addressSchema = SCHEMA.getField("address").schema().getTypes().get(1);
+        var rows = new ArrayList<GenericRecord>();
+        for (var i = 0; i < ROWS_PER_BLOCK * BLOCK_COUNT; i++) {
+            var tags = new ArrayList<String>();
+            for (var t = 0; t < i % 4; t++) {
+                tags.add("tag" + (i + t));
+            }
+            rows.add(new GenericRecordBuilder(SCHEMA)
+                    .set("id", (long) i)
+                    .set("name", i % 2 == 0 ? "name " + i : null)
+                    .set("tags", tags)
+                    .set("address", i % 3 == 0 ? null
+                            : new GenericRecordBuilder(addressSchema).set("city", "city " + i).build())
+                    .set("amount", i % 2 == 0 ? null : ByteBuffer.wrap(
+                            BigDecimal.valueOf(-i * 15L, 1).setScale(9).unscaledValue().toByteArray()))
+                    .set("updated_at", i % 5 == 0 ? null : i * 1_000_000L)
+                    .set("day", i)
+                    .build());
+        }
+        return rows;
+    }
+
+    /**
+     * Encodes the rows in blocks of binary Avro rows without any container header, as the read API serves them.
+     */
+    private static List<ByteString> encodeBlocks(List<GenericRecord> rows) throws IOException {
+        var writer = new GenericDatumWriter<GenericRecord>(SCHEMA);
+        var blocks = new ArrayList<ByteString>();
+        for (var start = 0; start < rows.size(); start += ROWS_PER_BLOCK) {
+            var block = new ByteArrayOutputStream();
+            var encoder = EncoderFactory.get().binaryEncoder(block, null);
+            for (var row : rows.subList(start, start + ROWS_PER_BLOCK)) {
+                writer.write(row, encoder);
+            }
+            encoder.flush();
+            blocks.add(ByteString.copyFrom(block.toByteArray()));
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the ranges a delimited file is split in hold each record exactly once: a range skips the partial record it
+ * starts in, and completes its last record past the range end.
+ */
+public class RecordRangeChannelTest {
+
+    private static final byte DELIMITER = '\n';
+    private final Random random = new Random(20201017L);
+
+    @Test
+    public void reassemblesCorporaSplitAtRandomSizes() throws IOException {
+        for (var iteration = 0; iteration < 300; iteration++) {
+            var lineEnd = random.nextBoolean() ? "\n" : "\r\n";
+            var content = generateCorpus(1 + random.nextInt(60), 1 + random.nextInt(200), lineEnd,
+                    random.nextBoolean());
+            var splitSize = 1L + random.nextInt(300);
+            var bufferSize = 1 + random.nextInt(64);
+
+            var reassembled = new ByteArrayOutputStream();
+            for (var start = 0L; start < content.length; start += splitSize) {
+                var end = Math.min(start + splitSize, content.length);
+                var rangeContent = readRange(content, start, end, bufferSize);
+                var offset = reassembled.size();
+                if (rangeContent.length > 0) {
+                    // every range starts at a record boundary, at or after its start
+                    assertTrue(offset >= start);
+                    assertTrue(offset == 0 || content[offset - 1] == DELIMITER);
+                }
+                reassembled.write(rangeContent);
+            }
+            assertArrayEquals(String.format("split size %d, line end %s", splitSize, lineEnd.length()),
+                    content, reassembled.toByteArray());
+        }
+    }
+
+    @Test
+    public void holdsRecordsLargerThanTheRange() throws IOException {
+        var content = "{\"a\":\"0123456789\"}\n{}\n{\"b\":\"0123456789012345678901234567890\"}\n{}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals("{\"a\":\"0123456789\"}\n".getBytes(StandardCharsets.UTF_8),
+                readRange(content, 0L, 5L, 4));
+        assertEquals(0, readRange(content, 5L, 10L, 4).length);
+        // a record starting right at the range end belongs to the next range
+        assertArrayEquals("{}\n".getBytes(StandardCharsets.UTF_8), readRange(content, 19L, 22L, 4));
+        assertArrayEquals("{\"b\":\"0123456789012345678901234567890\"}\n".getBytes(StandardCharsets.UTF_8),
+                readRange(content, 22L, 25L, 4));
+        assertEquals(0, readRange(content, 25L, 60L, 4).length);
+        assertArrayEquals("{}".getBytes(StandardCharsets.UTF_8), readRange(content, 60L, content.length, 4));
+    }
+
+    @Test
+    public void propagatesEachRecordOfTheSplitFileOnce() throws IOException {
+        var storage = LocalStorageHelper.getOptions().getService();
+        var records = new ArrayList<String>();
+        for (var i = 0; i < 500; i++) {
+            records.add(String.format("{\"id\":%d,\"name\":\"%s\"}", i, "ñandú €".repeat(random.nextInt(30))));
+        }
+        storage.create(BlobInfo.newBuilder("test-bucket", "export/000000000000.json").build(),
+                (String.join("\r\n", records) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        var blob = storage.get(BlobId.of("test-bucket", "export/000000000000.json"));
+        var propagatedEntries = Collections.synchronizedList(new ArrayList<String>());
+        Propagator<List<String>> propagator = new DirectPropagator<>((location, entries) -> {
+            propagatedEntries.addAll(entries);
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        });
+        var resultSink = new PropagationResultSink(10, result -> {
+        });
+
+        for (var range : BlobRange.split(blob, 997L)) {
+            Functions.processGCSBlob(AccumulationLimits.ofSize(4096L), RecordTransformer.identity(), propagator,
+                    resultSink, CheckpointJournal.disabled(), range);
+        }
+
+        // the non ASCII records are decoded as UTF-8 whatever the platform charset
+        assertEquals(records, propagatedEntries);
+    }
+
+    /**
+     * Reads a range the way the blob processors do, from the byte before the range start, with reads of random sizes.
+     */
+    private byte[] readRange(byte[] content, Long start, long end, Integer bufferSize) throws IOException {
+        var readStart = (int) Math.max(start - 1, 0L);
+        var source = Channels.newChannel(new ByteArrayInputStream(content, readStart, content.length - readStart));
+        var output = new ByteArrayOutputStream();
+        try ( var channel = new RecordRangeChannel(source, start, end, DELIMITER, bufferSize)) {
+            var destination = ByteBuffer.allocate(1 + random.nextInt(32));
+            while (channel.read(destination.clear().limit(1 + random.nextInt(destination.capacity()))) >= 0) {
+                output.write(destination.array(), 0, destination.position());
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Generates records of random sizes, including empty ones and ones bigger than most of the split sizes.
+     */
+    private byte[] generateCorpus(Integer recordCount, Integer maxRecordSize, String lineEnd, Boolean trailingLineEnd) {
+        var corpus = new StringBuilder();
+        for (var i = 0; i < recordCount; i++) {
+            if (i > 0) {
+                corpus.append(lineEnd);
+            }
+            corpus.append("{\"id\":").append(i).append(",\"v\":\"");
+            var size = random.nextInt(maxRecordSize);
+            for (var c = 0; c < size; c++) {
+                corpus.append((char) ('a' + random.nextInt(26)));
+            }
+            corpus.append("\"}");
+        }
+        if (trailingLineEnd) {
+            corpus.append(lineEnd);
+        }
+        return corpus.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
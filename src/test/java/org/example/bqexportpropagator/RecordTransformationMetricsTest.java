@@ -0,0 +1,67 @@
+package org.example.bqexportpropagator;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the records are counted as read before the transformation, and as kept or dropped by it, and that the
+ * records the transformation can not parse are dropped and reported as failures instead of being propagated.
+ */
+public class RecordTransformationMetricsTest {
+
+    private static final List<String> RECORDS = List.of(
+            "{\"id\":1,\"status\":\"active\",\"name\":\"Zoë\"}",
+            "{\"id\":2,\"status\":\"deleted\",\"name\":\"日本語\"}",
+            "not a json record",
+            "{\"id\":3,\"status\":",
+            "{\"id\":4,\"status\":\"active\",\"name\":\"😀\"}");
+
+    @Test
+    public void countsTheRecordsReadKeptAndDropped() {
+        var storage = LocalStorageHelper.getOptions().getService();
+        var content = String.join("\n", RECORDS) + "\n";
+        storage.create(BlobInfo.newBuilder("test-bucket", "export/000000000000.json").build(),
+                content.getBytes(StandardCharsets.UTF_8));
+        var blob = storage.get(BlobId.of("test-bucket", "export/000000000000.json"));
+        var propagatedEntries = Collections.synchronizedList(new ArrayList<String>());
+        Propagator<List<String>> propagator = new DirectPropagator<>((location, entries) -> {
+            propagatedEntries.addAll(entries);
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }, () -> {
+        });
+        var resultSink = new PropagationResultSink(10, result -> {
+        });
+
+        for (var range : BlobRange.split(blob, 1024L)) {
+            Functions.processGCSBlob(AccumulationLimits.ofSize(4096L),
+                    RecordTransformer.compile(List.of("id"), List.of("status=active")), propagator, resultSink,
+                    CheckpointJournal.disabled(), range);
+        }
+
+        assertEquals(List.of("{\"id\":1}", "{\"id\":4}"), propagatedEntries);
+        var metrics = resultSink.getMetrics();
+        assertEquals(RECORDS.size(), (long) metrics.getRecordsRead());
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length - RECORDS.size(), (long) metrics.getBytesRead());
+        assertEquals(2L, (long) metrics.getRecordsKept());
+        assertEquals(3L, (long) metrics.getRecordsDropped());
+        // the records that are not JSON objects or can not be parsed are the only failures
+        assertEquals(2L, (long) resultSink.getFailureCount());
+    }
+
+    @Test
+    public void measuresTheEncodedLength() {
+        for (var value : List.of("", "plain", "Zoë ñandú €", "日本語", "😀 emoji", "lone \uD800 surrogate",
+                "trailing \uDBFF")) {
+            assertEquals(value, value.getBytes(StandardCharsets.UTF_8).length, (int) Functions.utf8Length(value));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks every propagation attempt is reported once to the throttler, with its own latency and without the backoff
+ * waits, whether the retried function runs in the caller thread or in the asynchronous propagator pool.
+ */
+public class RetryingPropagationTest {
+
+    private static final Long ATTEMPT_MILLIS = 20L;
+    private static final Long BACKOFF_MILLIS = 500L;
+
+    @Test
+    public void reportsEveryAttemptOfTheDirectPropagation() {
+        var throttler = new RecordingThrottler();
+        try ( var propagator = new DirectPropagator<>(retrying(2, throttler), throttler)) {
+            assertTrue(propagator.propagate("gs://bucket/file.json", "batch", 10L).join().success);
+        }
+        assertAttemptsReported(throttler, 3);
+    }
+
+    @Test
+    public void reportsEveryAttemptOfTheAsyncPropagation() {
+        var throttler = new RecordingThrottler();
+        try ( var propagator = AsyncPropagator.ofBlocking(retrying(2, throttler), throttler, 2)) {
+            assertTrue(propagator.propagate("gs://bucket/file.json", "batch", 10L).join().success);
+        }
+        assertAttemptsReported(throttler, 3);
+    }
+
+    @Test
+    public void reportsTheLastFailedAttempt() {
+        var throttler = new RecordingThrottler();
+        var deadLettered = new AtomicInteger();
+        var propagation = new RetryingPropagation<String>(failing(Integer.MAX_VALUE), throttler,
+                new RetryBudget(0.2D, 100), 1, 1L, 1L, (location, batch) -> deadLettered.incrementAndGet() > 0,
+                new PropagationMetrics());
+        try ( var propagator = new DirectPropagator<>(propagation, throttler)) {
+            assertFalse(propagator.propagate("gs://bucket/file.json", "batch", 10L).join().success);
+        }
+        assertEquals(1, deadLettered.get());
+        assertEquals(List.of(false, false), throttler.outcomes);
+    }
+
+    private static RetryingPropagation<String> retrying(Integer failures, Throttler throttler) {
+        return new RetryingPropagation<>(failing(failures), throttler, new RetryBudget(0.2D, 100), failures,
+                BACKOFF_MILLIS, BACKOFF_MILLIS, (location, batch) -> false, new PropagationMetrics());
+    }
+
+    private static BiFunction<String, String, PropagationResult> failing(Integer failures) {
+        var attempts = new AtomicInteger();
+        return (location, batch) -> {
+            try {
+                Thread.sleep(ATTEMPT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new PropagationResult(location, "", batch.length(), Optional.empty(),
+                    attempts.incrementAndGet() > failures);
+        };
+    }
+
+    private static void assertAttemptsReported(RecordingThrottler throttler, Integer attempts) {
+        assertEquals(attempts.intValue(), throttler.latencies.size());
+        assertEquals(true, throttler.outcomes.get(attempts - 1));
+        // a latency including a backoff wait would exceed the bound most of the time, the jitter may make it short
+        throttler.latencies.forEach(latency -> assertTrue("attempt latency " + latency,
+                latency >= ATTEMPT_MILLIS && latency < ATTEMPT_MILLIS + BACKOFF_MILLIS / 2));
+    }
+
+    private static class RecordingThrottler implements Throttler {
+
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        final List<Boolean> outcomes = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void throttle() {
+        }
+
+        @Override
+        public void report(PropagationResult result, Long latencyInMillis) {
+            latencies.add(latencyInMillis);
+            outcomes.add(result.success);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.bqexportpropagator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks the waits the throttlers impose, on a fake clock the sleeps advance, so the rates are checked exactly and
+ * without waiting: the token bucket refill, burst capacity and byte weighted cost, and the adaptive rate increase,
+ * decrease and clamps.
+ */
+public class ThrottlerTest {
+
+    private static final Long TARGET_LATENCY_MILLIS = 100L;
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void allowsABurstThenWaitsForTheRefill() {
+        var throttler = new TokenBucketThrottler(10D, 0L, 1D, clock::nanos, clock::sleep);
+
+        // the bucket starts full, 10 requests fit in one second of burst
+        for (var i = 0; i < 10; i++) {
+            throttler.throttle();
+        }
+        assertEquals(List.of(), clock.sleptMillis);
+
+        throttler.throttle();
+        assertEquals(List.of(100L), clock.sleptMillis);
+    }
+
+    @Test
+    public void refillsAtTheConfiguredRate() {
+        var throttler = new TokenBucketThrottler(10D, 0L, 1D, clock::nanos, clock::sleep);
+        for (var i = 0; i < 10; i++) {
+            throttler.throttle();
+        }
+
+        // half a second refills 5 requests
+        clock.advance(500L);
+        for (var i = 0; i < 5; i++) {
+            throttler.throttle();
+        }
+        assertEquals(List.of(), clock.sleptMillis);
+        throttler.throttle();
+        assertEquals(List.of(100L), clock.sleptMillis);
+
+        // an idle period does not fill the bucket over its burst capacity
+        clock.advance(60_000L);
+        for (var i = 0; i < 10; i++) {
+            throttler.throttle();
+        }
+        throttler.throttle();
+        assertEquals(List.of(100L, 100L), clock.sleptMillis);
+    }
+
+    @Test
+    public void weighsThePayloadBytes() {
+        var throttler = new TokenBucketThrottler(0D, 1000L, 1D, clock::nanos, clock::sleep);
+
+        throttler.throttle(600L);
+        assertEquals(List.of(), clock.sleptMillis);
+        // 200 bytes of debt at 1000 bytes per second
+        throttler.throttle(600L);
+        assertEquals(List.of(200L), clock.sleptMillis);
+        // a payload bigger than the burst capacity is allowed, paying back its debt
+        throttler.throttle(3000L);
+        assertEquals(List.of(200L, 3000L), clock.sleptMillis);
+        // the requests rate is disabled, the empty payloads are never throttled
+        for (var i = 0; i < 100; i++) {
+            throttler.throttle();
+        }
+        assertEquals(List.of(200L, 3000L), clock.sleptMillis);
+    }
+
+    @Test
+    public void waitsForTheBucketWithTheBiggerDebt() {
+        var throttler = new TokenBucketThrottler(2D, 1000L, 1D, clock::nanos, clock::sleep);
+
+        throttler.throttle(100L);
+        throttler.throttle(100L);
+        // the requests bucket owes half a second, the bytes one does not owe anything
+        throttler.throttle(100L);
+        // once refilled for half a second, the bytes bucket owes 0.8 seconds and the requests one half a second
+        throttler.throttle(1800L);
+        assertEquals(List.of(500L, 800L), clock.sleptMillis);
+    }
+
+    @Test
+    public void increasesTheRateAdditivelyUpToTheCeiling() {
+        var throttler = adaptiveThrottler(10D);
+        assertEquals(100L, (long) interval(throttler));
+
+        // half a request per second more on each success
+        reportSuccesses(throttler, 20);
+        assertEquals(50L, (long) interval(throttler));
+
+        reportSuccesses(throttler, 100);
+        // capped at 40 requests per second
+        assertEquals(25L, (long) interval(throttler));
+    }
+
+    @Test
+    public void decreasesTheRateMultiplicativelyDownToTheFloor() {
+        var throttler = adaptiveThrottler(10D);
+
+        throttler.report(PropagationResult.failed("gs://bucket/file.json", 0L, Optional.empty()), 10L);
+        assertEquals(200L, (long) interval(throttler));
+        // a slow success slows down too, once the previous decrease is a target latency old
+        clock.advance(TARGET_LATENCY_MILLIS);
+        throttler.report(success(), TARGET_LATENCY_MILLIS + 1);
+        assertEquals(400L, (long) interval(throttler));
+
+        for (var i = 0; i < 10; i++) {
+            clock.advance(TARGET_LATENCY_MILLIS);
+            throttler.report(success(), TARGET_LATENCY_MILLIS * 10);
+        }
+        // floored at 2 requests per second
+        assertEquals(500L, (long) interval(throttler));
+    }
+
+    @Test
+    public void decreasesOnceForTheReportsOfTheSameSlowdown() {
+        var throttler = adaptiveThrottler(10D);
+
+        // the parallel workers report the same slowdown at about the same time
+        for (var i = 0; i < 5; i++) {
+            throttler.report(PropagationResult.failed("gs://bucket/file.json", 0L, Optional.empty()), 10L);
+        }
+        assertEquals(200L, (long) interval(throttler));
+    }
+
+    @Test
+    public void clampsTheInitialRate() {
+        assertEquals(25L, (long) interval(adaptiveThrottler(100D)));
+        assertEquals(500L, (long) interval(adaptiveThrottler(0.5D)));
+    }
+
+    private AdaptiveThrottler adaptiveThrottler(Double initialRate) {
+        return new AdaptiveThrottler(initialRate, 2D, 40D, 0.5D, 0.5D, TARGET_LATENCY_MILLIS, clock::nanos,
+                clock::sleep);
+    }
+
+    private static void reportSuccesses(Throttler throttler, Integer count) {
+        for (var i = 0; i < count; i++) {
+            throttler.report(success(), TARGET_LATENCY_MILLIS);
+        }
+    }
+
+    private static PropagationResult success() {
+        return new PropagationResult("gs://bucket/file.json", "", 10, Optional.empty(), true);
+    }
+
+    /**
+     * Measures the wait between two requests at the current rate, once the previous reservations are in the past.
+     */
+    private Long interval(Throttler throttler) {
+        clock.advance(60_000L);
+        throttler.throttle();
+        throttler.throttle();
+        return clock.sleptMillis.remove(clock.sleptMillis.size() - 1);
+    }
+
+    /**
+     * A monotonic clock moved forward by the sleeps, recording them.
+     */
+    static class FakeClock {
+
+        private long nanos = 1_000_000_000L;
+        final List<Long> sleptMillis = new ArrayList<>();
+
+        long nanos() {
+            return nanos;
+        }
+
+        void sleep(long nanosToSleep) {
+            if (nanosToSleep > 0) {
+                sleptMillis.add(Math.round(nanosToSleep / 1e6D));
+                nanos += nanosToSleep;
+            }
+        }
+
+        void advance(Long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.bqexportpropagator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.example.bqexportpropagator.Model.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the invalid batches are not propagated and are reported as failures with the size of their payload, the same
+ * way for the entries and the assembled payloads.
+ */
+public class ValidatingPropagationTest {
+
+    private static final List<String> INVALID_ENTRIES = List.of("{\"name\":\"Zoë\"}", "{\"id\":", "{\"name\":\"日本語\"}");
+
+    @Test
+    public void reportsThePayloadSizeOfTheInvalidEntries() throws IOException {
+        var propagations = new AtomicInteger();
+        var result = Functions.validatingEntries((location, entries) -> {
+            propagations.incrementAndGet();
+            return new PropagationResult(location, "", entries.size(), Optional.empty(), true);
+        }).apply("gs://bucket/file.json", INVALID_ENTRIES);
+
+        assertFalse(result.success);
+        assertEquals(0, propagations.get());
+        assertEquals((long) serializedSize(INVALID_ENTRIES), (long) result.payloadSize);
+        assertTrue(result.messageResult.get().contains("position 1"));
+    }
+
+    @Test
+    public void reportsThePayloadSizeOfAnInvalidPayload() throws IOException {
+        var payload = ByteBuffer.wrap(serialize(INVALID_ENTRIES).getBytes(StandardCharsets.UTF_8));
+        var result = Functions.validatingPayload((location, buffer) -> {
+            throw new AssertionError("an invalid payload was propagated");
+        }).apply("gs://bucket/file.json", payload);
+
+        assertFalse(result.success);
+        assertEquals((long) serializedSize(INVALID_ENTRIES), (long) result.payloadSize);
+    }
+
+    @Test
+    public void computesThePayloadSizeWithoutWritingIt() throws IOException {
+        for (var entries : List.of(List.<String>of(), List.of("{}"), INVALID_ENTRIES)) {
+            assertEquals((long) serializedSize(entries), (long) Functions.payloadSize(entries));
+        }
+    }
+
+    private static Long serializedSize(List<String> entries) throws IOException {
+        return (long) serialize(entries).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static String serialize(List<String> entries) throws IOException {
+        var payload = new StringWriter();
+        Functions.writePayload(entries, payload);
+        return payload.toString();
+    }
+}